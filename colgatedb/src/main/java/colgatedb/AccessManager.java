@@ -3,9 +3,12 @@ package colgatedb;
 import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
+import colgatedb.transactions.LockMode;
 import colgatedb.transactions.Permissions;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.RecordId;
 
 /**
  * ColgateDB
@@ -38,6 +41,46 @@ public interface AccessManager {
      */
     void releaseLock(TransactionId tid, PageId pid);
 
+    /**
+     * @see colgatedb.transactions.LockManager#acquireRecordLock(TransactionId, RecordId, Permissions)
+     */
+    void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * @see colgatedb.transactions.LockManager#tryAcquireRecordLock(TransactionId, RecordId, Permissions)
+     */
+    boolean tryAcquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * @see colgatedb.transactions.LockManager#holdsRecordLock(TransactionId, RecordId, Permissions)
+     */
+    boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm);
+
+    /**
+     * @see colgatedb.transactions.LockManager#acquireKeyLock(TransactionId, KeyId, Permissions)
+     */
+    void acquireKeyLock(TransactionId tid, KeyId key, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * @see colgatedb.transactions.LockManager#holdsKeyLock(TransactionId, KeyId, Permissions)
+     */
+    boolean holdsKeyLock(TransactionId tid, KeyId key, Permissions perm);
+
+    /**
+     * @see colgatedb.transactions.LockManager#acquireTableLock(TransactionId, int, LockMode)
+     */
+    void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException;
+
+    /**
+     * @see colgatedb.transactions.LockManager#holdsTableLock(TransactionId, int, LockMode)
+     */
+    boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode);
+
+    /**
+     * @see colgatedb.transactions.LockManager#releaseTableLock(TransactionId, int)
+     */
+    void releaseTableLock(TransactionId tid, int tableid);
+
     /**
      * Pins the page and keeps track of the number of times each transaction has pinned this page.
      * @see BufferManager#pinPage(PageId, PageMaker)
@@ -69,6 +112,14 @@ public interface AccessManager {
      */
     void transactionComplete(TransactionId tid, boolean commit);
 
+    /**
+     * Commits an optimistic transaction if it passes validation, and aborts it otherwise.
+     * @param tid the ID of the transaction that is completing
+     * @throws TransactionAbortedException if the transaction failed validation and was aborted
+     * @see colgatedb.transactions.ValidationManager
+     */
+    void validateAndCommit(TransactionId tid) throws TransactionAbortedException;
+
     /**
      * Set policy regarding dirty pages on commit.  If force is true, pages must
      * be flushed to disk upon commit.  If false, dirty pages can remain in buffer pool.
@@ -1,13 +1,19 @@
 package colgatedb;
 
+import colgatedb.dbfile.DbFile;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.dbfile.LsmFile;
 import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
 import colgatedb.page.SimplePageId;
 import colgatedb.transactions.*;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.RecordId;
 
-import javax.sound.midi.SysexMessage;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ColgateDB
@@ -29,24 +35,30 @@ public class AccessManagerImpl implements AccessManager {
     private boolean force = true;  // indicates whether force policy should be used
     private BufferManager bm;
     private LockManagerImpl lm;
-    private Map<PageId, ArrayList<TransactionId>> pinnedPages;
-    private Map<TransactionId, ArrayList<PageId>> tidsWithPages;
+    // for each transaction, the pages it has pinned and how many of its pins are outstanding
+    private final Map<TransactionId, Map<PageId, AtomicInteger>> pinsByTid = new ConcurrentHashMap<>();
+    // for each page, the transactions that have written it and not yet completed
+    private final Map<PageId, Set<TransactionId>> writersByPage = new ConcurrentHashMap<>();
+    // for each transaction, the pages it has written
+    private final Map<TransactionId, Set<PageId>> writesByTid = new ConcurrentHashMap<>();
 
     /**
-     * Initialize the AccessManager, which includes creating a new LockManager.
+     * Initialize the AccessManager, which includes creating a new LockManager that
+     * uses the deadlock policy and lock escalation threshold of the Database.
      * @param bm buffer manager through which all page requests should be made
      */
     public AccessManagerImpl(BufferManager bm) {
         this.bm = bm;
-        lm = new LockManagerImpl();
-        pinnedPages = new HashMap<>();
-        tidsWithPages = new HashMap<>();
+        lm = new LockManagerImpl(Database.getDeadlockPolicy(), Database.getLockEscalationThreshold());
         bm.evictDirty(false);
     }
 
     @Override
     public void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
         lm.acquireLock(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            Database.getValidationManager().recordWrite(tid, pid);
+        }
     }
 
     @Override
@@ -60,55 +72,236 @@ public class AccessManagerImpl implements AccessManager {
     }
 
     @Override
-    public synchronized Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker) {
-        if (!pinnedPages.containsKey(pid)) {
-            pinnedPages.put(pid, new ArrayList<>());
-            tidsWithPages.put(tid, new ArrayList<>());
+    public void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException {
+        lm.acquireRecordLock(tid, rid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            Database.getValidationManager().recordWrite(tid, rid.getPageId());
+        }
+    }
+
+    @Override
+    public boolean tryAcquireRecordLock(TransactionId tid, RecordId rid, Permissions perm)
+            throws TransactionAbortedException {
+        if (!lm.tryAcquireRecordLock(tid, rid, perm)) {
+            return false;
         }
-        pinnedPages.get(pid).add(tid);
-        tidsWithPages.get(tid).add(pid);
-        return bm.pinPage(pid, pageMaker);
+        if (perm == Permissions.READ_WRITE) {
+            Database.getValidationManager().recordWrite(tid, rid.getPageId());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm) {
+        return lm.holdsRecordLock(tid, rid, perm);
+    }
+
+    @Override
+    public void acquireKeyLock(TransactionId tid, KeyId key, Permissions perm) throws TransactionAbortedException {
+        lm.acquireKeyLock(tid, key, perm);
+    }
+
+    @Override
+    public boolean holdsKeyLock(TransactionId tid, KeyId key, Permissions perm) {
+        return lm.holdsKeyLock(tid, key, perm);
+    }
+
+    @Override
+    public void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException {
+        lm.acquireTableLock(tid, tableid, mode);
     }
 
     @Override
-    public synchronized void unpinPage(TransactionId tid, Page page, boolean isDirty) {
-        pinnedPages.get(page.getId()).remove(tid);
+    public boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode) {
+        return lm.holdsTableLock(tid, tableid, mode);
+    }
+
+    @Override
+    public void releaseTableLock(TransactionId tid, int tableid) {
+        lm.releaseTableLock(tid, tableid);
+    }
+
+    @Override
+    public Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker) {
+        Page page = bm.pinPage(pid, pageMaker);
+        pinsByTid.computeIfAbsent(tid, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(pid, k -> new AtomicInteger())
+                .incrementAndGet();
+        return page;
+    }
+
+    @Override
+    public void unpinPage(TransactionId tid, Page page, boolean isDirty) {
+        if (isDirty) {
+            writersByPage.computeIfAbsent(page.getId(), k -> ConcurrentHashMap.newKeySet()).add(tid);
+            writesByTid.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(page.getId());
+        }
         bm.unpinPage(page.getId(), isDirty);
+        Map<PageId, AtomicInteger> pins = pinsByTid.get(tid);
+        AtomicInteger count = pins == null ? null : pins.get(page.getId());
+        if (count != null) {
+            count.getAndUpdate(n -> Math.max(0, n - 1));
+        }
     }
 
     @Override
-    public synchronized void allocatePage(PageId pid) {
+    public void allocatePage(PageId pid) {
         bm.allocatePage(pid);
     }
 
     @Override
-    public synchronized void transactionComplete(TransactionId tid) {
+    public void transactionComplete(TransactionId tid) {
         transactionComplete(tid, true);
     }
 
     @Override
-    public synchronized void transactionComplete(TransactionId tid, boolean commit) {
-        ArrayList<PageId> pids = tidsWithPages.get(tid);
-        System.out.println("AMI: size: " + pids.size());
-        for (PageId pid : pids) {
-            System.out.println("AMI: pid is " + pid.toString());
-            if (bm.isDirty(pid)) {
-                System.out.println("AMI: pid is dirty. commit && force: " + (commit && force));
-                if (commit && force) {
-                    System.out.println("AMI: ...flushing");
-                    bm.flushPage(pid);
-                } else {
-                    bm.unpinPage(pid, true);
-                    bm.discardPage(pid);
+    public void transactionComplete(TransactionId tid, boolean commit) {
+        if (!complete(tid, commit)) {
+            throw new DbException("[ERROR] optimistic transaction " + tid + " failed validation and was aborted");
+        }
+    }
+
+    @Override
+    public void validateAndCommit(TransactionId tid) throws TransactionAbortedException {
+        if (!complete(tid, true)) {
+            throw new TransactionAbortedException();
+        }
+    }
+
+    /**
+     * Commits or aborts tid.  An optimistic transaction is aborted instead of committed
+     * if it fails validation.
+     *
+     * @return false if tid should have committed but was aborted
+     */
+    private boolean complete(TransactionId tid, boolean commit) {
+        SnapshotManager sm = Database.getSnapshotManager();
+        ValidationManager vm = Database.getValidationManager();
+        boolean committed = false;
+        if (commit) {
+            committed = vm.commit(tid);
+        } else {
+            vm.abort(tid);
+        }
+        try {
+            completePages(tid, committed);
+        } finally {
+            sm.endCommit(tid);
+            // release every lock, including locks on pages the transaction never pinned
+            for (RecordId rid : lm.getRecordsForTid(tid)) {
+                lm.releaseRecordLock(tid, rid);
+            }
+            for (KeyId key : lm.getKeysForTid(tid)) {
+                lm.releaseKeyLock(tid, key);
+            }
+            for (PageId pid : lm.getPagesForTid(tid)) {
+                lm.releaseLock(tid, pid);
+            }
+            for (int tableid : lm.getTablesForTid(tid)) {
+                lm.releaseTableLock(tid, tableid);
+            }
+        }
+        return committed || !commit;
+    }
+
+    /**
+     * Releases the pins tid still holds and flushes (under FORCE) or discards (on
+     * abort) the dirty pages it wrote.  Pages the transaction only read are left
+     * alone, so completing takes time proportional to the number of pages it
+     * touched and only the pages it wrote are written back.
+     * <p>
+     * A page written under record locks may also hold uncommitted changes of other
+     * transactions, which must not reach the disk.  Such a page is only flushed by
+     * the last of its writers to complete, once the file has undone the changes of
+     * the writers that aborted.  A writer that commits before then forces its
+     * changes by having the file write a copy of the page with the changes of the
+     * others undone (see {@link HeapFile#writeCommitted(PageId)}); the page itself
+     * stays in the buffer pool.
+     */
+    private void completePages(TransactionId tid, boolean commit) {
+        Map<PageId, AtomicInteger> pins = pinsByTid.remove(tid);
+        if (pins == null) {
+            pins = Collections.emptyMap();
+        }
+        Set<PageId> written = writesByTid.remove(tid);
+        if (written == null) {
+            written = Collections.emptySet();
+        }
+        List<HeapFile> files = completeFileWrites(tid, commit, pins.keySet());
+        for (Map.Entry<PageId, AtomicInteger> entry : pins.entrySet()) {
+            for (int n = entry.getValue().getAndSet(0); n > 0; n--) {
+                bm.unpinPage(entry.getKey(), false);
+            }
+        }
+        for (PageId pid : written) {
+            boolean lastWriter = finishWrites(tid, pid);
+            if (!bm.isDirty(pid)) {
+                continue;
+            }
+            if (!commit && lm.holdsLock(tid, pid, Permissions.READ_WRITE)) {
+                bm.discardPage(pid);
+            } else if (force && lastWriter) {
+                // if tid aborted, the file has already undone its records
+                bm.flushPage(pid);
+            } else if (force && commit) {
+                writeCommitted(pid, files);
+            }
+        }
+    }
+
+    /**
+     * Writes the committed contents of pid, which other transactions are still
+     * writing, through the file it belongs to.
+     */
+    private void writeCommitted(PageId pid, List<HeapFile> files) {
+        for (HeapFile file : files) {
+            if (file.writeCommitted(pid)) {
+                return;
+            }
+        }
+        // only HeapFiles and their indexes are written under record locks
+        bm.flushPage(pid);
+    }
+
+    /**
+     * Forgets that tid has written pid.
+     *
+     * @return true if no other transaction has uncommitted writes on pid
+     */
+    private boolean finishWrites(TransactionId tid, PageId pid) {
+        writersByPage.computeIfPresent(pid, (k, writers) -> {
+            writers.remove(tid);
+            return writers.isEmpty() ? null : writers;
+        });
+        return !writersByPage.containsKey(pid);
+    }
+
+    /**
+     * LsmFiles buffer the writes of a transaction outside of the buffer pool, and
+     * HeapFiles keep the versions and undo records of the records it wrote; let
+     * them know that the transaction is complete.  Only the HeapFiles whose pages
+     * the transaction touched need to know.
+     *
+     * @return the HeapFiles the transaction touched
+     */
+    private List<HeapFile> completeFileWrites(TransactionId tid, boolean commit, Set<PageId> touched) {
+        Catalog catalog = Database.getCatalog();
+        for (LsmFile file : catalog.getLsmFiles()) {
+            file.transactionComplete(tid, commit);
+        }
+        Set<Integer> touchedTables = new HashSet<>();
+        List<HeapFile> files = new ArrayList<>();
+        for (PageId pid : touched) {
+            int tableid = pid.getTableId();
+            if (touchedTables.add(tableid) && catalog.hasTable(tableid)) {
+                DbFile file = catalog.getDatabaseFile(tableid);
+                if (file instanceof HeapFile) {
+                    ((HeapFile) file).transactionComplete(tid, commit);
+                    files.add((HeapFile) file);
                 }
-            } else {
-                bm.unpinPage(pid, false);
             }
-            System.out.println("AMI: tidsWithPages.size()=" + tidsWithPages.size() + " --- pinnedPages.size()="+pinnedPages.size());
-            tidsWithPages.get(tid).remove(pid);
-            pinnedPages.get(pid).remove(tid);
-            lm.releaseLock(tid, pid);
         }
+        return files;
     }
 
     @Override
@@ -2,6 +2,7 @@ package colgatedb;
 
 import colgatedb.dbfile.DbFile;
 import colgatedb.dbfile.HeapFile;
+import colgatedb.dbfile.LsmFile;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.Type;
 
@@ -10,6 +11,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ColgateDB
@@ -32,6 +34,7 @@ public class Catalog {
 
     private final Map<Integer, TableInfo> id2info;
     private final HashMap<String, Integer> name2id;
+    private final Map<Integer, LsmFile> lsmFiles = new ConcurrentHashMap<>();
 
     /**
      * TableInfo data structure used to hold information about each table.
@@ -68,6 +71,11 @@ public class Catalog {
         info.key = primaryKey;
         id2info.put(id, info);
         name2id.put(name, id);
+        if (table instanceof LsmFile) {
+            lsmFiles.put(id, (LsmFile) table);
+        } else {
+            lsmFiles.remove(id);
+        }
 //        dm.addFileEntry(id, dataFile.getAbsolutePath());
     }
 
@@ -117,6 +125,21 @@ public class Catalog {
         return id2info.get(tableid).key;
     }
 
+    /**
+     * @return true if the catalog has a table with the specified id
+     */
+    public boolean hasTable(int tableid) {
+        return id2info.containsKey(tableid);
+    }
+
+    /**
+     * Returns the tables stored in {@link LsmFile}s, which must be told when any
+     * transaction completes (see {@link LsmFile#transactionComplete}).
+     */
+    public Collection<LsmFile> getLsmFiles() {
+        return lsmFiles.values();
+    }
+
     private void checkId(int tableid) throws NoSuchElementException {
         if (!id2info.containsKey(tableid)){
             throw new NoSuchElementException();
@@ -129,6 +152,7 @@ public class Catalog {
     public void clear() {
         id2info.clear();
         name2id.clear();
+        lsmFiles.clear();
     }
 
     /**
@@ -227,6 +251,21 @@ public class Catalog {
         return hf;
     }
 
+    /**
+     * Creates a table stored in an {@link LsmFile} and adds it to the catalog.
+     *
+     * @param primaryKey name of the key field; if empty, the first field is the key
+     * @param directory the directory holding the runs of the table (created if necessary)
+     */
+    public static LsmFile addLsmFile(String name, TupleDesc td, String primaryKey, File directory) {
+        directory.mkdirs();
+        int tableid = tableIdForFile(directory);
+        int keyField = primaryKey.equals("") ? 0 : td.fieldNameToIndex(primaryKey);
+        LsmFile lsm = new LsmFile(td, tableid, keyField, directory);
+        Database.getCatalog().addTable(name, lsm, primaryKey, directory);
+        return lsm;
+    }
+
     private static int tableIdForFile(File tableFile) {
         assert tableFile.exists();
         return tableFile.getAbsolutePath().hashCode();
@@ -1,6 +1,10 @@
 package colgatedb;
 
 import colgatedb.logging.LogFile;
+import colgatedb.transactions.DeadlockPolicy;
+import colgatedb.transactions.LockManagerImpl;
+import colgatedb.transactions.SnapshotManager;
+import colgatedb.transactions.ValidationManager;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
@@ -38,16 +42,22 @@ public class Database {
     // default settings
     private static final int DEFAULT_PAGE_SIZE = 4096;
     private static final int DEFAULT_POOL_SIZE = 10;   // number of pages in buffer pool
+    private static final DeadlockPolicy DEFAULT_DEADLOCK_POLICY = DeadlockPolicy.DETECT;
+    private static final int DEFAULT_ESCALATION_THRESHOLD = LockManagerImpl.DEFAULT_ESCALATION_THRESHOLD;
 
     // actual settings
     private static int pageSize = DEFAULT_PAGE_SIZE;
     private static int poolSize = DEFAULT_POOL_SIZE;
+    private static DeadlockPolicy deadlockPolicy = DEFAULT_DEADLOCK_POLICY;
+    private static int escalationThreshold = DEFAULT_ESCALATION_THRESHOLD;   // page locks per table
 
     private static AtomicReference<Database> _instance = new AtomicReference<Database>(new Database());
     private final Catalog _catalog;
     private DiskManagerImpl _diskManager;
     private BufferManager _bufferManager;
     private AccessManager _accessManager;
+    private final SnapshotManager _snapshotManager = new SnapshotManager();
+    private final ValidationManager _validationManager = new ValidationManager(_snapshotManager);
 
     private final static String LOGFILENAME = "log";
     private LogFile _logfile;
@@ -87,6 +97,21 @@ public class Database {
         return pageSize;
     }
 
+    /**
+     * @return the policy used by the lock manager to deal with deadlocks
+     */
+    public static DeadlockPolicy getDeadlockPolicy() {
+        return deadlockPolicy;
+    }
+
+    /**
+     * @return the number of page locks a transaction may hold on one table before the
+     * lock manager escalates them to a table lock
+     */
+    public static int getLockEscalationThreshold() {
+        return escalationThreshold;
+    }
+
     public static DiskManagerImpl getDiskManager() {
         return _instance.get()._diskManager;
     }
@@ -106,6 +131,14 @@ public class Database {
         return _instance.get()._accessManager;
     }
 
+    public static SnapshotManager getSnapshotManager() {
+        return _instance.get()._snapshotManager;
+    }
+
+    public static ValidationManager getValidationManager() {
+        return _instance.get()._validationManager;
+    }
+
     public static LogFile getLogFile() {
         if (_instance.get()._logfile == null) {
             throw new DbException("Log file was never initialized!");
@@ -137,6 +170,8 @@ public class Database {
     public static void reset() {
         pageSize = DEFAULT_PAGE_SIZE;
         poolSize = DEFAULT_POOL_SIZE;
+        deadlockPolicy = DEFAULT_DEADLOCK_POLICY;
+        escalationThreshold = DEFAULT_ESCALATION_THRESHOLD;
         _instance.set(new Database());
     }
 
@@ -150,6 +185,16 @@ public class Database {
         _instance.set(new Database());
     }
 
+    public static void setDeadlockPolicy(DeadlockPolicy policy) {
+        deadlockPolicy = policy;
+        _instance.set(new Database());
+    }
+
+    public static void setLockEscalationThreshold(int numPages) {
+        escalationThreshold = numPages;
+        _instance.set(new Database());
+    }
+
     // -- new: added on 12/1/16
     public static void setDiskManager(DiskManagerImpl diskManager) {
         _instance.get()._diskManager = diskManager;
@@ -69,6 +69,14 @@ public class DiskManagerImpl implements DiskManager {
         }
     }
 
+    /**
+     * Removes the entry for the given tableid, e.g., after its OS file has been deleted.
+     * @param tableid
+     */
+    public void removeFileEntry(int tableid) {
+        filenames.remove(tableid);
+    }
+
     public int getNumPages(int tableid) {
         File file = new File(filenames.get(tableid));
         long length = file.length();
@@ -0,0 +1,380 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManager;
+import colgatedb.BufferManager;
+import colgatedb.Database;
+import colgatedb.page.*;
+import colgatedb.transactions.LockMode;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.File;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A CoveringIndex stores a copy of a subset of the columns (the included columns)
+ * of a HeapFile in a separate, narrower file.  A query that only needs included
+ * columns can be answered by scanning the index file alone, which has far fewer
+ * pages than the base file when the table is wide.
+ * <p>
+ * The index file is slot-aligned with the base file: the record stored in slot s
+ * of base page b is stored at ordinal b * (base slots per page) + s of the index
+ * file.  This makes it possible to maintain the index on insert and delete
+ * without searching it, and to recover the RecordId of the base record from the
+ * position of an index record.
+ * <p>
+ * Index pages are read and written through the {@link AccessManager}.  A scan of
+ * the index locks the whole index file in S mode, like a scan of a HeapFile.  A
+ * write locks only the index record it changes, with a record lock, so writers of
+ * different base records do not block each other on a shared index page, which is
+ * only latched while it is modified.  The index records written by an aborting
+ * transaction are restored along with its base records (see
+ * {@link HeapFile#transactionComplete(TransactionId, boolean)}).
+ */
+public class CoveringIndex {
+
+    private final HeapFile base;
+    private final int[] fields;
+    private final TupleDesc td;
+    private final int indexid;
+    private final SlottedPageMaker pageMaker;
+    private final int baseSlotsPerPage;
+    private final int slotsPerPage;
+    private int numPages;
+
+    /**
+     * Creates a covering index on the given HeapFile.  The index is NOT attached
+     * to the HeapFile; see {@link HeapFile#addCoveringIndex(CoveringIndex)}.
+     *
+     * @param base the HeapFile being indexed
+     * @param fields the indexes of the included columns of the base file
+     * @param file the OS file in which the index is stored
+     */
+    public CoveringIndex(HeapFile base, int[] fields, File file) {
+        this.base = base;
+        this.fields = fields.clone();
+        TupleDesc baseTd = base.getTupleDesc();
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = baseTd.getFieldType(fields[i]);
+            names[i] = baseTd.getFieldName(fields[i]);
+        }
+        this.td = new TupleDesc(types, names);
+        int pageSize = Database.getPageSize();
+        this.pageMaker = new SlottedPageMaker(td, pageSize);
+        this.baseSlotsPerPage = SlottedPageFormatter.computePageCapacity(pageSize, baseTd);
+        this.slotsPerPage = SlottedPageFormatter.computePageCapacity(pageSize, td);
+        this.indexid = file.getAbsolutePath().hashCode();
+        Database.getDiskManager().addFileEntry(indexid, file.getAbsolutePath());
+        this.numPages = Database.getDiskManager().getNumPages(indexid);
+    }
+
+    /**
+     * @return the indexes (into the base file's tuples) of the included columns
+     */
+    public int[] getFields() {
+        return fields.clone();
+    }
+
+    /**
+     * @return the schema of the records stored in the index
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the id of the index file (used in the PageIds of index pages)
+     */
+    public int getId() {
+        return indexid;
+    }
+
+    public int numPages() {
+        return numPages;
+    }
+
+    /**
+     * @return the position within the index of the given base column, or -1 if
+     * the column is not included in this index
+     */
+    public int indexOf(int baseField) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == baseField) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if all of the given base columns are included in this index
+     */
+    public boolean covers(Iterable<Integer> baseFields) {
+        for (int f : baseFields) {
+            if (indexOf(f) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Populates the index from the current contents of the base file.  Should be
+     * called once, on an index whose file is empty, before the index is attached.
+     * The whole index file is locked in X mode, so the index pages are discarded if
+     * tid aborts.
+     *
+     * @param tid the transaction on whose behalf the index is built
+     */
+    public void build(TransactionId tid) throws TransactionAbortedException {
+        Database.getAccessManager().acquireTableLock(tid, indexid, LockMode.X);
+        DbFileIterator it = base.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            insert(tid, it.next());
+        }
+        it.close();
+    }
+
+    /**
+     * Adds the included columns of a base tuple (which has just been stored in
+     * the base file) to the index.
+     */
+    void insert(TransactionId tid, Tuple baseTuple) throws TransactionAbortedException {
+        Tuple t = project(baseTuple);
+        int ordinal = ordinal(baseTuple.getRecordId());
+        PageId pid = new SimplePageId(indexid, ordinal / slotsPerPage);
+        AccessManager am = Database.getAccessManager();
+        synchronized (this) {
+            while (numPages <= pid.pageNumber()) {
+                am.allocatePage(new SimplePageId(indexid, numPages));
+                numPages++;
+            }
+        }
+        am.acquireRecordLock(tid, new RecordId(pid, ordinal % slotsPerPage), Permissions.READ_WRITE);
+        SlottedPage p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+        synchronized (p) {
+            p.insertTuple(ordinal % slotsPerPage, t);
+        }
+        am.unpinPage(tid, p, true);
+    }
+
+    /**
+     * Removes the index record of the base record with the given RecordId.
+     */
+    void delete(TransactionId tid, RecordId rid) throws TransactionAbortedException {
+        int ordinal = ordinal(rid);
+        PageId pid = new SimplePageId(indexid, ordinal / slotsPerPage);
+        AccessManager am = Database.getAccessManager();
+        am.acquireRecordLock(tid, new RecordId(pid, ordinal % slotsPerPage), Permissions.READ_WRITE);
+        SlottedPage p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+        synchronized (p) {
+            p.deleteTuple(p.getTuple(ordinal % slotsPerPage));
+        }
+        am.unpinPage(tid, p, true);
+    }
+
+    /**
+     * Undoes the index write that went with a base write of an aborting transaction:
+     * removes the index record of an inserted base record, or puts back the index
+     * record of a deleted one.  The aborting transaction still holds the lock on the
+     * index record.  Either write may not have happened if the transaction aborted
+     * in between.
+     *
+     * @param rid the RecordId of the base record
+     * @param before the deleted base tuple, or null if the base record was inserted
+     */
+    void undo(RecordId rid, Tuple before) {
+        int ordinal = ordinal(rid);
+        int slot = ordinal % slotsPerPage;
+        PageId pid = new SimplePageId(indexid, ordinal / slotsPerPage);
+        if (pid.pageNumber() >= numPages) {
+            return;
+        }
+        BufferManager bm = Database.getBufferManager();
+        SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+        synchronized (p) {
+            if (before == null && p.isSlotUsed(slot)) {
+                p.deleteTuple(p.getTuple(slot));
+            } else if (before != null && p.isSlotEmpty(slot)) {
+                p.insertTuple(slot, project(before));
+            }
+        }
+        bm.unpinPage(pid, true);
+    }
+
+    /**
+     * Writes the committed contents of an index page to disk, leaving the page in the
+     * buffer pool as it is; see {@link HeapFile#writeCommitted(PageId)}.
+     *
+     * @param uncommitted the base records written by transactions that have not
+     *                    completed, mapped to their committed tuples (null if inserted)
+     */
+    void writeCommitted(PageId pid, Map<RecordId, Tuple> uncommitted) {
+        BufferManager bm = Database.getBufferManager();
+        SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+        try {
+            synchronized (p) {
+                SlottedPage image = (SlottedPage) pageMaker.makePage(pid, p.getPageData());
+                for (int slot = 0; slot < slotsPerPage; slot++) {
+                    int ordinal = pid.pageNumber() * slotsPerPage + slot;
+                    RecordId rid = new RecordId(new SimplePageId(base.getId(), ordinal / baseSlotsPerPage),
+                            ordinal % baseSlotsPerPage);
+                    if (!uncommitted.containsKey(rid)) {
+                        continue;
+                    }
+                    if (image.isSlotUsed(slot)) {
+                        image.deleteTuple(image.getTuple(slot));
+                    }
+                    if (uncommitted.get(rid) != null) {
+                        image.insertTuple(slot, project(uncommitted.get(rid)));
+                    }
+                }
+                Database.getDiskManager().writePage(image);
+            }
+        } finally {
+            bm.unpinPage(pid, false);
+        }
+    }
+
+    /**
+     * @return a tuple holding the included columns of a base tuple
+     */
+    private Tuple project(Tuple baseTuple) {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < fields.length; i++) {
+            t.setField(i, baseTuple.getField(fields[i]));
+        }
+        return t;
+    }
+
+    /**
+     * Returns an iterator over the index records.  Each returned tuple has the
+     * schema of the index (see {@link #getTupleDesc()}) and carries the RecordId
+     * of the corresponding record in the base file.
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new IndexIterator(tid);
+    }
+
+    private int ordinal(RecordId rid) {
+        return rid.getPageId().pageNumber() * baseSlotsPerPage + rid.tupleno();
+    }
+
+    /**
+     * @see DbFileIterator
+     */
+    private class IndexIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final AccessManager am;
+        private boolean isOpen;
+        private int currPage;
+        private int currSlot;
+
+        public IndexIterator(TransactionId tid) {
+            this.tid = tid;
+            this.am = Database.getAccessManager();
+        }
+
+        /**
+         * Locks the whole index file in S mode; a snapshot transaction takes no lock.
+         */
+        @Override
+        public void open() throws TransactionAbortedException {
+            if (!Database.getSnapshotManager().isSnapshot(tid)) {
+                am.acquireTableLock(tid, indexid, LockMode.S);
+            }
+            isOpen = true;
+            currPage = 0;
+            currSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() throws TransactionAbortedException {
+            if (!isOpen) {
+                return false;
+            }
+            while (currPage < numPages) {
+                SlottedPage p = pin();
+                boolean found = false;
+                synchronized (p) {
+                    while (!found && currSlot < p.getNumSlots()) {
+                        if (p.isSlotUsed(currSlot)) {
+                            found = true;
+                        } else {
+                            currSlot++;
+                        }
+                    }
+                }
+                am.unpinPage(tid, p, false);
+                if (found) {
+                    return true;
+                }
+                currSlot = 0;
+                currPage++;
+            }
+            return false;
+        }
+
+        @Override
+        public Tuple next() throws TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SlottedPage p = pin();
+            Tuple stored;
+            synchronized (p) {
+                stored = p.getTuple(currSlot);
+            }
+            am.unpinPage(tid, p, false);
+            // copy so that the RecordId of the tuple on the index page is left alone
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < fields.length; i++) {
+                t.setField(i, stored.getField(i));
+            }
+            int ordinal = currPage * slotsPerPage + currSlot;
+            t.setRecordId(new RecordId(new SimplePageId(base.getId(), ordinal / baseSlotsPerPage),
+                    ordinal % baseSlotsPerPage));
+            currSlot++;
+            return t;
+        }
+
+        private SlottedPage pin() {
+            return (SlottedPage) am.pinPage(tid, new SimplePageId(indexid, currPage), pageMaker);
+        }
+
+        @Override
+        public void rewind() throws TransactionAbortedException {
+            currPage = 0;
+            currSlot = 0;
+        }
+
+        @Override
+        public void close() {
+            isOpen = false;
+        }
+    }
+}
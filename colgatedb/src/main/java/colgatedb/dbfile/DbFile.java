@@ -3,6 +3,7 @@ package colgatedb.dbfile;
 import colgatedb.BufferManager;
 import colgatedb.DbException;
 import colgatedb.DiskManagerException;
+import colgatedb.operators.Predicate;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
 import colgatedb.tuple.Tuple;
@@ -70,6 +71,17 @@ public interface DbFile {
      */
     DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over the tuples stored in this DbFile that satisfy the
+     * given predicate.  Implementations may use this to avoid reading portions of
+     * the file that cannot contain a matching tuple.
+     *
+     * @param tid the transaction performing the scan
+     * @param p the predicate that returned tuples must satisfy
+     * @return an iterator over all the tuples in this DbFile that satisfy p.
+     */
+    DbFileIterator iterator(TransactionId tid, Predicate p);
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog.
      *
@@ -1,16 +1,29 @@
 package colgatedb.dbfile;
 
 import colgatedb.*;
+import colgatedb.operators.Predicate;
 import colgatedb.page.*;
+import colgatedb.transactions.LockMode;
 import colgatedb.transactions.Permissions;
+import colgatedb.transactions.SnapshotManager;
 import colgatedb.transactions.Transaction;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.RecordId;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 
 import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * ColgateDB
@@ -33,6 +46,23 @@ import java.util.NoSuchElementException;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with SlottedPage. The format of SlottedPages is described in the javadocs
  * for SlottedPage.
+ * <p>
+ * Inserts and deletes lock individual records (under intention locks on the page
+ * and the table), so they do not block writers of other records of the same page.
+ * The slotted page itself is latched (synchronized on) while it is read or
+ * modified.  Since several transactions may have changed a page, an aborting
+ * transaction's changes are undone record by record; see
+ * {@link #transactionComplete(TransactionId, boolean)}.
+ * <p>
+ * Every write also leaves a version of the record behind: the tuple it replaced,
+ * stamped with the writing transaction.  Read-only snapshot transactions (see
+ * {@link colgatedb.transactions.SnapshotManager}) take no locks at all; they read
+ * the pages as they are and follow the versions of a record back to the tuple that
+ * was committed when their snapshot was taken.  Versions are dropped, when a
+ * transaction using the file completes, once no running snapshot can need them.
+ * Optimistic transactions read snapshots in the same way, but also see their own
+ * writes, and report the pages they read to the
+ * {@link colgatedb.transactions.ValidationManager}.
  *
  * @see SlottedPage
  */
@@ -45,6 +75,12 @@ public class HeapFile implements DbFile {
     private int tableid;
     private int numPages;
     private int currentPage;
+    private final ZoneMap zoneMap;
+    private final List<CoveringIndex> coveringIndexes = new CopyOnWriteArrayList<>();
+    private final List<NGramIndex> ngramIndexes = new CopyOnWriteArrayList<>();
+    private final Map<TransactionId, List<Version>> undoLogs = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<Integer, Version>> versions = new ConcurrentHashMap<>();   // newest, by page and slot
+    private final Set<RecordId> reservedSlots = ConcurrentHashMap.newKeySet();   // slots of uncommitted deletes
 
     /**
      * Creates a heap file.
@@ -59,6 +95,7 @@ public class HeapFile implements DbFile {
         this.tableid = tableid;
         this.numPages = numPages;
         pageMaker = new SlottedPageMaker(td, pageSize);
+        zoneMap = new ZoneMap(td);
 
         if (!(numPages > 0)) {
             currentPage = -1;
@@ -82,74 +119,487 @@ public class HeapFile implements DbFile {
         return td;
     }
 
+    /**
+     * Attaches a covering index to this file; from now on it is maintained on
+     * every insert and delete.  The index should already reflect the contents
+     * of the file (see {@link CoveringIndex#build(TransactionId)}).
+     */
+    public void addCoveringIndex(CoveringIndex index) {
+        coveringIndexes.add(index);
+    }
+
+    /**
+     * @return the covering indexes attached to this file
+     */
+    public List<CoveringIndex> getCoveringIndexes() {
+        return new ArrayList<>(coveringIndexes);
+    }
+
+    /**
+     * @param fields indexes of the columns needed by a query
+     * @return the narrowest attached covering index that includes all of the given
+     * columns, or null if there is none
+     */
+    public CoveringIndex findCoveringIndex(Iterable<Integer> fields) {
+        CoveringIndex best = null;
+        for (CoveringIndex index : coveringIndexes) {
+            if (index.covers(fields) &&
+                    (best == null || index.getTupleDesc().getSize() < best.getTupleDesc().getSize())) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Attaches an n-gram index to this file; from now on it is maintained on every
+     * insert.  The index should already reflect the contents of the file (see
+     * {@link NGramIndex#build(TransactionId)}).
+     */
+    public void addNGramIndex(NGramIndex index) {
+        ngramIndexes.add(index);
+    }
+
+    /**
+     * @return an attached n-gram index on the given column, or null if there is none
+     */
+    public NGramIndex findNGramIndex(int field) {
+        for (NGramIndex index : ngramIndexes) {
+            if (index.getField() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the tuple stored at the given RecordId, after locking the record in S
+     * mode (under intention locks on the page and the table).  A snapshot
+     * transaction takes no lock and reads the version in its snapshot.
+     *
+     * @return the tuple, or null if the slot is empty or the page does not exist
+     */
+    public Tuple getTuple(TransactionId tid, RecordId rid) throws TransactionAbortedException {
+        PageId pid = rid.getPageId();
+        if (pid.getTableId() != tableid || pid.pageNumber() >= numPages) {
+            return null;
+        }
+        AccessManager am = Database.getAccessManager();
+        SnapshotManager sm = Database.getSnapshotManager();
+        if (!sm.isSnapshot(tid)) {
+            am.acquireRecordLock(tid, rid, Permissions.READ_ONLY);
+        }
+        SlottedPage p = getSlottedPage(tid, pid);
+        Tuple t = null;
+        synchronized (p) {
+            if (rid.tupleno() >= p.getNumSlots()) {
+                t = null;
+            } else if (sm.isSnapshot(tid)) {
+                t = visibleTuple(tid, p, rid.tupleno(), sm.getSnapshot(tid));
+                Database.getValidationManager().recordRead(tid, pid);
+            } else if (p.isSlotUsed(rid.tupleno())) {
+                t = p.getTuple(rid.tupleno());
+            }
+        }
+        am.unpinPage(tid, p, false);
+        return t;
+    }
+
+    /**
+     * Inserts a tuple into a free slot.  The tuple is locked with a record lock, so
+     * other transactions may write other records of the same page at the same time.
+     */
     @Override
     public void insertTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
+        checkWritable(tid);
         AccessManager am = Database.getAccessManager();
-        PageId pid = getFreePage(am, tid);
-        SlottedPage p;
-        synchronized (this) {
-            if (pid == null) {
-                pid = new SimplePageId(tableid, numPages);
-                am.allocatePage(pid);
-                numPages++;
+        boolean inserted = false;
+        while (!inserted) {
+            PageId pid = getFreePage(am, tid);
+            synchronized (this) {
+                if (pid == null) {
+                    pid = new SimplePageId(tableid, numPages);
+                    am.allocatePage(pid);
+                    zoneMap.addEmptyPage(numPages);
+                    numPages++;
+                }
             }
+            inserted = insertIntoPage(am, tid, pid, t);
+        }
+        for (CoveringIndex index : coveringIndexes) {
+            index.insert(tid, t);
+        }
+        for (NGramIndex index : ngramIndexes) {
+            index.insert(tid, t);
         }
-        am.acquireLock(tid, pid, Permissions.READ_WRITE);
-        p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+    }
+
+    /**
+     * Inserts t into a free slot of the given page after locking the slot.  A slot
+     * locked by another transaction (say, one about to insert into it) is skipped
+     * rather than waited for.
+     *
+     * @return false if the page had no free slot (left)
+     */
+    private boolean insertIntoPage(AccessManager am, TransactionId tid, PageId pid, Tuple t)
+            throws TransactionAbortedException {
+        SlottedPage p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+        boolean inserted = false;
         try {
-            p.insertTuple(t);
-        } catch (PageException e) {
-            throw new DbException("[ERROR] " + e);
+            int slot = -1;
+            while (!inserted && (slot = freeSlot(p, slot + 1)) >= 0) {
+                RecordId rid = new RecordId(pid, slot);
+                if (!am.tryAcquireRecordLock(tid, rid, Permissions.READ_WRITE)) {
+                    continue;
+                }
+                synchronized (p) {
+                    // another transaction may have filled the slot before we locked it
+                    if (p.isSlotEmpty(slot) && !reservedSlots.contains(rid)) {
+                        p.insertTuple(slot, t);
+                        zoneMap.include(pid.pageNumber(), t);
+                        addVersion(tid, rid, null);
+                        inserted = true;
+                    }
+                }
+            }
+        } finally {
+            am.unpinPage(tid, p, inserted);
         }
-        am.unpinPage(tid, p, true);
+        return inserted;
     }
 
+    /**
+     * @return the first empty slot of p, at or after slot from, that may be reused, or
+     * -1 if there is none.  The slots of records deleted by transactions that have not
+     * completed are not reused, as the records are put back if the transaction aborts.
+     */
+    private int freeSlot(SlottedPage p, int from) {
+        synchronized (p) {
+            for (int slot = from; slot < p.getNumSlots(); slot++) {
+                if (p.isSlotEmpty(slot) && !reservedSlots.contains(new RecordId(p.getId(), slot))) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
 
+    /**
+     * Deletes a tuple under a record lock; see {@link #insertTuple(TransactionId, Tuple)}.
+     */
     @Override
     public void deleteTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
+        checkWritable(tid);
+        RecordId rid = t.getRecordId();
+        if (rid == null) {
+            throw new DbException("[ERROR] the tuple cannot be deleted or it is not a member of the file");
+        }
+        AccessManager am = Database.getAccessManager();
+        am.acquireRecordLock(tid, rid, Permissions.READ_WRITE);
+        SlottedPage p = getSlottedPage(tid, rid.getPageId());
         try {
-            AccessManager am = Database.getAccessManager();
-            SlottedPage p = getSlottedPage(tid, t.getRecordId().getPageId());
-            am.acquireLock(tid, t.getRecordId().getPageId(),  Permissions.READ_WRITE);
-            p.deleteTuple(t);
-            am.unpinPage(tid, p, true);
-        } catch (DbException e) {
+            synchronized (p) {
+                Tuple stored = p.isSlotUsed(rid.tupleno()) ? p.getTuple(rid.tupleno()) : null;
+                p.deleteTuple(t);
+                reservedSlots.add(rid);
+                addVersion(tid, rid, copyOf(stored, rid));
+            }
+        } catch (PageException e) {
+            am.unpinPage(tid, p, false);
             throw new DbException("[ERROR] the tuple cannot be deleted or it is not a member of the file");
         }
+        zoneMap.invalidate(rid.getPageId().pageNumber());
+        am.unpinPage(tid, p, true);
+        for (CoveringIndex index : coveringIndexes) {
+            index.delete(tid, rid);
+        }
+    }
+
+    private void checkWritable(TransactionId tid) {
+        if (Database.getSnapshotManager().isSnapshot(tid) && !Database.getValidationManager().isOptimistic(tid)) {
+            throw new DbException("[ERROR] read-only transaction " + tid + " cannot modify the file");
+        }
+    }
+
+    /**
+     * Records a write of tid as the newest version of a record.  Must be called with
+     * the page latched.
+     *
+     * @param before the tuple replaced by the write, or null for an insert
+     */
+    private void addVersion(TransactionId tid, RecordId rid, Tuple before) {
+        Version v = new Version(rid, tid, before);
+        versions.compute(rid.getPageId().pageNumber(), (pageno, chains) -> {
+            if (chains == null) {
+                chains = new ConcurrentHashMap<>();
+            }
+            v.older = chains.get(rid.tupleno());
+            chains.put(rid.tupleno(), v);
+            return chains;
+        });
+        undoLogs.computeIfAbsent(tid, k -> Collections.synchronizedList(new ArrayList<Version>())).add(v);
+    }
+
+    /**
+     * Removes the newest version of a record, written by an aborting transaction.
+     * Must be called with the page latched.
+     */
+    private void removeVersion(Version v) {
+        versions.computeIfPresent(v.rid.getPageId().pageNumber(), (pageno, chains) -> {
+            if (chains.get(v.rid.tupleno()) == v) {
+                if (v.older == null) {
+                    chains.remove(v.rid.tupleno());
+                } else {
+                    chains.put(v.rid.tupleno(), v.older);
+                }
+            }
+            return chains.isEmpty() ? null : chains;
+        });
+    }
+
+    /**
+     * Returns the tuple in a slot of p as seen by transaction tid reading a snapshot
+     * taken at timestamp ts (plus its own writes), or null if the record did not
+     * exist then.  Must be called with p latched.
+     */
+    private Tuple visibleTuple(TransactionId tid, SlottedPage p, int slot, long ts) {
+        Tuple t = p.isSlotUsed(slot) ? p.getTuple(slot) : null;
+        Map<Integer, Version> chains = versions.get(p.getId().pageNumber());
+        Version v = chains == null ? null : chains.get(slot);
+        while (v != null && !v.writer.equals(tid) && !v.isVisibleAt(ts)) {
+            t = v.before;
+            v = v.older;
+        }
+        return t;
+    }
+
+    private static Tuple copyOf(Tuple t, RecordId rid) {
+        Tuple copy = new Tuple(t.getTupleDesc());
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        copy.setRecordId(rid);
+        return copy;
+    }
+
+    /**
+     * Called when a transaction completes.  Pages written under record locks may hold
+     * changes of several transactions, so they cannot simply be discarded when one of
+     * them aborts; instead, the inserts and deletes of an aborting transaction are
+     * undone here, in reverse order, along with their versions and the records of the
+     * covering indexes that mirror them.  (The postings such a transaction added to
+     * n-gram indexes are left behind; they only add false candidates.)  The versions
+     * of a committing transaction are stamped with its commit timestamp, which the
+     * SnapshotManager must already have handed out.  Either way, the slots freed by
+     * the transaction's deletes may be reused from now on, and versions that are no
+     * longer needed are garbage collected.
+     */
+    public void transactionComplete(TransactionId tid, boolean commit) {
+        SnapshotManager sm = Database.getSnapshotManager();
+        // an aborting transaction's writes stay uncommitted (see writeCommitted) until undone
+        List<Version> writes = commit ? undoLogs.remove(tid) : undoLogs.get(tid);
+        if (writes != null && commit) {
+            Long ts = sm.getCommitTimestamp(tid);
+            if (ts == null) {
+                throw new DbException("[ERROR] " + tid + " has no commit timestamp");
+            }
+            for (Version v : writes) {
+                v.commitTs = ts;
+                if (v.before != null) {
+                    reservedSlots.remove(v.rid);
+                }
+            }
+        } else if (writes != null) {
+            BufferManager bm = Database.getBufferManager();
+            for (int i = writes.size() - 1; i >= 0; i--) {
+                Version v = writes.get(i);
+                PageId pid = v.rid.getPageId();
+                SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+                synchronized (p) {
+                    if (v.before == null) {
+                        p.deleteTuple(p.getTuple(v.rid.tupleno()));
+                        zoneMap.invalidate(pid.pageNumber());
+                    } else {
+                        p.insertTuple(v.rid.tupleno(), v.before);
+                        zoneMap.include(pid.pageNumber(), v.before);
+                    }
+                    removeVersion(v);
+                }
+                bm.unpinPage(pid, true);
+                for (CoveringIndex index : coveringIndexes) {
+                    index.undo(v.rid, v.before);
+                }
+                if (v.before != null) {
+                    reservedSlots.remove(v.rid);
+                }
+            }
+            undoLogs.remove(tid);
+        }
+        if (!versions.isEmpty()) {
+            collectVersions(sm.getHorizon());
+        }
+    }
+
+    /**
+     * Writes the committed contents of a page of this file, or of one of its indexes,
+     * to disk, and leaves the page in the buffer pool as it is.  The records written
+     * by transactions that have not completed are put back, in the copy written, as
+     * they were before.  Under FORCE, a transaction that commits while others are still
+     * writing a page it wrote forces its own writes this way.
+     *
+     * @return false if pid is not a page of this file or of one of its indexes
+     */
+    public boolean writeCommitted(PageId pid) {
+        if (pid.getTableId() == tableid) {
+            BufferManager bm = Database.getBufferManager();
+            SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+            try {
+                synchronized (p) {
+                    SlottedPage image = (SlottedPage) pageMaker.makePage(pid, p.getPageData());
+                    for (Map.Entry<RecordId, Tuple> e : uncommittedWrites().entrySet()) {
+                        RecordId rid = e.getKey();
+                        if (rid.getPageId().equals(pid)) {
+                            if (image.isSlotUsed(rid.tupleno())) {
+                                image.deleteTuple(image.getTuple(rid.tupleno()));
+                            }
+                            if (e.getValue() != null) {
+                                image.insertTuple(rid.tupleno(), e.getValue());
+                            }
+                        }
+                    }
+                    // written under the latch, so that a later image is never overwritten by an older one
+                    Database.getDiskManager().writePage(image);
+                }
+            } finally {
+                bm.unpinPage(pid, false);
+            }
+            return true;
+        }
+        for (CoveringIndex index : coveringIndexes) {
+            if (index.getId() == pid.getTableId()) {
+                index.writeCommitted(pid, uncommittedWrites());
+                return true;
+            }
+        }
+        for (NGramIndex index : ngramIndexes) {
+            if (index.getId() == pid.getTableId()) {
+                index.writePage(pid);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the records written by transactions that have not completed, each
+     * mapped to the tuple it held before they wrote it, or to null if they inserted it.
+     */
+    private Map<RecordId, Tuple> uncommittedWrites() {
+        SnapshotManager sm = Database.getSnapshotManager();
+        Map<RecordId, Tuple> before = new HashMap<>();
+        for (Map.Entry<TransactionId, List<Version>> log : undoLogs.entrySet()) {
+            if (sm.getCommitTimestamp(log.getKey()) != null) {
+                continue;   // committed, but its versions are not stamped yet
+            }
+            synchronized (log.getValue()) {
+                for (Version v : log.getValue()) {
+                    // a record is written by one transaction at a time; its first write holds the committed tuple
+                    if (!before.containsKey(v.rid)) {
+                        before.put(v.rid, v.before);
+                    }
+                }
+            }
+        }
+        return before;
+    }
+
+    /**
+     * Drops the versions that no running snapshot can see, i.e., those replaced by a
+     * write committed at or before the given horizon.
+     */
+    void collectVersions(long horizon) {
+        for (int pageno : versions.keySet()) {
+            versions.computeIfPresent(pageno, (k, chains) -> {
+                Iterator<Map.Entry<Integer, Version>> it = chains.entrySet().iterator();
+                while (it.hasNext()) {
+                    Version v = it.next().getValue();
+                    if (v.commitTs <= horizon) {
+                        it.remove();
+                        continue;
+                    }
+                    while (v.older != null && v.older.commitTs > horizon) {
+                        v = v.older;
+                    }
+                    v.older = null;
+                }
+                return chains.isEmpty() ? null : chains;
+            });
+        }
+    }
+
+    /**
+     * @return the number of record versions kept for snapshot transactions
+     */
+    int numVersions() {
+        int n = 0;
+        for (Map<Integer, Version> chains : versions.values()) {
+            for (Version v : chains.values()) {
+                for (; v != null; v = v.older) {
+                    n++;
+                }
+            }
+        }
+        return n;
     }
 
     @Override
     public DbFileIterator iterator(TransactionId tid) {
-        return new HeapFileIterator(tid);
+        return new HeapFileIterator(tid, null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this HeapFile that satisfy p.  Pages
+     * whose zone (min/max summary) shows that none of their tuples can satisfy p
+     * are skipped without being read.
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, Predicate p) {
+        return new HeapFileIterator(tid, p, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an iterator over the tuples on pages startPage (inclusive) to
+     * endPage (exclusive) of this HeapFile, e.g., so that several threads can
+     * scan disjoint parts of the file.  Pages past the end of the file are
+     * ignored.
+     *
+     * @param p the predicate that returned tuples must satisfy, or null
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate p, int startPage, int endPage) {
+        if (startPage < 0 || endPage < startPage) {
+            throw new IllegalArgumentException("invalid page range [" + startPage + ", " + endPage + ")");
+        }
+        return new HeapFileIterator(tid, p, startPage, endPage);
     }
 
     /**
-     * Finds the next page with a free slot
+     * Finds the next page with a free slot.  Pages are only looked at, not locked; the
+     * slot is locked when the tuple is inserted.
      * @param am the access manager
      * @return the PageId of the next free page or null if there is no page with a free slot
      */
-    private PageId getFreePage(AccessManager am, TransactionId tid) throws TransactionAbortedException {
-        boolean lockWasHeld = false;
+    private PageId getFreePage(AccessManager am, TransactionId tid) {
         int initialCurrentPage = currentPage;
         if (currentPage == -1) {
             return null;
         }
         while (true) {
             SimplePageId pid = new SimplePageId(tableid, currentPage);
-            SlottedPage p;
-            if (am.holdsLock(tid, pid, Permissions.READ_WRITE) || am.holdsLock(tid, pid, Permissions.READ_ONLY)) {
-                lockWasHeld = true;
-            }
-            if (!lockWasHeld) {
-                am.acquireLock(tid, pid, Permissions.READ_ONLY);
-            }
-            p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+            SlottedPage p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+            int slot = freeSlot(p, 0);
             am.unpinPage(tid, p, false);
-            if (!lockWasHeld) {
-                am.releaseLock(tid, pid);
-            }
 
-            if (p.getNumEmptySlots() > 0) {
+            if (slot >= 0) {
                 return pid;
             }
 
@@ -169,6 +619,41 @@ public class HeapFile implements DbFile {
         return (SlottedPage)am.pinPage(tid, pid, pageMaker);
     }
 
+    /**
+     * A write of a record.  The versions of a record are linked from newest to
+     * oldest; each holds the tuple its write replaced, which is what a snapshot that
+     * does not see the write reads instead.  The versions written by a transaction
+     * also serve as its undo log.
+     */
+    private static class Version {
+        static final long UNCOMMITTED = Long.MAX_VALUE;
+
+        final RecordId rid;
+        final TransactionId writer;
+        final Tuple before;                   // the replaced tuple, or null if the record was inserted
+        volatile long commitTs = UNCOMMITTED;
+        volatile Version older;
+
+        Version(RecordId rid, TransactionId writer, Tuple before) {
+            this.rid = rid;
+            this.writer = writer;
+            this.before = before;
+        }
+
+        /**
+         * @return true if the write was committed at or before timestamp ts
+         */
+        boolean isVisibleAt(long ts) {
+            long c = commitTs;
+            if (c == UNCOMMITTED) {
+                Long committing = Database.getSnapshotManager().getCommitTimestamp(writer);
+                // read commitTs again: the writer may have stamped it and finished committing
+                c = committing != null ? committing : commitTs;
+            }
+            return c <= ts;
+        }
+    }
+
     /**
      * @see DbFileIterator
      */
@@ -179,58 +664,115 @@ public class HeapFile implements DbFile {
         private PageId pid;
         private AccessManager am;
         private TransactionId tid;
+        private final Predicate predicate;   // null if every tuple should be returned
+        private final int startPage;
+        private final int endPage;           // exclusive
+        private long snapshot;               // timestamp of the snapshot read, or -1 if reading under locks
+        private Tuple nextTuple;             // found by hasNext, returned by next
 
-        public HeapFileIterator(TransactionId tid) {
+        public HeapFileIterator(TransactionId tid, Predicate predicate, int startPage, int endPage) {
             am = Database.getAccessManager();
             this.tid = tid;
-            currPage = 0;
+            this.predicate = predicate;
+            this.startPage = startPage;
+            this.endPage = endPage;
+            currPage = startPage;
             currSlot = 0;
 
         }
 
+        /**
+         * Locks the whole table in S mode, so the pages read by the scan need no
+         * locks of their own.  A snapshot transaction takes no lock.
+         */
         @Override
         public void open() throws TransactionAbortedException {
+            SnapshotManager sm = Database.getSnapshotManager();
+            if (sm.isSnapshot(tid)) {
+                snapshot = sm.getSnapshot(tid);
+            } else {
+                snapshot = -1;
+                am.acquireTableLock(tid, tableid, LockMode.S);
+            }
             isOpen = true;
         }
 
         @Override
         public boolean hasNext() throws TransactionAbortedException {
-            if (isOpen && currPage < numPages) {
+            if (!isOpen) {
+                return false;
+            }
+            if (nextTuple != null) {
+                return true;
+            }
+            while (currPage < Math.min(numPages, endPage)) {
+                // the zone of a page only describes its current tuples, not older versions
+                if (currSlot == 0 && predicate != null && !zoneMap.mightMatch(currPage, predicate) &&
+                        (snapshot < 0 || !versions.containsKey(currPage))) {
+                    if (snapshot >= 0) {
+                        Database.getValidationManager().recordRead(tid, new SimplePageId(tableid, currPage));
+                    }
+                    currPage++;
+                    continue;
+                }
                 pid = new SimplePageId(tableid, currPage);
+                int stamp = zoneMap.getStamp(currPage);
                 SlottedPage p = (SlottedPage)am.pinPage(tid, pid, pageMaker);
-                if (currSlot >= p.getNumSlots()) {
-                    currSlot = 0;
-                    currPage++;
-                    am.unpinPage(tid, p, false);
-                    return hasNext();
-                } else if (p.isSlotEmpty(currSlot)) {
-                    currSlot++;
-                    am.unpinPage(tid, p, false);
-                    return hasNext();
-                } else {
-                    am.unpinPage(tid, p, false);
+                if (currSlot == 0 && predicate != null && !zoneMap.isKnown(currPage)) {
+                    summarize(p, stamp);
+                }
+                if (snapshot >= 0) {
+                    Database.getValidationManager().recordRead(tid, pid);
+                }
+                synchronized (p) {
+                    while (nextTuple == null && currSlot < p.getNumSlots()) {
+                        Tuple t = snapshot >= 0 ? visibleTuple(tid, p, currSlot, snapshot) :
+                                p.isSlotUsed(currSlot) ? p.getTuple(currSlot) : null;
+                        if (t != null && (predicate == null || predicate.filter(t))) {
+                            nextTuple = t;
+                        }
+                        currSlot++;
+                    }
+                }
+                am.unpinPage(tid, p, false);
+                if (nextTuple != null) {
                     return true;
                 }
+                currSlot = 0;
+                currPage++;
+            }
+            if (snapshot >= 0 && endPage >= numPages) {
+                // the scan also read that the file ends here: an insert into a new page conflicts
+                Database.getValidationManager().recordRead(tid, new SimplePageId(tableid, numPages));
             }
             return false;
         }
 
+        /**
+         * Records the zone of page p.  Only clean pages are summarized: a dirty
+         * page may hold uncommitted deletes that would make the zone too narrow.
+         */
+        private void summarize(SlottedPage p, int stamp) {
+            if (!Database.getBufferManager().isDirty(p.getId())) {
+                zoneMap.setZone(currPage, p.iterator(), stamp);
+            }
+        }
+
         @Override
         public Tuple next() throws TransactionAbortedException, NoSuchElementException {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            SlottedPage p = (SlottedPage)am.pinPage(tid, pid, pageMaker);
-            Tuple t = p.getTuple(currSlot);
-            currSlot++;
-            am.unpinPage(tid, p, false);
+            Tuple t = nextTuple;
+            nextTuple = null;
             return t;
         }
 
         @Override
         public void rewind() throws TransactionAbortedException {
-            currPage = 0;
+            currPage = startPage;
             currSlot = 0;
+            nextTuple = null;
         }
 
         @Override
@@ -0,0 +1,662 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManager;
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.operators.Predicate;
+import colgatedb.transactions.LockMode;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * LsmFile is an implementation of a DbFile based on a log-structured merge tree.
+ * It is meant for write-heavy tables: writes never update pages in place.
+ * <p>
+ * Tuples are identified by the value of a key field.  Unlike the other DbFiles,
+ * which keep both tuples, an insert is an upsert: inserting a tuple whose key is
+ * already in the file replaces the tuple with that key.  Committed writes are collected in an in-memory
+ * sorted memtable.  When the memtable is full it is written out, sequentially, as
+ * an immutable {@link SortedRun} file, so there are no random writes and nothing
+ * to force at commit.  When there are too many runs, a background thread merges
+ * them into one, dropping deleted and overwritten versions.  Each run has a Bloom
+ * filter over its keys, so a lookup of a key only reads runs that may contain it.
+ * <p>
+ * A transaction's writes are buffered privately (and are visible only to its own
+ * scans) until {@link #transactionComplete(TransactionId, boolean)} applies them
+ * to the memtable on commit or drops them on abort.  Before they are applied, the
+ * writes of a committing transaction are appended to a memtable log, which is
+ * forced to disk; the log is replayed when the file is opened and emptied
+ * whenever the memtable is written out, so committed writes survive a crash.
+ * <p>
+ * Locks are taken through the {@link AccessManager}.  Keys are locked with key
+ * locks (see {@link KeyId}), under the usual intention lock on the table: writes
+ * take an X lock on their key and lookups an S lock, so two transactions cannot
+ * update the same key based on what they read.  Any other scan locks the whole
+ * table in S mode.  LsmFiles keep no old versions, so snapshot transactions lock like any
+ * other transaction.
+ * <p>
+ * The runs of a table are stored as files named run-N.dat in a directory of their
+ * own, next to the memtable log, memtable.log; run pages are read through the
+ * {@link colgatedb.BufferManager}.
+ */
+public class LsmFile implements DbFile {
+
+    public static final int DEFAULT_MEMTABLE_SIZE = 1024;   // in tuples
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;   // in runs
+
+    /**
+     * Orders keys; used by the memtable and when merging runs.
+     */
+    static final Comparator<Field> KEY_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field a, Field b) {
+            if (a.equals(b)) {
+                return 0;
+            }
+            return a.compare(Op.LESS_THAN, b) ? -1 : 1;
+        }
+    };
+
+    /**
+     * A version of the tuple with a given key: either the tuple itself or a
+     * marker recording that the tuple was deleted.
+     */
+    static final class Version {
+        final Tuple tuple;
+        final boolean deleted;
+
+        Version(Tuple tuple, boolean deleted) {
+            this.tuple = tuple;
+            this.deleted = deleted;
+        }
+
+        Field key(int keyField) {
+            return tuple.getField(keyField);
+        }
+    }
+
+    private final TupleDesc td;
+    private final int tableid;
+    private final int keyField;
+    private final File directory;
+    private final File logFile;
+    private final Map<TransactionId, TreeMap<Field, Version>> pending = new ConcurrentHashMap<>();
+    private volatile ConcurrentSkipListMap<Field, Version> memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+    private volatile List<SortedRun> runs;   // newest first; replaced, never modified
+    private final List<SortedRun> obsoleteRuns = new ArrayList<>();
+    private int openIterators;
+    private int nextRunNumber;
+    private int memtableSize = DEFAULT_MEMTABLE_SIZE;
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private final ExecutorService compactor;
+    private Future<?> compaction;
+
+    /**
+     * Creates an LsmFile, opening any runs already stored in the directory.
+     *
+     * @param td the schema for records stored in this file
+     * @param tableid the unique id for this table
+     * @param keyField the index of the key field
+     * @param directory the directory in which runs are stored
+     */
+    public LsmFile(TupleDesc td, int tableid, int keyField, File directory) {
+        this.td = td;
+        this.tableid = tableid;
+        this.keyField = keyField;
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new DbException("cannot create directory " + directory);
+        }
+
+        TreeMap<Integer, File> runFiles = new TreeMap<>(Collections.reverseOrder());
+        File[] files = directory.listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            String name = f.getName();
+            if (name.startsWith("run-") && name.endsWith(".dat")) {
+                runFiles.put(Integer.parseInt(name.substring(4, name.length() - 4)), f);
+            }
+        }
+        List<SortedRun> opened = new ArrayList<>();
+        for (File f : runFiles.values()) {
+            opened.add(SortedRun.open(f, td, keyField));
+        }
+        runs = Collections.unmodifiableList(opened);
+        nextRunNumber = runFiles.isEmpty() ? 0 : runFiles.firstKey() + 1;
+        logFile = new File(directory, "memtable.log");
+        replayLog();
+
+        compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "lsm-compaction-" + tableid);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public int getId() {
+        return tableid;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the index of the key field
+     */
+    public int getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * Sets the number of tuples the memtable may hold before it is written out as a run.
+     */
+    public void setMemtableSize(int memtableSize) {
+        this.memtableSize = memtableSize;
+    }
+
+    /**
+     * Sets the number of runs that triggers a background compaction.
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public int numRuns() {
+        return runs.size();
+    }
+
+    /**
+     * @return the number of committed tuple versions held in the memtable
+     */
+    public int memtableSize() {
+        return memtable.size();
+    }
+
+    static boolean less(Field a, Field b) {
+        return KEY_ORDER.compare(a, b) < 0;
+    }
+
+    /**
+     * Inserts t, replacing the tuple with the same key if there is one.
+     */
+    @Override
+    public void insertTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
+        Database.getAccessManager().acquireKeyLock(tid, new KeyId(tableid, t.getField(keyField)), Permissions.READ_WRITE);
+        write(tid, new Version(copy(t), false));
+    }
+
+    @Override
+    public void deleteTuple(TransactionId tid, Tuple t) throws TransactionAbortedException {
+        Field key = t.getField(keyField);
+        Database.getAccessManager().acquireKeyLock(tid, new KeyId(tableid, key), Permissions.READ_WRITE);
+        if (get(tid, key) == null) {
+            throw new DbException("[ERROR] the tuple cannot be deleted or it is not a member of the file");
+        }
+        write(tid, new Version(copy(t), true));
+    }
+
+    private void write(TransactionId tid, Version v) {
+        // several threads (e.g., Exchange workers) may write for the same transaction
+        TreeMap<Field, Version> writes = pending.computeIfAbsent(tid, k -> new TreeMap<>(KEY_ORDER));
+        synchronized (writes) {
+            writes.put(v.key(keyField), v);
+        }
+    }
+
+    private Tuple copy(Tuple t) {
+        Tuple c = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            c.setField(i, t.getField(i));
+        }
+        return c;
+    }
+
+    /**
+     * Applies the buffered writes of a transaction to the memtable if it
+     * committed, after logging them, or drops them if it aborted.  Called when the
+     * transaction completes.
+     */
+    public void transactionComplete(TransactionId tid, boolean commit) {
+        TreeMap<Field, Version> writes = pending.remove(tid);
+        if (writes == null || !commit) {
+            return;
+        }
+        synchronized (this) {
+            logCommit(writes.values());
+            memtable.putAll(writes);
+            if (memtable.size() >= memtableSize) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the memtable out as a new run and starts a new, empty memtable.
+     * Schedules a compaction if there are now too many runs.
+     */
+    public synchronized void flush() {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        File file = new File(directory, "run-" + nextRunNumber++ + ".dat");
+        SortedRun run = SortedRun.write(file, td, keyField, memtable.values().iterator(), memtable.size());
+        List<SortedRun> newRuns = new ArrayList<>();
+        newRuns.add(run);
+        newRuns.addAll(runs);
+        runs = Collections.unmodifiableList(newRuns);
+        memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+        if (logFile.exists() && !logFile.delete()) {
+            throw new DbException("cannot delete " + logFile);
+        }
+        if (runs.size() >= compactionThreshold && (compaction == null || compaction.isDone())) {
+            compaction = compactor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    /**
+     * Appends the writes of a committing transaction to the memtable log, as one
+     * length-prefixed batch, and forces the log to disk.
+     */
+    private void logCommit(Collection<Version> writes) {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            DataOutputStream dos = new DataOutputStream(batch);
+            dos.writeInt(writes.size());
+            for (Version v : writes) {
+                dos.writeBoolean(v.deleted);
+                for (int i = 0; i < td.numFields(); i++) {
+                    v.tuple.getField(i).serialize(dos);
+                }
+            }
+            DataOutputStream log = new DataOutputStream(out);
+            log.writeInt(batch.size());
+            batch.writeTo(log);
+            log.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new DbException("cannot write to " + logFile + ": " + e);
+        }
+    }
+
+    /**
+     * Puts the writes recorded in the memtable log back into the memtable.  A batch
+     * cut short by a crash is ignored: its transaction never finished committing.
+     */
+    private void replayLog() {
+        if (!logFile.exists()) {
+            return;
+        }
+        try (DataInputStream log = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                byte[] batch = new byte[log.readInt()];
+                log.readFully(batch);
+                DataInputStream dis = new DataInputStream(new ByteArrayInputStream(batch));
+                for (int n = dis.readInt(); n > 0; n--) {
+                    boolean deleted = dis.readBoolean();
+                    Tuple t = new Tuple(td);
+                    for (int i = 0; i < td.numFields(); i++) {
+                        t.setField(i, td.getFieldType(i).parse(dis));
+                    }
+                    Version v = new Version(t, deleted);
+                    memtable.put(v.key(keyField), v);
+                }
+            }
+        } catch (EOFException e) {
+            // the end of the log
+        } catch (IOException e) {
+            throw new DbException("cannot read " + logFile + ": " + e);
+        }
+    }
+
+    /**
+     * Waits for a compaction started in the background (if any) to finish.
+     */
+    public void awaitCompaction() throws InterruptedException {
+        Future<?> f;
+        synchronized (this) {
+            f = compaction;
+        }
+        if (f != null) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new DbException("compaction failed: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Merges all of the current runs into a single run.  Only the newest version
+     * of each key is kept, and deleted keys are dropped entirely (there is no
+     * older run in which they could still appear).  Old runs are deleted once no
+     * iterator is reading them.
+     */
+    public void compact() {
+        List<SortedRun> toMerge;
+        String name;
+        synchronized (this) {
+            toMerge = runs;
+            if (toMerge.size() < 2) {
+                return;
+            }
+            name = "run-" + nextRunNumber++ + ".dat";
+        }
+        int expectedSize = 0;
+        List<Iterator<Version>> sources = new ArrayList<>();
+        for (SortedRun run : toMerge) {
+            sources.add(run.iterator());
+            expectedSize += run.numRecords();
+        }
+        final MergeIterator merged = new MergeIterator(sources, keyField);
+        Iterator<Version> live = new Iterator<Version>() {
+            private Version next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && merged.hasNext()) {
+                    Version v = merged.next();
+                    if (!v.deleted) {
+                        next = v;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Version next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Version v = next;
+                next = null;
+                return v;
+            }
+        };
+        SortedRun run = SortedRun.write(new File(directory, name), td, keyField, live, expectedSize);
+
+        synchronized (this) {
+            List<SortedRun> newRuns = new ArrayList<>(runs);
+            newRuns.removeAll(toMerge);
+            if (run.numRecords() > 0) {
+                newRuns.add(run);
+            } else {
+                obsoleteRuns.add(run);
+            }
+            runs = Collections.unmodifiableList(newRuns);
+            obsoleteRuns.addAll(toMerge);
+            deleteObsoleteRuns();
+        }
+    }
+
+    private synchronized void deleteObsoleteRuns() {
+        if (openIterators == 0) {
+            for (SortedRun run : obsoleteRuns) {
+                run.delete();
+            }
+            obsoleteRuns.clear();
+        }
+    }
+
+    /**
+     * Looks up the tuple with the given key, as seen by the given transaction,
+     * after locking the key in S mode.  Only runs whose Bloom filter may contain the
+     * key are read.
+     *
+     * @return the tuple, or null if there is no tuple with the key
+     */
+    public Tuple get(TransactionId tid, Field key) throws TransactionAbortedException {
+        Database.getAccessManager().acquireKeyLock(tid, new KeyId(tableid, key), Permissions.READ_ONLY);
+        Version v = null;
+        TreeMap<Field, Version> writes = pending.get(tid);
+        if (writes != null) {
+            synchronized (writes) {
+                v = writes.get(key);
+            }
+        }
+        if (v == null) {
+            List<SortedRun> snapshotRuns;
+            synchronized (this) {
+                v = memtable.get(key);
+                snapshotRuns = runs;
+                openIterators++;
+            }
+            try {
+                for (int i = 0; v == null && i < snapshotRuns.size(); i++) {
+                    v = snapshotRuns.get(i).get(key);
+                }
+            } finally {
+                closeSnapshot();
+            }
+        }
+        return v == null || v.deleted ? null : v.tuple;
+    }
+
+    private synchronized void closeSnapshot() {
+        openIterators--;
+        deleteObsoleteRuns();
+    }
+
+    @Override
+    public DbFileIterator iterator(TransactionId tid) {
+        return new LsmFileIterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples satisfying p.  If p is an equality
+     * predicate on the key field, runs that cannot contain the key (according to
+     * their key range and Bloom filter) are not read.
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, Predicate p) {
+        return new LsmFileIterator(tid, p);
+    }
+
+    /**
+     * Merges iterators over versions sorted by key into a single sorted iterator.
+     * Sources are given newest first; when several sources have a version of the
+     * same key, only the version from the newest source is returned.
+     */
+    static class MergeIterator implements Iterator<Version> {
+        private final List<Iterator<Version>> sources;
+        private final int keyField;
+        private final PriorityQueue<Head> heads;
+
+        private static class Head {
+            final Field key;
+            final Version version;
+            final int source;
+
+            Head(Field key, Version version, int source) {
+                this.key = key;
+                this.version = version;
+                this.source = source;
+            }
+        }
+
+        MergeIterator(List<Iterator<Version>> sources, int keyField) {
+            this.sources = sources;
+            this.keyField = keyField;
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()), new Comparator<Head>() {
+                @Override
+                public int compare(Head a, Head b) {
+                    int c = KEY_ORDER.compare(a.key, b.key);
+                    return c != 0 ? c : Integer.compare(a.source, b.source);
+                }
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                advance(i);
+            }
+        }
+
+        private void advance(int source) {
+            Iterator<Version> it = sources.get(source);
+            if (it.hasNext()) {
+                Version v = it.next();
+                heads.add(new Head(v.key(keyField), v, source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Version next() {
+            if (heads.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Head newest = heads.poll();
+            advance(newest.source);
+            while (!heads.isEmpty() && KEY_ORDER.compare(heads.peek().key, newest.key) == 0) {
+                advance(heads.poll().source);
+            }
+            return newest.version;
+        }
+    }
+
+    /**
+     * @see DbFileIterator
+     */
+    private class LsmFileIterator implements DbFileIterator {
+        private final TransactionId tid;
+        private final Predicate predicate;   // null if every tuple should be returned
+        private final Field pointKey;        // non-null for an equality predicate on the key
+        private ConcurrentSkipListMap<Field, Version> snapshotMemtable;
+        private List<SortedRun> snapshotRuns;
+        private MergeIterator merged;
+        private Tuple nextTuple;
+
+        public LsmFileIterator(TransactionId tid, Predicate predicate) {
+            this.tid = tid;
+            this.predicate = predicate;
+            this.pointKey = predicate != null && predicate.getField() == keyField
+                    && predicate.getOp() == Op.EQUALS ? predicate.getOperand() : null;
+        }
+
+        /**
+         * Locks the key of a point lookup, or else the whole table, in S mode, and
+         * takes a snapshot of the memtable and runs.
+         */
+        @Override
+        public void open() throws TransactionAbortedException {
+            if (snapshotRuns != null) {
+                return;
+            }
+            AccessManager am = Database.getAccessManager();
+            if (pointKey != null) {
+                am.acquireKeyLock(tid, new KeyId(tableid, pointKey), Permissions.READ_ONLY);
+            } else {
+                am.acquireTableLock(tid, tableid, LockMode.S);
+            }
+            synchronized (LsmFile.this) {
+                snapshotMemtable = memtable;
+                snapshotRuns = runs;
+                openIterators++;
+            }
+            rewind();
+        }
+
+        @Override
+        public boolean hasNext() throws TransactionAbortedException {
+            if (merged == null) {
+                return false;
+            }
+            while (nextTuple == null && merged.hasNext()) {
+                Version v = merged.next();
+                if (!v.deleted && (predicate == null || predicate.filter(v.tuple))) {
+                    nextTuple = v.tuple;
+                }
+            }
+            return nextTuple != null;
+        }
+
+        @Override
+        public Tuple next() throws TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tuple t = nextTuple;
+            nextTuple = null;
+            return t;
+        }
+
+        @Override
+        public void rewind() throws TransactionAbortedException {
+            if (snapshotRuns == null) {
+                return;
+            }
+            List<Iterator<Version>> sources = new ArrayList<>();
+            TreeMap<Field, Version> writes = pending.get(tid);
+            if (writes != null) {
+                synchronized (writes) {
+                    sources.add(new ArrayList<>(writes.values()).iterator());
+                }
+            }
+            if (pointKey == null) {
+                sources.add(snapshotMemtable.values().iterator());
+                for (SortedRun run : snapshotRuns) {
+                    sources.add(run.iterator());
+                }
+            } else {
+                // at most one version per source; runs are only read if their Bloom filter allows
+                sources.add(singleton(snapshotMemtable.get(pointKey)));
+                for (SortedRun run : snapshotRuns) {
+                    sources.add(singleton(run.get(pointKey)));
+                }
+            }
+            merged = new MergeIterator(sources, keyField);
+            nextTuple = null;
+        }
+
+        private Iterator<Version> singleton(Version v) {
+            return v == null ? Collections.<Version>emptyIterator() : Collections.singletonList(v).iterator();
+        }
+
+        @Override
+        public void close() {
+            if (snapshotRuns != null) {
+                snapshotRuns = null;
+                snapshotMemtable = null;
+                merged = null;
+                nextTuple = null;
+                closeSnapshot();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManager;
+import colgatedb.BufferManager;
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.page.*;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An NGramIndex is an inverted index from the trigrams (substrings of length 3)
+ * of a string column of a HeapFile to the RecordIds of the records containing
+ * them.  Any record satisfying {@code column LIKE pattern} contains every trigram
+ * of the pattern, so intersecting the posting lists of those trigrams gives a
+ * (usually small) set of candidate records.
+ * <p>
+ * Postings are stored as (trigram, page number, slot) records in SlottedPages of
+ * a separate file, appended in insertion order and read and written through the
+ * {@link AccessManager}.  A small in-memory directory remembers which index pages
+ * hold postings of each trigram; it is rebuilt from the postings when an existing
+ * index file is opened.  Postings are never removed: a posting may refer to a
+ * record that has since been deleted or replaced, or whose insert was aborted, so
+ * candidates must always be re-checked against the predicate (see
+ * {@link colgatedb.operators.NGramScan}).
+ * <p>
+ * Since stray postings are harmless, index pages are not locked.  Appending
+ * postings only latches (synchronizes on) the last page while it is modified, so
+ * concurrent inserters do not wait for each other to complete.
+ */
+public class NGramIndex {
+
+    public static final int N = 3;
+
+    private static final TupleDesc POSTING_TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+            new String[]{"gram", "page", "slot"});
+
+    private final HeapFile base;
+    private final int field;
+    private final int indexid;
+    private final SlottedPageMaker pageMaker;
+    private final Map<Integer, Set<Integer>> directory = new ConcurrentHashMap<>();
+    private int numPages;
+
+    /**
+     * Creates an n-gram index on a string column of the given HeapFile.  The index
+     * is NOT attached to the HeapFile; see {@link HeapFile#addNGramIndex(NGramIndex)}.
+     *
+     * @param base the HeapFile being indexed
+     * @param field the index of the indexed column, which must be a string column
+     * @param file the OS file in which the postings are stored, either empty or
+     *             holding the postings of an earlier index on the same column
+     */
+    public NGramIndex(HeapFile base, int field, File file) {
+        if (base.getTupleDesc().getFieldType(field) != Type.STRING_TYPE) {
+            throw new DbException("n-gram indexes can only be built on string columns");
+        }
+        this.base = base;
+        this.field = field;
+        this.pageMaker = new SlottedPageMaker(POSTING_TD, Database.getPageSize());
+        this.indexid = file.getAbsolutePath().hashCode();
+        Database.getDiskManager().addFileEntry(indexid, file.getAbsolutePath());
+        this.numPages = Database.getDiskManager().getNumPages(indexid);
+        loadDirectory();
+    }
+
+    /**
+     * Rebuilds the directory from the postings stored in the index file.
+     */
+    private void loadDirectory() {
+        BufferManager bm = Database.getBufferManager();
+        for (int pageno = 0; pageno < numPages; pageno++) {
+            PageId pid = new SimplePageId(indexid, pageno);
+            SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext()) {
+                int gram = ((IntField) it.next().getField(0)).getValue();
+                directory.computeIfAbsent(gram, k -> new ConcurrentSkipListSet<>()).add(pageno);
+            }
+            bm.unpinPage(pid, false);
+        }
+    }
+
+    /**
+     * @return the index of the indexed column in the base file
+     */
+    public int getField() {
+        return field;
+    }
+
+    /**
+     * @return the id of the index file (used in the PageIds of index pages)
+     */
+    public int getId() {
+        return indexid;
+    }
+
+    public int numPages() {
+        return numPages;
+    }
+
+    /**
+     * Writes a page of the index to disk, leaving it in the buffer pool as it is.  The
+     * postings of transactions that have not completed are written too, as they only
+     * add false candidates; see {@link HeapFile#writeCommitted(PageId)}.
+     */
+    void writePage(PageId pid) {
+        BufferManager bm = Database.getBufferManager();
+        SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+        try {
+            synchronized (p) {
+                Database.getDiskManager().writePage(p);
+            }
+        } finally {
+            bm.unpinPage(pid, false);
+        }
+    }
+
+    /**
+     * Returns the keys of the distinct trigrams of s.  A key packs the three
+     * characters into an int; distinct trigrams may share a key, which only adds
+     * false candidates.
+     */
+    public static Set<Integer> trigrams(String s) {
+        Set<Integer> grams = new HashSet<>();
+        for (int i = 0; i + N <= s.length(); i++) {
+            grams.add((s.charAt(i) & 0x3FF) << 20 | (s.charAt(i + 1) & 0x3FF) << 10 | (s.charAt(i + 2) & 0x3FF));
+        }
+        return grams;
+    }
+
+    /**
+     * Populates the index from the current contents of the base file.  Should be
+     * called once, on an index whose file is empty, before the index is attached.
+     *
+     * @param tid the transaction on whose behalf the index is built
+     */
+    public void build(TransactionId tid) throws TransactionAbortedException {
+        DbFileIterator it = base.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            insert(tid, it.next());
+        }
+        it.close();
+    }
+
+    /**
+     * Adds postings for the trigrams of a base tuple (which has just been stored
+     * in the base file).  Postings are appended to the last page of the index file.
+     */
+    void insert(TransactionId tid, Tuple baseTuple) throws TransactionAbortedException {
+        RecordId rid = baseTuple.getRecordId();
+        Iterator<Integer> grams = trigrams(((StringField) baseTuple.getField(field)).getValue()).iterator();
+        AccessManager am = Database.getAccessManager();
+        Integer gram = grams.hasNext() ? grams.next() : null;
+        while (gram != null) {
+            PageId pid;
+            synchronized (this) {
+                if (numPages == 0) {
+                    am.allocatePage(new SimplePageId(indexid, numPages));
+                    numPages++;
+                }
+                pid = new SimplePageId(indexid, numPages - 1);
+            }
+            SlottedPage p = (SlottedPage) am.pinPage(tid, pid, pageMaker);
+            synchronized (p) {
+                while (gram != null && p.getNumEmptySlots() > 0) {
+                    Tuple posting = new Tuple(POSTING_TD);
+                    posting.setField(0, new IntField(gram));
+                    posting.setField(1, new IntField(rid.getPageId().pageNumber()));
+                    posting.setField(2, new IntField(rid.tupleno()));
+                    try {
+                        p.insertTuple(posting);
+                    } catch (PageException e) {
+                        throw new DbException("[ERROR] " + e);
+                    }
+                    directory.computeIfAbsent(gram, k -> new ConcurrentSkipListSet<>()).add(pid.pageNumber());
+                    gram = grams.hasNext() ? grams.next() : null;
+                }
+            }
+            am.unpinPage(tid, p, true);
+            if (gram != null) {
+                synchronized (this) {
+                    if (pid.pageNumber() == numPages - 1) {
+                        am.allocatePage(new SimplePageId(indexid, numPages));
+                        numPages++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the RecordIds of the records whose indexed column may contain the
+     * given pattern, sorted by page and slot.  Every record that contains the
+     * pattern is returned, but some returned records may not contain it.
+     *
+     * @return the candidate RecordIds, or null if the pattern is too short to have
+     * any trigrams, in which case the index cannot narrow the search
+     */
+    public List<RecordId> candidates(TransactionId tid, String pattern) throws TransactionAbortedException {
+        Set<Integer> grams = trigrams(pattern);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        // start with the trigram whose postings occupy the fewest pages
+        List<Integer> order = new ArrayList<>(grams);
+        order.sort(Comparator.comparingInt(g -> postingPages(g).size()));
+
+        Set<RecordId> result = null;
+        for (int gram : order) {
+            Set<RecordId> postings = readPostings(tid, gram, result);
+            result = postings;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        List<RecordId> rids = new ArrayList<>(result);
+        rids.sort(Comparator.comparingInt((RecordId r) -> r.getPageId().pageNumber())
+                .thenComparingInt(RecordId::tupleno));
+        return rids;
+    }
+
+    private Set<Integer> postingPages(int gram) {
+        Set<Integer> pages = directory.get(gram);
+        return pages == null ? Collections.<Integer>emptySet() : pages;
+    }
+
+    /**
+     * Reads the posting list of a trigram.  If restrictTo is not null, only the
+     * postings of RecordIds in restrictTo are returned.
+     */
+    private Set<RecordId> readPostings(TransactionId tid, int gram, Set<RecordId> restrictTo)
+            throws TransactionAbortedException {
+        AccessManager am = Database.getAccessManager();
+        Set<RecordId> postings = new HashSet<>();
+        for (int pageno : postingPages(gram)) {
+            SlottedPage p = (SlottedPage) am.pinPage(tid, new SimplePageId(indexid, pageno), pageMaker);
+            synchronized (p) {
+                Iterator<Tuple> it = p.iterator();
+                while (it.hasNext()) {
+                    Tuple posting = it.next();
+                    if (((IntField) posting.getField(0)).getValue() != gram) {
+                        continue;
+                    }
+                    RecordId rid = new RecordId(
+                            new SimplePageId(base.getId(), ((IntField) posting.getField(1)).getValue()),
+                            ((IntField) posting.getField(2)).getValue());
+                    if (restrictTo == null || restrictTo.contains(rid)) {
+                        postings.add(rid);
+                    }
+                }
+            }
+            am.unpinPage(tid, p, false);
+        }
+        return postings;
+    }
+}
@@ -0,0 +1,268 @@
+package colgatedb.dbfile;
+
+import colgatedb.BufferManager;
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.DiskManagerImpl;
+import colgatedb.operators.BloomFilter;
+import colgatedb.page.*;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A SortedRun is an immutable file of tuple versions sorted by key, written
+ * once (sequentially) by an {@link LsmFile} when it flushes its memtable or
+ * compacts older runs.  Each stored record is a tuple of the table followed by
+ * an int flag that is 1 if the record marks the deletion of its key.
+ * <p>
+ * The run keeps a small in-memory summary: the smallest and largest key, the
+ * first key of every page (used to find the single page that may hold a key)
+ * and a Bloom filter over the keys (used to skip the run altogether).
+ */
+class SortedRun {
+
+    private static final double BLOOM_FILTER_FPP = 0.01;
+
+    private final File file;
+    private final int runid;
+    private final TupleDesc td;
+    private final TupleDesc runTd;
+    private final int keyField;
+    private final SlottedPageMaker pageMaker;
+    private final List<Field> fenceKeys = new ArrayList<>();   // first key of each page
+    private BloomFilter bloomFilter;
+    private Field maxKey;
+    private int numRecords;
+
+    private SortedRun(File file, TupleDesc td, int keyField) {
+        this.file = file;
+        this.runid = file.getAbsolutePath().hashCode();
+        this.td = td;
+        this.runTd = runTupleDesc(td);
+        this.keyField = keyField;
+        this.pageMaker = new SlottedPageMaker(runTd, Database.getPageSize());
+        Database.getDiskManager().addFileEntry(runid, file.getAbsolutePath());
+    }
+
+    /**
+     * Writes a new run containing the given versions, which must be sorted by key
+     * and have distinct keys.  Pages are filled one at a time and appended to the
+     * file; they do not pass through the buffer pool since they are never modified.
+     *
+     * @param expectedSize an estimate of the number of versions (used to size the Bloom filter)
+     */
+    static SortedRun write(File file, TupleDesc td, int keyField, Iterator<LsmFile.Version> versions,
+                           int expectedSize) {
+        SortedRun run = new SortedRun(file, td, keyField);
+        run.bloomFilter = new BloomFilter(Math.max(1, expectedSize), BLOOM_FILTER_FPP);
+        DiskManagerImpl dm = Database.getDiskManager();
+        SlottedPage page = null;
+        while (versions.hasNext()) {
+            LsmFile.Version v = versions.next();
+            if (page == null || page.getNumEmptySlots() == 0) {
+                if (page != null) {
+                    dm.writePage(page);
+                }
+                page = (SlottedPage) run.pageMaker.makePage(new SimplePageId(run.runid, run.fenceKeys.size()));
+                run.fenceKeys.add(v.key(keyField));
+            }
+            try {
+                page.insertTuple(run.toRecord(v));
+            } catch (PageException e) {
+                throw new DbException("[ERROR] " + e);
+            }
+            run.include(v.key(keyField));
+        }
+        if (page != null) {
+            dm.writePage(page);
+        }
+        return run;
+    }
+
+    /**
+     * Opens a run written earlier and rebuilds its in-memory summary.
+     */
+    static SortedRun open(File file, TupleDesc td, int keyField) {
+        SortedRun run = new SortedRun(file, td, keyField);
+        int numPages = Database.getDiskManager().getNumPages(run.runid);
+        int capacity = SlottedPageFormatter.computePageCapacity(Database.getPageSize(), run.runTd);
+        run.bloomFilter = new BloomFilter(Math.max(1, numPages * capacity), BLOOM_FILTER_FPP);
+        for (int pageno = 0; pageno < numPages; pageno++) {
+            List<LsmFile.Version> versions = run.readPage(pageno);
+            run.fenceKeys.add(versions.get(0).key(keyField));
+            for (LsmFile.Version v : versions) {
+                run.include(v.key(keyField));
+            }
+        }
+        return run;
+    }
+
+    private void include(Field key) {
+        bloomFilter.add(key);
+        maxKey = key;
+        numRecords++;
+    }
+
+    static TupleDesc runTupleDesc(TupleDesc td) {
+        int n = td.numFields();
+        Type[] types = new Type[n + 1];
+        String[] names = new String[n + 1];
+        for (int i = 0; i < n; i++) {
+            types[i] = td.getFieldType(i);
+            names[i] = td.getFieldName(i);
+        }
+        types[n] = Type.INT_TYPE;
+        names[n] = "deleted";
+        return new TupleDesc(types, names);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int numPages() {
+        return fenceKeys.size();
+    }
+
+    int numRecords() {
+        return numRecords;
+    }
+
+    BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * @return false if the run definitely does not contain a version of the key
+     */
+    boolean mightContain(Field key) {
+        return numRecords > 0 && !LsmFile.less(key, fenceKeys.get(0)) && !LsmFile.less(maxKey, key)
+                && bloomFilter.mightContain(key);
+    }
+
+    /**
+     * @return the version of the key stored in this run, or null if there is none
+     */
+    LsmFile.Version get(Field key) {
+        if (!mightContain(key)) {
+            return null;
+        }
+        // find the last page whose first key is <= key
+        int lo = 0, hi = fenceKeys.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) / 2;
+            if (LsmFile.less(key, fenceKeys.get(mid))) {
+                hi = mid - 1;
+            } else {
+                lo = mid;
+            }
+        }
+        for (LsmFile.Version v : readPage(lo)) {
+            if (v.key(keyField).equals(key)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return an iterator over the versions in this run, in key order
+     */
+    Iterator<LsmFile.Version> iterator() {
+        return new Iterator<LsmFile.Version>() {
+            private int pageno = 0;
+            private Iterator<LsmFile.Version> page = null;
+
+            @Override
+            public boolean hasNext() {
+                while (page == null || !page.hasNext()) {
+                    if (pageno >= numPages()) {
+                        return false;
+                    }
+                    page = readPage(pageno++).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public LsmFile.Version next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Reads the versions stored on a page of the run through the buffer pool.
+     */
+    private List<LsmFile.Version> readPage(int pageno) {
+        BufferManager bm = Database.getBufferManager();
+        PageId pid = new SimplePageId(runid, pageno);
+        SlottedPage p = (SlottedPage) bm.pinPage(pid, pageMaker);
+        List<LsmFile.Version> versions = new ArrayList<>();
+        Iterator<Tuple> it = p.iterator();
+        while (it.hasNext()) {
+            versions.add(fromRecord(it.next()));
+        }
+        bm.unpinPage(pid, false);
+        return versions;
+    }
+
+    /**
+     * Deletes the file of this run.  The run must no longer be read.
+     */
+    void delete() {
+        BufferManager bm = Database.getBufferManager();
+        for (int pageno = 0; pageno < numPages(); pageno++) {
+            bm.discardPage(new SimplePageId(runid, pageno));
+        }
+        Database.getDiskManager().removeFileEntry(runid);
+        file.delete();
+    }
+
+    private Tuple toRecord(LsmFile.Version v) {
+        Tuple record = new Tuple(runTd);
+        int n = runTd.numFields() - 1;
+        for (int i = 0; i < n; i++) {
+            record.setField(i, v.tuple.getField(i));
+        }
+        record.setField(n, new IntField(v.deleted ? 1 : 0));
+        return record;
+    }
+
+    private LsmFile.Version fromRecord(Tuple record) {
+        int n = td.numFields();
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < n; i++) {
+            t.setField(i, record.getField(i));
+        }
+        t.setRecordId(record.getRecordId());
+        return new LsmFile.Version(t, ((IntField) record.getField(n)).getValue() == 1);
+    }
+}
@@ -0,0 +1,162 @@
+package colgatedb.dbfile;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.DiskManagerImpl;
+import colgatedb.page.SimplePageId;
+import colgatedb.page.SlottedPage;
+import colgatedb.page.SlottedPageMaker;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A SpillFile is a temporary, append-only file of tuples used by operators whose
+ * input does not fit in their memory budget (e.g., to hold a partition of a hash
+ * join or a sorted run of an external sort).  Tuples are collected on a single
+ * in-memory page that is appended to the file through the {@link DiskManagerImpl}
+ * when it is full; the pages bypass the buffer pool since they are private to
+ * one operator and are read back at most a few times.
+ * <p>
+ * All tuples must have the same schema, which is taken from the first tuple
+ * added.  Once reading has begun no more tuples may be added.  The file is
+ * removed by {@link #delete()}.
+ */
+public class SpillFile {
+
+    private final File file;
+    private final int fileid;
+    private SlottedPageMaker pageMaker;
+    private SlottedPage page;     // page being filled, null once the file is sealed
+    private int pageSlot;
+    private int numPages;
+    private int size;
+    private boolean sealed;
+
+    public SpillFile() {
+        try {
+            file = File.createTempFile("spill", ".dat");
+        } catch (IOException e) {
+            throw new DbException("[ERROR] cannot create spill file: " + e);
+        }
+        file.deleteOnExit();
+        fileid = file.getAbsolutePath().hashCode();
+        Database.getDiskManager().addFileEntry(fileid, file.getAbsolutePath());
+    }
+
+    /**
+     * Appends a copy of t to the file.
+     */
+    public void add(Tuple t) {
+        if (sealed) {
+            throw new IllegalStateException("cannot add to a spill file that is being read");
+        }
+        TupleDesc td = t.getTupleDesc();
+        if (pageMaker == null) {
+            pageMaker = new SlottedPageMaker(td, Database.getPageSize());
+        }
+        if (page == null) {
+            page = (SlottedPage) pageMaker.makePage(new SimplePageId(fileid, numPages));
+            pageSlot = 0;
+        }
+        Tuple copy = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        page.insertTuple(pageSlot++, copy);
+        size++;
+        if (pageSlot == page.getNumSlots()) {
+            writePage();
+        }
+    }
+
+    private void writePage() {
+        Database.getDiskManager().writePage(page);
+        numPages++;
+        page = null;
+    }
+
+    /**
+     * @return the number of tuples in the file
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of pages of the file, including a partially filled last page
+     */
+    public int numPages() {
+        return numPages + (page == null ? 0 : 1);
+    }
+
+    /**
+     * Returns an iterator over the tuples in the order they were added.  The
+     * file may be read several times, but no tuples may be added afterwards.
+     */
+    public Iterator<Tuple> iterator() {
+        if (!sealed) {
+            if (page != null) {
+                writePage();
+            }
+            sealed = true;
+        }
+        return new Iterator<Tuple>() {
+            private int pageno = 0;
+            private SlottedPage current;
+            private int slot;
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                while (current == null || slot == current.getNumSlots() || !current.isSlotUsed(slot)) {
+                    if (current == null || slot == current.getNumSlots()) {
+                        current = (SlottedPage) Database.getDiskManager().readPage(
+                                new SimplePageId(fileid, pageno++), pageMaker);
+                        slot = 0;
+                    } else {
+                        slot++;
+                    }
+                }
+                remaining--;
+                return current.getTuple(slot++);
+            }
+        };
+    }
+
+    /**
+     * Removes the file from disk.
+     */
+    public void delete() {
+        Database.getDiskManager().removeFileEntry(fileid);
+        file.delete();
+        page = null;
+    }
+}
@@ -0,0 +1,195 @@
+package colgatedb.dbfile;
+
+import colgatedb.operators.Predicate;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A ZoneMap keeps a min/max summary of every int column for each page of a
+ * HeapFile.  A scan with a predicate can consult the summary and skip pages
+ * whose range cannot possibly satisfy the predicate.
+ * <p>
+ * A zone may be unknown (e.g., for pages that were on disk before the HeapFile
+ * was opened), in which case the page must always be scanned.  A known zone is
+ * allowed to be wider than the actual contents of the page but never narrower:
+ * inserts widen the zone, while deletes simply forget it (the deleted tuple may
+ * come back if the deleting transaction aborts).
+ * <p>
+ * Each page also has a stamp that is bumped on every modification so that a
+ * zone computed from a page that changed in the meantime is not recorded.
+ */
+class ZoneMap {
+
+    private final int[] intFields;           // indexes of the int columns being summarized
+    private final ArrayList<int[]> mins;     // per page; null if zone is unknown
+    private final ArrayList<int[]> maxs;
+    private final ArrayList<Integer> stamps;
+
+    ZoneMap(TupleDesc td) {
+        int numInts = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                numInts++;
+            }
+        }
+        intFields = new int[numInts];
+        int j = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                intFields[j++] = i;
+            }
+        }
+        mins = new ArrayList<>();
+        maxs = new ArrayList<>();
+        stamps = new ArrayList<>();
+    }
+
+    /**
+     * @return the current modification stamp of the page, to be passed to
+     * {@link #setZone(int, Iterator, int)}.
+     */
+    synchronized int getStamp(int pageno) {
+        ensurePage(pageno);
+        return stamps.get(pageno);
+    }
+
+    /**
+     * @return true if a summary is available for the page.
+     */
+    synchronized boolean isKnown(int pageno) {
+        return pageno < mins.size() && mins.get(pageno) != null;
+    }
+
+    /**
+     * Records a brand new (empty) page; its zone is known to be empty.
+     */
+    synchronized void addEmptyPage(int pageno) {
+        ensurePage(pageno);
+        int[] min = new int[intFields.length];
+        int[] max = new int[intFields.length];
+        for (int i = 0; i < intFields.length; i++) {
+            min[i] = Integer.MAX_VALUE;
+            max[i] = Integer.MIN_VALUE;
+        }
+        mins.set(pageno, min);
+        maxs.set(pageno, max);
+        bump(pageno);
+    }
+
+    /**
+     * Widens the zone of the page (if known) to cover tuple t.
+     */
+    synchronized void include(int pageno, Tuple t) {
+        ensurePage(pageno);
+        int[] min = mins.get(pageno);
+        int[] max = maxs.get(pageno);
+        if (min != null) {
+            for (int i = 0; i < intFields.length; i++) {
+                int v = ((IntField) t.getField(intFields[i])).getValue();
+                min[i] = Math.min(min[i], v);
+                max[i] = Math.max(max[i], v);
+            }
+        }
+        bump(pageno);
+    }
+
+    /**
+     * Forgets the zone of the page.  It will be recomputed by the next scan.
+     */
+    synchronized void invalidate(int pageno) {
+        ensurePage(pageno);
+        mins.set(pageno, null);
+        maxs.set(pageno, null);
+        bump(pageno);
+    }
+
+    /**
+     * Computes the zone of a page from its tuples and records it, unless the
+     * page has been modified since stamp was obtained.
+     */
+    synchronized void setZone(int pageno, Iterator<Tuple> tuples, int stamp) {
+        ensurePage(pageno);
+        if (stamps.get(pageno) != stamp) {
+            return;
+        }
+        addEmptyPage(pageno);
+        while (tuples.hasNext()) {
+            include(pageno, tuples.next());
+        }
+    }
+
+    /**
+     * @return false only if the zone of the page is known and no tuple within
+     * it can satisfy p.
+     */
+    synchronized boolean mightMatch(int pageno, Predicate p) {
+        if (!isKnown(pageno) || p.getOperand().getType() != Type.INT_TYPE) {
+            return true;
+        }
+        int idx = -1;
+        for (int i = 0; i < intFields.length; i++) {
+            if (intFields[i] == p.getField()) {
+                idx = i;
+            }
+        }
+        if (idx == -1) {
+            return true;
+        }
+        int min = mins.get(pageno)[idx];
+        int max = maxs.get(pageno)[idx];
+        if (min > max) {
+            return false;   // page is empty
+        }
+        int v = ((IntField) p.getOperand()).getValue();
+        Op op = p.getOp();
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return min <= v && v <= max;
+            case GREATER_THAN:
+                return max > v;
+            case GREATER_THAN_OR_EQ:
+                return max >= v;
+            case LESS_THAN:
+                return min < v;
+            case LESS_THAN_OR_EQ:
+                return min <= v;
+            case NOT_EQUALS:
+                return !(min == v && max == v);
+        }
+        return true;
+    }
+
+    private void ensurePage(int pageno) {
+        while (mins.size() <= pageno) {
+            mins.add(null);
+            maxs.add(null);
+            stamps.add(0);
+        }
+    }
+
+    private void bump(int pageno) {
+        stamps.set(pageno, stamps.get(pageno) + 1);
+    }
+}
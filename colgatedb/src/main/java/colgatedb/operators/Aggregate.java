@@ -2,6 +2,7 @@ package colgatedb.operators;
 
 import colgatedb.DbException;
 import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.IntField;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 import colgatedb.tuple.Type;
@@ -25,11 +26,34 @@ import java.util.NoSuchElementException;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
- * min). Note that we only support aggregates over a single column, grouped by a
- * single column.
+ * min). The constructor taking arrays computes several aggregates, grouped by
+ * several columns, in a single pass over the child; the output tuples have the
+ * group-by columns first, followed by one column per aggregate.
+ * <p>
+ * In general the groups are collected by an {@link IntegerAggregator}.  When the
+ * child is an {@link OrderBy} whose leading sort fields are the grouping fields,
+ * or when there is no grouping, the input arrives one group at a time and the
+ * aggregate is streamed instead: each group is emitted as soon as a tuple of the
+ * next group is read, keeping only the running values of the current group in
+ * memory.
  */
 public class Aggregate extends Operator {
 
+    private DbIterator child;
+    private final int[] gfields;
+    private final int[] afields;
+    private final Aggregator.Op[] aops;
+    private final int memoryPages;
+    private final TupleDesc td;
+    private boolean streaming;
+    private Aggregator aggregator;
+    private DbIterator results;
+
+    // state of a streaming aggregate
+    private boolean open;
+    private Tuple pending;      // first tuple of the next group, already read from the child
+    private Tuple nextTuple;
+
     /**
      * Constructor.
      * <p/>
@@ -44,16 +68,111 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
-        throw new UnsupportedOperationException("implement me!");
+        this(child, afield, gfield, aop, IntegerAggregator.DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * @param memoryPages the number of pages worth of groups that may be held in
+     *                    memory; groups beyond that are spilled to disk
+     */
+    public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop, int memoryPages) {
+        this(child, gfield == Aggregator.NO_GROUPING ? new int[0] : new int[]{gfield},
+                new int[]{afield}, new Aggregator.Op[]{aop}, memoryPages);
+    }
+
+    /**
+     * @param child   The DbIterator that is feeding us tuples.
+     * @param gfields The columns over which we are grouping the result; empty if
+     *                there is no grouping
+     * @param afields The column over which each aggregate is computed
+     * @param aops    The aggregation operator of each aggregate
+     */
+    public Aggregate(DbIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops) {
+        this(child, gfields, afields, aops, IntegerAggregator.DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * @param memoryPages the number of pages worth of groups that may be held in
+     *                    memory; groups beyond that are spilled to disk
+     */
+    public Aggregate(DbIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops, int memoryPages) {
+        if (afields.length != aops.length || afields.length == 0) {
+            throw new IllegalArgumentException("expected one operator for each aggregate field");
+        }
+        this.child = child;
+        this.gfields = gfields.clone();
+        this.afields = afields.clone();
+        this.aops = aops.clone();
+        this.memoryPages = memoryPages;
+        TupleDesc childTd = child.getTupleDesc();
+        Type[] types = new Type[gfields.length + afields.length];
+        String[] names = new String[types.length];
+        for (int i = 0; i < gfields.length; i++) {
+            types[i] = childTd.getFieldType(gfields[i]);
+            names[i] = childTd.getFieldName(gfields[i]);
+        }
+        for (int i = 0; i < afields.length; i++) {
+            if (childTd.getFieldType(afields[i]) == Type.STRING_TYPE && aops[i] != Aggregator.Op.COUNT) {
+                throw new IllegalArgumentException("only COUNT is supported over strings, got " + aops[i]);
+            }
+            types[gfields.length + i] = Type.INT_TYPE;
+            names[gfields.length + i] = nameOfAggregatorOp(aops[i]) + " (" + childTd.getFieldName(afields[i]) + ")";
+        }
+        td = new TupleDesc(types, names);
+        setTupleDesc(td);
+        streaming = isGroupedInput(child);
+    }
+
+    /**
+     * @return true if the child returns the tuples of each group consecutively,
+     * i.e., it is sorted on the grouping fields (in any order) before any others
+     */
+    private boolean isGroupedInput(DbIterator child) {
+        if (gfields.length == 0) {
+            return true;
+        }
+        if (!(child instanceof OrderBy)) {
+            return false;
+        }
+        int[] sortFields = ((OrderBy) child).getOrderByFields();
+        if (sortFields.length < gfields.length) {
+            return false;
+        }
+        for (int i = 0; i < gfields.length; i++) {
+            boolean found = false;
+            for (int gfield : gfields) {
+                found |= sortFields[i] == gfield;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the aggregate is computed over input that is grouped
+     * already, without a hash table
+     */
+    public boolean isStreaming() {
+        return streaming;
     }
 
     /**
      * @return If this aggregate is accompanied by a groupby, return the groupby
      * field index in the <b>INPUT</b> tuples. If not, return
-     * {@link Aggregator#NO_GROUPING}
+     * {@link Aggregator#NO_GROUPING}.  If there are several group-by fields,
+     * the first one is returned.
      */
     public int groupField() {
-        throw new UnsupportedOperationException("implement me!");
+        return gfields.length == 0 ? Aggregator.NO_GROUPING : gfields[0];
+    }
+
+    /**
+     * @return the group-by field indexes in the <b>INPUT</b> tuples
+     */
+    public int[] groupFields() {
+        return gfields.clone();
     }
 
     /**
@@ -62,43 +181,121 @@ public class Aggregate extends Operator {
      * null;
      */
     public String groupFieldName() {
-        throw new UnsupportedOperationException("implement me!");
+        return gfields.length == 0 ? null : td.getFieldName(0);
     }
 
     /**
-     * @return the aggregate field
+     * @return the aggregate field (of the first aggregate, if there are several)
      */
     public int aggregateField() {
-        throw new UnsupportedOperationException("implement me!");
+        return afields[0];
+    }
+
+    /**
+     * @return the field of each aggregate
+     */
+    public int[] aggregateFields() {
+        return afields.clone();
     }
 
     /**
      * @return return the name of the aggregate field in the <b>OUTPUT</b>
-     * tuples
+     * tuples (of the first aggregate, if there are several)
      */
     public String aggregateFieldName() {
-        throw new UnsupportedOperationException("implement me!");
+        return td.getFieldName(gfields.length);
     }
 
     /**
-     * @return return the aggregate operator
+     * @return return the aggregate operator (of the first aggregate, if there
+     * are several)
      */
     public Aggregator.Op aggregateOp() {
-        throw new UnsupportedOperationException("implement me!");
+        return aops[0];
+    }
+
+    /**
+     * @return the operator of each aggregate
+     */
+    public Aggregator.Op[] aggregateOps() {
+        return aops.clone();
     }
 
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
-        throw new UnsupportedOperationException("implement me!");
+        return aop.toString();
     }
 
+    /**
+     * Reads the whole child into the aggregator, unless the aggregate is streamed.
+     */
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        child.open();
+        if (streaming) {
+            open = true;
+            return;
+        }
+        Type[] gtypes = new Type[gfields.length];
+        for (int i = 0; i < gfields.length; i++) {
+            gtypes[i] = td.getFieldType(i);
+        }
+        aggregator = new IntegerAggregator(gfields, gtypes, afields, aops, memoryPages);
+        while (child.hasNext()) {
+            aggregator.mergeTupleIntoGroup(child.next());
+        }
+        results = aggregator.iterator();
+        results.open();
     }
 
     @Override
     public boolean hasNext() throws DbException, TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        if (!streaming) {
+            return results != null && results.hasNext();
+        }
+        if (nextTuple != null) {
+            return true;
+        }
+        if (!open || (pending == null && !child.hasNext())) {
+            return false;
+        }
+        Tuple first = pending != null ? pending : child.next();
+        pending = null;
+        long[] acc = new long[aops.length];
+        for (int i = 0; i < aops.length; i++) {
+            acc[i] = IntegerAggregator.initialValue(aops[i]);
+        }
+        long count = 0;
+        Tuple t = first;
+        while (t != null) {
+            count++;
+            for (int i = 0; i < aops.length; i++) {
+                if (aops[i] != Aggregator.Op.COUNT) {
+                    acc[i] = IntegerAggregator.merge(aops[i], acc[i], ((IntField) t.getField(afields[i])).getValue());
+                }
+            }
+            t = child.hasNext() ? child.next() : null;
+            if (t != null && !sameGroup(first, t)) {
+                pending = t;
+                break;
+            }
+        }
+        nextTuple = new Tuple(td);
+        for (int i = 0; i < gfields.length; i++) {
+            nextTuple.setField(i, first.getField(gfields[i]));
+        }
+        for (int i = 0; i < aops.length; i++) {
+            nextTuple.setField(gfields.length + i, new IntField(IntegerAggregator.finalValue(aops[i], acc[i], count)));
+        }
+        return true;
+    }
+
+    private boolean sameGroup(Tuple t1, Tuple t2) {
+        for (int gfield : gfields) {
+            if (!t1.getField(gfield).equals(t2.getField(gfield))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -106,16 +303,41 @@ public class Aggregate extends Operator {
      * field is the field by which we are grouping, and the second field is the
      * result of computing the aggregate, If there is no group by field, then
      * the result tuple should contain one field representing the result of the
-     * aggregate. Should return null if there are no more tuples.
+     * aggregate. With several group-by fields or aggregates, the group-by
+     * fields come first, followed by the aggregates, in the order given to the
+     * constructor.
      */
     @Override
     public Tuple next() throws DbException, TransactionAbortedException,
             NoSuchElementException {
-        throw new UnsupportedOperationException("implement me!");
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        if (streaming) {
+            Tuple t = nextTuple;
+            nextTuple = null;
+            return t;
+        }
+        return results.next();
     }
 
+    /**
+     * Restarts the output; the groups are recomputed only if the aggregate is streamed.
+     */
     public void rewind() throws DbException, TransactionAbortedException {
-        throw new UnsupportedOperationException("implement me!");
+        if (streaming) {
+            if (!open) {
+                throw new DbException("[ERROR] Unable to rewind: Not open!");
+            }
+            child.rewind();
+            pending = null;
+            nextTuple = null;
+            return;
+        }
+        if (results == null) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        results.rewind();
     }
 
     /**
@@ -130,21 +352,34 @@ public class Aggregate extends Operator {
      * iterator.
      */
     public TupleDesc getTupleDesc() {
-        throw new UnsupportedOperationException("implement me!");
+        return td;
     }
 
     public void close() {
-        throw new UnsupportedOperationException("implement me!");
+        if (results != null) {
+            results.close();
+            aggregator.clear();
+            results = null;
+            aggregator = null;
+        }
+        open = false;
+        pending = null;
+        nextTuple = null;
+        child.close();
     }
 
     @Override
     public DbIterator[] getChildren() {
-        throw new UnsupportedOperationException("implement me!");
+        return new DbIterator[]{this.child};
     }
 
     @Override
     public void setChildren(DbIterator[] children) {
-        throw new UnsupportedOperationException("implement me!");
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+        streaming = isGroupedInput(child);
     }
 
 }
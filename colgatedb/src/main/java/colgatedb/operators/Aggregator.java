@@ -96,4 +96,9 @@ public interface Aggregator extends Serializable {
      */
     public DbIterator iterator();
 
+    /**
+     * Discard all groups and any temporary files the aggregator has created.
+     */
+    public void clear();
+
 }
@@ -0,0 +1,226 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * BlockNestedLoopJoin evaluates any join predicate by reading the outer (left)
+ * relation in blocks that fill a memory budget and scanning the inner (right)
+ * relation once per block, instead of once per outer tuple as {@link Join} does.
+ * Each inner tuple is compared with every tuple of the current block; for an
+ * equality predicate the block is hashed on its join key so that each inner
+ * tuple only meets the outer tuples with the same key.
+ * <p>
+ * The output tuples are the same as those of {@link Join} (left fields followed
+ * by right fields) but come in a different order.
+ */
+public class BlockNestedLoopJoin extends Operator {
+
+    private final JoinPredicate p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final TupleDesc td;
+    private final int blockPages;
+    private boolean open;
+
+    private final ArrayList<Tuple> block = new ArrayList<>();
+    private HashMap<Field, List<Tuple>> blockIndex;     // equality joins only
+    private Tuple outerPeek;        // first tuple of the next block
+    private Tuple inner;
+    private List<Tuple> candidates = Collections.emptyList();
+    private int candidateIdx;
+    private Tuple nextTuple;
+    private boolean innerFresh;     // true if the inner relation has not been read since it was opened or rewound
+    private int numInnerScans;
+
+    /**
+     * @param p          the predicate to join on
+     * @param child1     Iterator for the outer (left) relation
+     * @param child2     Iterator for the inner (right) relation
+     * @param blockPages the number of pages worth of outer tuples in a block
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int blockPages) {
+        if (blockPages < 1) {
+            throw new DbException("[ERROR] BlockNestedLoopJoin needs a block of at least one page");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.blockPages = blockPages;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        setTupleDesc(td);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    /**
+     * @return the number of times the inner relation has been scanned since the
+     * operator was last opened or rewound
+     */
+    public int getNumInnerScans() {
+        return numInnerScans;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        open = true;
+        reset();
+        innerFresh = true;
+        numInnerScans = 0;
+    }
+
+    private void reset() {
+        block.clear();
+        blockIndex = null;
+        outerPeek = null;
+        inner = null;
+        candidates = Collections.emptyList();
+        candidateIdx = 0;
+        nextTuple = null;
+    }
+
+    /**
+     * Reads the next block of outer tuples and starts a scan of the inner relation.
+     *
+     * @return false if the outer relation is exhausted
+     */
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        block.clear();
+        if (outerPeek == null && child1.hasNext()) {
+            outerPeek = child1.next();
+        }
+        if (outerPeek == null) {
+            return false;
+        }
+        int blockSize = Math.max(1, blockPages * (Database.getPageSize() / outerPeek.getTupleDesc().getSize()));
+        block.add(outerPeek);
+        outerPeek = null;
+        while (block.size() < blockSize && child1.hasNext()) {
+            block.add(child1.next());
+        }
+        if (p.getOperator() == Op.EQUALS) {
+            blockIndex = new HashMap<>();
+            for (Tuple t : block) {
+                Field key = t.getField(p.getField1());
+                List<Tuple> bucket = blockIndex.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(1);
+                    blockIndex.put(key, bucket);
+                }
+                bucket.add(t);
+            }
+        }
+        if (!innerFresh) {
+            child2.rewind();
+        }
+        innerFresh = false;
+        numInnerScans++;
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (nextTuple != null) {
+            return true;
+        }
+        if (!open) {
+            return false;
+        }
+        while (true) {
+            while (candidateIdx < candidates.size()) {
+                Tuple outer = candidates.get(candidateIdx++);
+                if (p.filter(outer, inner)) {
+                    nextTuple = Join.merge(td, outer, inner);
+                    return true;
+                }
+            }
+            if (!block.isEmpty() && child2.hasNext()) {
+                inner = child2.next();
+                if (blockIndex != null) {
+                    List<Tuple> bucket = blockIndex.get(inner.getField(p.getField2()));
+                    candidates = bucket == null ? Collections.<Tuple>emptyList() : bucket;
+                } else {
+                    candidates = block;
+                }
+                candidateIdx = 0;
+            } else if (!loadBlock()) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!open) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        child1.rewind();
+        child2.rewind();
+        reset();
+        innerFresh = true;
+        numInnerScans = 0;
+    }
+
+    @Override
+    public void close() {
+        child1.close();
+        child2.close();
+        open = false;
+        reset();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) throws DbException {
+        if (children.length != 2) {
+            throw new DbException("[ERROR] BlockNestedLoopJoin.java: Failed to set children with array of length " + children.length);
+        }
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
@@ -0,0 +1,144 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Field;
+
+import java.io.Serializable;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A Bloom filter over Field values.  It answers "definitely not present" or
+ * "possibly present": a value that was added is always reported as possibly
+ * present, while a value that was never added is reported as possibly present
+ * with a small probability (the false positive rate).
+ * <p>
+ * Used by the join operators to build a filter over the join keys of the build
+ * side, which is then pushed down to the probe side so that tuples without a
+ * matching key are dropped early.
+ */
+public class BloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+    private int numAdded;
+
+    /**
+     * Creates a Bloom filter sized for the expected number of values and the
+     * desired false positive rate.
+     *
+     * @param expectedValues number of values that will be added
+     * @param fpp            desired false positive rate, e.g., 0.01
+     */
+    public BloomFilter(int expectedValues, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("false positive rate must be in (0,1): " + fpp);
+        }
+        int n = Math.max(expectedValues, 1);
+        // optimal number of bits m = -n ln(p) / (ln 2)^2, number of hashes k = (m/n) ln 2
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        numBits = (int) m;
+        numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        bits = new long[(numBits + 63) / 64];
+        numAdded = 0;
+    }
+
+    /**
+     * Adds a value to the filter.
+     */
+    public void add(Field f) {
+        int h1 = hash1(f);
+        int h2 = hash2(h1);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1 + i * h2);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        numAdded++;
+    }
+
+    /**
+     * @return false if the value was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(Field f) {
+        int h1 = hash1(f);
+        int h2 = hash2(h1);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the filter in bits
+     */
+    public int getNumBits() {
+        return numBits;
+    }
+
+    /**
+     * @return the number of hash functions applied to each value
+     */
+    public int getNumHashFunctions() {
+        return numHashes;
+    }
+
+    /**
+     * @return the number of values added to the filter
+     */
+    public int getNumAdded() {
+        return numAdded;
+    }
+
+    /**
+     * @return the expected false positive rate given the values added so far,
+     * (1 - e^(-kn/m))^k
+     */
+    public double getFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) numHashes * numAdded / numBits), numHashes);
+    }
+
+    public String toString() {
+        return "BloomFilter(bits=" + numBits + ", hashes=" + numHashes + ", values=" + numAdded +
+                ", fpp=" + String.format("%.4f", getFalsePositiveRate()) + ")";
+    }
+
+    private int index(int h) {
+        return (h & Integer.MAX_VALUE) % numBits;
+    }
+
+    private static int hash1(Field f) {
+        // murmur3 finalizer to spread the (often sequential) field hash codes
+        int h = f.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int hash2(int h1) {
+        int h = h1 * 0x9e3779b9;
+        h ^= h >>> 15;
+        return h | 1;   // odd so that successive probes differ
+    }
+}
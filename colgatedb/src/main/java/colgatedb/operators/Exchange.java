@@ -0,0 +1,428 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Exchange runs several producer pipelines (its children) in parallel on a thread
+ * pool and hands their tuples to one or more consumers.  Producers send tuples
+ * in batches of {@link #BATCH_SIZE} through a bounded queue per consumer, so a
+ * fast producer blocks rather than buffering its whole output.
+ * <p>
+ * An Exchange object is one consumer end, i.e., an operator whose output is
+ * (part of) the tuples of the producers, in no particular order:
+ * <ul>
+ * <li>{@link Mode#GATHER}: a single output receives all tuples, e.g., to merge
+ * the output of scans of page ranges (see {@link ScanPlanner#partitionedScans}).</li>
+ * <li>{@link Mode#REPARTITION}: each tuple goes to one of several outputs,
+ * chosen by hashing one of its fields, so that equal values meet at the same
+ * output (e.g., to compute partial aggregates or joins in parallel).</li>
+ * <li>{@link Mode#BROADCAST}: every output receives every tuple.</li>
+ * </ul>
+ * The producers start when the first output is opened and are stopped when all
+ * outputs are closed.  The outputs of a repartition or broadcast must be
+ * consumed concurrently (for instance, each below its own gathering Exchange):
+ * a producer blocks when any output's queue is full.  Only a gathering
+ * Exchange can be rewound; its producers are rewound and run again.
+ * <p>
+ * The producers run their pipelines under the transaction of the consumer, so
+ * several threads may request locks for one transaction at the same time.  The
+ * lock manager lets only one of them wait at a time (see
+ * {@link colgatedb.transactions.LockManagerImpl}), as deadlock detection
+ * assumes a transaction waits for one lock at a time.
+ */
+public class Exchange extends Operator {
+
+    public enum Mode { GATHER, REPARTITION, BROADCAST }
+
+    public static final int BATCH_SIZE = 256;
+    public static final int QUEUE_CAPACITY = 8;   // in batches, per output
+
+    /**
+     * Shared by all exchanges.  The pool is not bounded since producers of
+     * nested exchanges wait for one another.
+     */
+    private static final ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "exchange-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** Sent by each producer to each output when it is done. */
+    private static final List<Tuple> END = new ArrayList<>();
+
+    private final Hub hub;
+    private final int output;
+    private boolean open;
+    private List<Tuple> batch;
+    private int batchIdx;
+    private int numEnded;       // producers that have finished sending to this output
+
+    /**
+     * Creates a gathering exchange whose output is the union of the outputs of
+     * the children, each of which is run on its own thread.
+     *
+     * @param children the producers; they must all have the same TupleDesc
+     */
+    public Exchange(DbIterator[] children) {
+        this(new Hub(children, Mode.GATHER, -1, 1), 0);
+    }
+
+    private Exchange(Hub hub, int output) {
+        this.hub = hub;
+        this.output = output;
+        setTupleDesc(hub.children[0].getTupleDesc());
+    }
+
+    /**
+     * Creates the outputs of an exchange that sends each tuple of the children to
+     * the output selected by hashing the given field.
+     *
+     * @param field      the field whose value decides the output of a tuple
+     * @param numOutputs the number of outputs
+     */
+    public static Exchange[] repartition(DbIterator[] children, int field, int numOutputs) {
+        return outputs(new Hub(children, Mode.REPARTITION, field, numOutputs));
+    }
+
+    /**
+     * Creates the outputs of an exchange that sends every tuple of the children to
+     * every output.
+     */
+    public static Exchange[] broadcast(DbIterator[] children, int numOutputs) {
+        return outputs(new Hub(children, Mode.BROADCAST, -1, numOutputs));
+    }
+
+    private static Exchange[] outputs(Hub hub) {
+        Exchange[] outputs = new Exchange[hub.numOutputs];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new Exchange(hub, i);
+        }
+        return outputs;
+    }
+
+    public Mode getMode() {
+        return hub.mode;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        if (open) {
+            return;
+        }
+        hub.outputOpened(output);
+        open = true;
+        batch = null;
+        numEnded = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (!open) {
+            return false;
+        }
+        while (batch == null || batchIdx == batch.size()) {
+            if (numEnded == hub.children.length) {
+                return false;
+            }
+            List<Tuple> b;
+            try {
+                b = hub.queue(output).take();
+            } catch (InterruptedException e) {
+                throw new DbException("[ERROR] interrupted while waiting for tuples");
+            }
+            hub.checkFailure();
+            if (b == END) {
+                numEnded++;
+                batch = null;
+            } else {
+                batch = b;
+                batchIdx = 0;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        return batch.get(batchIdx++);
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!open) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        if (hub.mode != Mode.GATHER) {
+            throw new DbException("[ERROR] only a gathering Exchange can be rewound");
+        }
+        hub.restart();
+        batch = null;
+        numEnded = 0;
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            batch = null;
+            hub.outputClosed(output);
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return hub.children.clone();
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != hub.children.length) {
+            throw new DbException("[ERROR] Exchange.java: Failed to set children with array of length " + children.length);
+        }
+        System.arraycopy(children, 0, hub.children, 0, children.length);
+    }
+
+    /**
+     * The state shared by the outputs of an exchange: the producers and the
+     * queue of each output.
+     */
+    private static class Hub {
+        final DbIterator[] children;
+        final Mode mode;
+        final int field;
+        final int numOutputs;
+        private volatile List<BlockingQueue<List<Tuple>>> queues;   // replaced only while no producer runs
+        private final AtomicIntegerArray closedOutputs;               // 1 for outputs that are closed
+        private final boolean[] childOpened;
+        private final List<Future<?>> producers = new ArrayList<>();
+        private int numOpenOutputs;
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+        private final Map<Thread, Integer> waiting = new HashMap<>();   // producers blocked in put, by output
+
+        Hub(DbIterator[] children, Mode mode, int field, int numOutputs) {
+            if (children.length == 0 || numOutputs < 1) {
+                throw new IllegalArgumentException("an Exchange needs at least one child and one output");
+            }
+            this.children = children.clone();
+            this.mode = mode;
+            this.field = field;
+            this.numOutputs = numOutputs;
+            this.childOpened = new boolean[children.length];
+            this.closedOutputs = new AtomicIntegerArray(numOutputs);
+        }
+
+        BlockingQueue<List<Tuple>> queue(int output) {
+            return queues.get(output);
+        }
+
+        synchronized void outputOpened(int output) {
+            closedOutputs.set(output, 0);
+            if (numOpenOutputs++ == 0) {
+                start();
+            }
+        }
+
+        synchronized void outputClosed(int output) {
+            // tuples for a closed output are dropped so that the producers do not block on it
+            closedOutputs.set(output, 1);
+            wakeProducers(output);
+            if (--numOpenOutputs == 0) {
+                stop();
+                for (int i = 0; i < children.length; i++) {
+                    if (childOpened[i]) {
+                        children[i].close();
+                        childOpened[i] = false;
+                    }
+                }
+            }
+        }
+
+        synchronized void restart() {
+            stop();
+            start();
+        }
+
+        private void start() {
+            cancelled = false;
+            failure = null;
+            queues = new ArrayList<>();
+            for (int i = 0; i < numOutputs; i++) {
+                queues.add(new ArrayBlockingQueue<List<Tuple>>(QUEUE_CAPACITY));
+            }
+            for (int i = 0; i < children.length; i++) {
+                final int child = i;
+                producers.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        produce(child);
+                    }
+                }));
+            }
+        }
+
+        /**
+         * Stops the producers and waits until they have finished.
+         */
+        private void stop() {
+            cancelled = true;
+            wakeProducers(-1);
+            for (Future<?> f : producers) {
+                try {
+                    f.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // the producers catch everything they throw; nothing to do
+                }
+            }
+            producers.clear();
+        }
+
+        /**
+         * Runs on a thread of the pool: sends the tuples of one child to the outputs.
+         */
+        private void produce(int child) {
+            DbIterator it = children[child];
+            List<List<Tuple>> batches = new ArrayList<>();
+            for (int i = 0; i < (mode == Mode.REPARTITION ? numOutputs : 1); i++) {
+                batches.add(new ArrayList<Tuple>(BATCH_SIZE));
+            }
+            try {
+                if (childOpened[child]) {
+                    it.rewind();
+                } else {
+                    it.open();
+                    childOpened[child] = true;
+                }
+                while (!cancelled && it.hasNext()) {
+                    Tuple t = it.next();
+                    int b = mode == Mode.REPARTITION ?
+                            Math.floorMod(GroupTable.mix(t.getField(field).hashCode(), 0), numOutputs) : 0;
+                    batches.get(b).add(t);
+                    if (batches.get(b).size() == BATCH_SIZE) {
+                        send(b, batches.get(b));
+                        batches.set(b, new ArrayList<Tuple>(BATCH_SIZE));
+                    }
+                }
+                for (int b = 0; b < batches.size(); b++) {
+                    if (!batches.get(b).isEmpty()) {
+                        send(b, batches.get(b));
+                    }
+                }
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            for (int i = 0; i < numOutputs; i++) {
+                put(i, END);
+            }
+        }
+
+        /**
+         * Sends a batch to its output, or to every output for a broadcast.
+         */
+        private void send(int b, List<Tuple> batch) {
+            if (mode == Mode.BROADCAST) {
+                for (int i = 0; i < numOutputs; i++) {
+                    put(i, batch);
+                }
+            } else {
+                put(b, batch);
+            }
+        }
+
+        /**
+         * Waits for room in the queue of an output.  The batch is dropped if the
+         * exchange is stopped or the output closed, which wakes the producer.
+         */
+        private void put(int output, List<Tuple> batch) {
+            Thread self = Thread.currentThread();
+            synchronized (waiting) {
+                if (cancelled || closedOutputs.get(output) == 1) {
+                    return;
+                }
+                waiting.put(self, output);
+            }
+            try {
+                queue(output).put(batch);
+            } catch (InterruptedException e) {
+                if (!cancelled && closedOutputs.get(output) == 0) {
+                    cancelled = true;   // not woken by the exchange
+                }
+            } finally {
+                synchronized (waiting) {
+                    waiting.remove(self);
+                    // an interrupt meant for the put must not reach the pipeline
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        /**
+         * Interrupts the producers blocked in {@link #put(int, List)} on the given
+         * output, or on any output if output is -1.  A producer is only interrupted
+         * while it is registered as waiting, i.e., never while running its pipeline.
+         */
+        private void wakeProducers(int output) {
+            synchronized (waiting) {
+                for (Map.Entry<Thread, Integer> w : waiting.entrySet()) {
+                    if (output == -1 || w.getValue() == output) {
+                        w.getKey().interrupt();
+                    }
+                }
+            }
+        }
+
+        void checkFailure() throws TransactionAbortedException {
+            Throwable f = failure;
+            if (f instanceof TransactionAbortedException) {
+                throw (TransactionAbortedException) f;
+            } else if (f instanceof DbException) {
+                throw (DbException) f;
+            } else if (f != null) {
+                throw new DbException("[ERROR] Exchange producer failed: " + f);
+            }
+        }
+    }
+}
@@ -32,7 +32,8 @@ public class Filter extends Operator {
     private DbIterator[] children;
     private boolean open;
     private Tuple nextTuple;
-
+    private BloomFilter runtimeFilter;
+    private int runtimeFilterField;
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -53,6 +54,19 @@ public class Filter extends Operator {
         return this.p;
     }
 
+    /**
+     * Installs an additional filter computed at runtime (e.g., by a join over the
+     * join keys of its other input): tuples whose value in the given field is
+     * definitely not in the Bloom filter are dropped.
+     *
+     * @param bf    the Bloom filter, or null to remove the runtime filter
+     * @param field the field of the child's tuples to look up in bf
+     */
+    public void setRuntimeFilter(BloomFilter bf, int field) {
+        this.runtimeFilter = bf;
+        this.runtimeFilterField = field;
+    }
+
     @Override
     public TupleDesc getTupleDesc() {
         return this.child.getTupleDesc();
@@ -83,7 +97,8 @@ public class Filter extends Operator {
         }
         while (this.open && this.child.hasNext()) {
             Tuple t = this.child.next();
-            if (this.p.filter(t)) {
+            if (this.p.filter(t) &&
+                    (runtimeFilter == null || runtimeFilter.mightContain(t.getField(runtimeFilterField)))) {
                 nextTuple = t;
                 return true;
             }
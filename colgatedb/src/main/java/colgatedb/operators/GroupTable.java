@@ -0,0 +1,190 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Field;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.StringField;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.Type;
+
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A GroupTable assigns dense ids 0, 1, 2, ... to the distinct group-by keys of
+ * an aggregate, in order of first appearance, so that an aggregator can keep its
+ * running values in primitive arrays indexed by group id.  A key is made of the
+ * values of one or more key fields of a tuple (or of no fields, in which case
+ * there is a single group).
+ * <p>
+ * The table uses open addressing with linear probing over an int array of group
+ * ids.  The keys are stored column by column, int columns unboxed, along with
+ * the hash of each key so that most mismatches are detected without comparing
+ * the key values.
+ */
+class GroupTable {
+
+    private static final int EMPTY = -1;
+
+    private final int[] keyFields;
+    private final int[][] intCols;      // values of each int key column by group id; null for string columns
+    private final String[][] strCols;   // values of each string key column by group id; null for int columns
+    private int[] slots;                // group id stored at each position of the table, or EMPTY
+    private int[] hashes;               // hash of each group's key, by group id
+    private int size;
+
+    /**
+     * @param keyFields the indexes of the key fields in the tuples
+     * @param keyTypes  the types of the key fields, Type.INT_TYPE or Type.STRING_TYPE
+     */
+    GroupTable(int[] keyFields, Type[] keyTypes) {
+        this.keyFields = keyFields.clone();
+        intCols = new int[keyFields.length][];
+        strCols = new String[keyFields.length][];
+        for (int c = 0; c < keyFields.length; c++) {
+            if (keyTypes[c] == Type.INT_TYPE) {
+                intCols[c] = new int[8];
+            } else {
+                strCols[c] = new String[8];
+            }
+        }
+        slots = new int[16];
+        Arrays.fill(slots, EMPTY);
+        hashes = new int[8];
+    }
+
+    /**
+     * @return the number of groups in the table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the hash of the key of a tuple
+     */
+    int hash(Tuple t) {
+        int h = 0;
+        for (int c = 0; c < keyFields.length; c++) {
+            h = 31 * h + (intCols[c] != null ?
+                    ((IntField) t.getField(keyFields[c])).getValue() :
+                    ((StringField) t.getField(keyFields[c])).getValue().hashCode());
+        }
+        return h;
+    }
+
+    /**
+     * @return the id of the group of a tuple, or -1 if its group is not in the table
+     */
+    int find(Tuple t) {
+        int h = hash(t);
+        int mask = slots.length - 1;
+        for (int i = mix(h) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+            int g = slots[i];
+            if (hashes[g] == h && sameKey(g, t)) {
+                return g;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameKey(int group, Tuple t) {
+        for (int c = 0; c < keyFields.length; c++) {
+            if (intCols[c] != null) {
+                if (intCols[c][group] != ((IntField) t.getField(keyFields[c])).getValue()) {
+                    return false;
+                }
+            } else if (!strCols[c][group].equals(((StringField) t.getField(keyFields[c])).getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the group of a tuple, which must not be in the table yet.
+     *
+     * @return the id of the new group
+     */
+    int add(Tuple t) {
+        if (size == hashes.length) {
+            int capacity = 2 * size;
+            hashes = Arrays.copyOf(hashes, capacity);
+            for (int c = 0; c < keyFields.length; c++) {
+                if (intCols[c] != null) {
+                    intCols[c] = Arrays.copyOf(intCols[c], capacity);
+                } else {
+                    strCols[c] = Arrays.copyOf(strCols[c], capacity);
+                }
+            }
+        }
+        int g = size++;
+        hashes[g] = hash(t);
+        for (int c = 0; c < keyFields.length; c++) {
+            if (intCols[c] != null) {
+                intCols[c][g] = ((IntField) t.getField(keyFields[c])).getValue();
+            } else {
+                strCols[c][g] = ((StringField) t.getField(keyFields[c])).getValue();
+            }
+        }
+        if (2 * size > slots.length) {
+            slots = new int[2 * slots.length];
+            Arrays.fill(slots, EMPTY);
+            for (int i = 0; i < g; i++) {
+                place(i);
+            }
+        }
+        place(g);
+        return g;
+    }
+
+    /**
+     * @return the value of a key column of a group as a Field
+     */
+    Field key(int group, int column) {
+        return intCols[column] != null ?
+                new IntField(intCols[column][group]) :
+                new StringField(strCols[column][group], Type.STRING_LEN);
+    }
+
+    private void place(int group) {
+        int mask = slots.length - 1;
+        int i = mix(hashes[group]) & mask;
+        while (slots[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = group;
+    }
+
+    /**
+     * Spreads the bits of a hash code so that keys with similar hash codes (e.g.,
+     * consecutive ints) do not cluster in the table.  A salt selects one of a
+     * family of such functions.
+     */
+    static int mix(int h, int salt) {
+        h += salt * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mix(int h) {
+        return mix(h, 0);
+    }
+}
@@ -0,0 +1,218 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * HashJoin implements an equality join by building an in-memory hash table on
+ * the join keys of one input (the build side) and streaming the other input (the
+ * probe side) through it, so each input is read only once.
+ * <p>
+ * The build side is the smaller input.  Rather than relying on estimates, open()
+ * reads the two children alternately, one tuple at a time, until one of them is
+ * exhausted: that child is the smaller one and becomes the build side, and the
+ * tuples already read from the other child are probed before the rest of it.
+ * The output is the same as that of {@link Join}: the fields of the left tuple
+ * followed by the fields of the right tuple, whichever side is built.
+ */
+public class HashJoin extends Operator {
+
+    private final JoinPredicate p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final TupleDesc td;
+    private HashMap<Field, List<Tuple>> table;
+    private boolean buildOnLeft;
+    private ArrayList<Tuple> probeBuffer;   // probe tuples read while choosing the build side
+    private int probeBufferIdx;
+    private Tuple probeTuple;
+    private List<Tuple> matches = Collections.emptyList();
+    private int matchIdx;
+    private Tuple nextTuple;
+
+    /**
+     * @param p      an equality predicate on the fields to join on
+     * @param child1 Iterator for the left relation to join
+     * @param child2 Iterator for the right relation to join
+     * @throws DbException if the predicate is not an equality predicate
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        if (p.getOperator() != Op.EQUALS) {
+            throw new DbException("[ERROR] HashJoin requires an equality predicate, got " + p.getOperator());
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        setTupleDesc(td);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    /**
+     * @return true if the hash table was built on the left child (only meaningful once open)
+     */
+    public boolean isBuildOnLeft() {
+        return buildOnLeft;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        ArrayList<Tuple> left = new ArrayList<>();
+        ArrayList<Tuple> right = new ArrayList<>();
+        while (true) {
+            boolean leftHasNext = child1.hasNext();
+            boolean rightHasNext = child2.hasNext();
+            if (!leftHasNext || !rightHasNext) {
+                buildOnLeft = !leftHasNext;
+                break;
+            }
+            left.add(child1.next());
+            right.add(child2.next());
+        }
+        ArrayList<Tuple> build;
+        DbIterator buildChild;
+        if (buildOnLeft) {
+            build = left;
+            buildChild = child1;
+            probeBuffer = right;
+        } else {
+            build = right;
+            buildChild = child2;
+            probeBuffer = left;
+        }
+        while (buildChild.hasNext()) {
+            build.add(buildChild.next());
+        }
+        int buildField = buildOnLeft ? p.getField1() : p.getField2();
+        table = new HashMap<>();
+        for (Tuple t : build) {
+            Field key = t.getField(buildField);
+            List<Tuple> bucket = table.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                table.put(key, bucket);
+            }
+            bucket.add(t);
+        }
+        probeBufferIdx = 0;
+    }
+
+    @Override
+    public void close() {
+        child1.close();
+        child2.close();
+        table = null;
+        probeBuffer = null;
+        probeTuple = null;
+        matches = Collections.emptyList();
+        nextTuple = null;
+    }
+
+    /**
+     * Restarts the probe side; the hash table is kept.
+     */
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (table == null) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        (buildOnLeft ? child2 : child1).rewind();
+        probeBuffer = null;     // the rewound child returns the buffered tuples again
+        probeTuple = null;
+        matches = Collections.emptyList();
+        nextTuple = null;
+    }
+
+    private Tuple nextProbeTuple() throws DbException, TransactionAbortedException {
+        if (probeBuffer != null && probeBufferIdx < probeBuffer.size()) {
+            return probeBuffer.get(probeBufferIdx++);
+        }
+        DbIterator probeChild = buildOnLeft ? child2 : child1;
+        return probeChild.hasNext() ? probeChild.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (nextTuple != null) {
+            return true;
+        }
+        if (table == null) {
+            return false;
+        }
+        while (matchIdx >= matches.size()) {
+            probeTuple = nextProbeTuple();
+            if (probeTuple == null) {
+                return false;
+            }
+            List<Tuple> bucket = table.get(probeTuple.getField(buildOnLeft ? p.getField2() : p.getField1()));
+            matches = bucket == null ? Collections.<Tuple>emptyList() : bucket;
+            matchIdx = 0;
+        }
+        Tuple match = matches.get(matchIdx++);
+        nextTuple = buildOnLeft ? Join.merge(td, match, probeTuple) : Join.merge(td, probeTuple, match);
+        return true;
+    }
+
+    /**
+     * @return the next tuple of the join; as with {@link Join}, the concatenation
+     * of a left and a right tuple with equal join keys
+     */
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) throws DbException {
+        if (children.length != 2) {
+            throw new DbException("[ERROR] HashJoin.java: Failed to set children with array of length " + children.length);
+        }
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
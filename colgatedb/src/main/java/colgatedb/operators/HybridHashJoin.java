@@ -0,0 +1,454 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.SpillFile;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * HybridHashJoin implements an equality join whose build side (the right child)
+ * may not fit in memory.  Build tuples are hashed into partitions; as long as
+ * they fit in the memory budget all partitions stay in memory, and when the
+ * budget is exceeded whole partitions are spilled to {@link SpillFile}s, largest
+ * first.  Left tuples that hash to an in-memory partition are joined right away
+ * while the left child is streamed; the others are spilled to the matching probe
+ * partition.
+ * <p>
+ * Each pair of spilled partitions is joined afterwards.  A build partition that
+ * still does not fit is repartitioned with a different hash function, up to
+ * {@link #MAX_DEPTH} times; a partition that cannot be split (e.g., because
+ * of a single very frequent key) is joined in memory-sized chunks instead, each
+ * chunk reading the probe partition once.
+ * <p>
+ * The output is the same as that of {@link Join}: the fields of the left tuple
+ * followed by the fields of the right tuple.
+ */
+public class HybridHashJoin extends Operator {
+
+    public static final int DEFAULT_NUM_PARTITIONS = 16;
+    public static final int MAX_DEPTH = 3;
+
+    private final JoinPredicate p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final TupleDesc td;
+    private final int memoryPages;
+    private final int numPartitions;
+    private int budget;     // in tuples, computed from the size of the first build tuple
+
+    private HashMap<Field, List<Tuple>> table;
+    private Iterator<Tuple> probe;          // left child (first phase) or a spilled probe partition
+    private final Deque<Task> tasks = new ArrayDeque<>();
+    private Task task;                      // spilled partitions being joined, null in the first phase
+    private SpillFile[] probeSpills;        // first phase only; null entries for in-memory partitions
+    private Tuple probeTuple;
+    private List<Tuple> matches = Collections.emptyList();
+    private int matchIdx;
+    private Tuple nextTuple;
+    private boolean open;
+
+    private int numSpilledPartitions;
+    private int maxDepthReached;
+    private int numChunkedPartitions;
+
+    /**
+     * A pair of spilled partitions to be joined.
+     */
+    private static class Task {
+        final SpillFile build;
+        final SpillFile probe;
+        final int depth;
+        Iterator<Tuple> buildIt;
+
+        Task(SpillFile build, SpillFile probe, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * @param p           an equality predicate on the fields to join on
+     * @param child1      Iterator for the left (probe) relation
+     * @param child2      Iterator for the right (build) relation
+     * @param memoryPages the number of pages worth of build tuples that may be held in memory
+     */
+    public HybridHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages) {
+        this(p, child1, child2, memoryPages, DEFAULT_NUM_PARTITIONS);
+    }
+
+    /**
+     * @param numPartitions the number of partitions the build side is hashed into
+     */
+    public HybridHashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages,
+                          int numPartitions) {
+        if (p.getOperator() != Op.EQUALS) {
+            throw new DbException("[ERROR] HybridHashJoin requires an equality predicate, got " + p.getOperator());
+        }
+        if (memoryPages < 1 || numPartitions < 2) {
+            throw new DbException("[ERROR] HybridHashJoin needs at least one page and two partitions");
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.memoryPages = memoryPages;
+        this.numPartitions = numPartitions;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        setTupleDesc(td);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    /**
+     * @return the number of partitions (at any depth) that were spilled to disk
+     */
+    public int getNumSpilledPartitions() {
+        return numSpilledPartitions;
+    }
+
+    /**
+     * @return the deepest level of repartitioning used (0 if no partition was repartitioned)
+     */
+    public int getMaxDepthReached() {
+        return maxDepthReached;
+    }
+
+    /**
+     * @return the number of partitions that were joined in chunks because they could not be split
+     */
+    public int getNumChunkedPartitions() {
+        return numChunkedPartitions;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        open = true;
+        build();
+    }
+
+    /**
+     * Partitions the build side, spilling partitions as needed to stay within
+     * the budget, and builds the hash table over the partitions kept in memory.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        numSpilledPartitions = 0;
+        maxDepthReached = 0;
+        numChunkedPartitions = 0;
+        List<List<Tuple>> resident = new ArrayList<>();
+        for (int i = 0; i < numPartitions; i++) {
+            resident.add(new ArrayList<Tuple>());
+        }
+        SpillFile[] buildSpills = new SpillFile[numPartitions];
+        int inMemory = 0;
+        while (child2.hasNext()) {
+            Tuple t = child2.next();
+            if (budget == 0) {
+                int tupleSize = t.getTupleDesc().getSize();
+                budget = Math.max(1, memoryPages * (Database.getPageSize() / tupleSize));
+            }
+            int part = partition(t.getField(p.getField2()), 0);
+            if (buildSpills[part] != null) {
+                buildSpills[part].add(t);
+                continue;
+            }
+            resident.get(part).add(t);
+            inMemory++;
+            while (inMemory > budget) {
+                int largest = -1;
+                for (int i = 0; i < numPartitions; i++) {
+                    if (buildSpills[i] == null && !resident.get(i).isEmpty() &&
+                            (largest == -1 || resident.get(i).size() > resident.get(largest).size())) {
+                        largest = i;
+                    }
+                }
+                buildSpills[largest] = new SpillFile();
+                for (Tuple s : resident.get(largest)) {
+                    buildSpills[largest].add(s);
+                }
+                inMemory -= resident.get(largest).size();
+                resident.set(largest, new ArrayList<Tuple>());
+                numSpilledPartitions++;
+            }
+        }
+
+        table = new HashMap<>();
+        probeSpills = new SpillFile[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            if (buildSpills[i] == null) {
+                addToTable(resident.get(i));
+            } else {
+                probeSpills[i] = new SpillFile();
+                tasks.add(new Task(buildSpills[i], probeSpills[i], 0));
+            }
+        }
+        task = null;
+        probe = null;
+    }
+
+    private void addToTable(Iterable<Tuple> tuples) {
+        for (Tuple t : tuples) {
+            Field key = t.getField(p.getField2());
+            List<Tuple> bucket = table.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                table.put(key, bucket);
+            }
+            bucket.add(t);
+        }
+    }
+
+    /**
+     * @return the partition of a key; a different hash function is used at each depth
+     */
+    private int partition(Field key, int depth) {
+        int h = key.hashCode() + depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numPartitions);
+    }
+
+    /**
+     * @return the next probe tuple to look up in the hash table, or null when
+     * all of the output has been produced
+     */
+    private Tuple nextProbeTuple() throws DbException, TransactionAbortedException {
+        while (true) {
+            if (task == null) {
+                // first phase: stream the left child
+                while (child1.hasNext()) {
+                    Tuple t = child1.next();
+                    int part = partition(t.getField(p.getField1()), 0);
+                    if (probeSpills[part] == null) {
+                        return t;
+                    }
+                    probeSpills[part].add(t);
+                }
+            } else if (probe.hasNext()) {
+                return probe.next();
+            } else if (task.buildIt.hasNext()) {
+                loadChunk();
+                continue;
+            } else {
+                task.build.delete();
+                task.probe.delete();
+            }
+            if (!startNextTask()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Starts joining the next pair of spilled partitions, repartitioning pairs
+     * whose build partition does not fit in memory.
+     *
+     * @return false if there are no more partitions to join
+     */
+    private boolean startNextTask() {
+        while (!tasks.isEmpty()) {
+            Task t = tasks.poll();
+            if (t.build.size() == 0 || t.probe.size() == 0) {
+                t.build.delete();
+                t.probe.delete();
+                continue;
+            }
+            if (t.build.size() > budget) {
+                if (t.depth < MAX_DEPTH && repartition(t)) {
+                    continue;
+                }
+                numChunkedPartitions++;
+            }
+            task = t;
+            task.buildIt = task.build.iterator();
+            loadChunk();
+            return true;
+        }
+        task = null;
+        return false;
+    }
+
+    /**
+     * Loads the next budget-sized chunk of the current build partition into the
+     * hash table and restarts the scan of the probe partition.
+     */
+    private void loadChunk() {
+        table = new HashMap<>();
+        List<Tuple> chunk = new ArrayList<>();
+        while (task.buildIt.hasNext() && chunk.size() < budget) {
+            chunk.add(task.buildIt.next());
+        }
+        addToTable(chunk);
+        probe = task.probe.iterator();
+    }
+
+    /**
+     * Splits a pair of partitions with the hash function of the next depth.
+     *
+     * @return false (leaving the pair alone) if all build tuples share a join key,
+     * in which case splitting cannot help
+     */
+    private boolean repartition(Task t) {
+        Iterator<Tuple> it = t.build.iterator();
+        Field first = it.next().getField(p.getField2());
+        boolean allEqual = true;
+        while (allEqual && it.hasNext()) {
+            allEqual = it.next().getField(p.getField2()).equals(first);
+        }
+        if (allEqual) {
+            return false;
+        }
+        int depth = t.depth + 1;
+        maxDepthReached = Math.max(maxDepthReached, depth);
+        SpillFile[] builds = new SpillFile[numPartitions];
+        SpillFile[] probes = new SpillFile[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            builds[i] = new SpillFile();
+            probes[i] = new SpillFile();
+        }
+        it = t.build.iterator();
+        while (it.hasNext()) {
+            Tuple b = it.next();
+            builds[partition(b.getField(p.getField2()), depth)].add(b);
+        }
+        it = t.probe.iterator();
+        while (it.hasNext()) {
+            Tuple pr = it.next();
+            probes[partition(pr.getField(p.getField1()), depth)].add(pr);
+        }
+        t.build.delete();
+        t.probe.delete();
+        for (int i = 0; i < numPartitions; i++) {
+            if (builds[i].size() > 0) {
+                numSpilledPartitions++;
+            }
+            tasks.push(new Task(builds[i], probes[i], depth));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (nextTuple != null) {
+            return true;
+        }
+        if (!open) {
+            return false;
+        }
+        while (matchIdx >= matches.size()) {
+            probeTuple = nextProbeTuple();
+            if (probeTuple == null) {
+                return false;
+            }
+            List<Tuple> bucket = table.get(probeTuple.getField(p.getField1()));
+            matches = bucket == null ? Collections.<Tuple>emptyList() : bucket;
+            matchIdx = 0;
+        }
+        nextTuple = Join.merge(td, probeTuple, matches.get(matchIdx++));
+        return true;
+    }
+
+    /**
+     * @return the next tuple of the join; as with {@link Join}, the concatenation
+     * of a left and a right tuple with equal join keys
+     */
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    /**
+     * Deletes the spill files that have not been joined yet.
+     */
+    private void discardPartitions() {
+        if (task != null) {
+            task.build.delete();
+            task.probe.delete();
+            task = null;
+        }
+        while (!tasks.isEmpty()) {
+            Task t = tasks.poll();
+            t.build.delete();
+            t.probe.delete();
+        }
+        table = null;
+        probe = null;
+        probeSpills = null;
+        probeTuple = null;
+        matches = Collections.emptyList();
+        nextTuple = null;
+    }
+
+    /**
+     * Restarts the join; both children are rewound and the build side is partitioned again.
+     */
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!open) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        discardPartitions();
+        child1.rewind();
+        child2.rewind();
+        build();
+    }
+
+    @Override
+    public void close() {
+        discardPartitions();
+        child1.close();
+        child2.close();
+        open = false;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) throws DbException {
+        if (children.length != 2) {
+            throw new DbException("[ERROR] HybridHashJoin.java: Failed to set children with array of length " + children.length);
+        }
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
@@ -0,0 +1,109 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.CoveringIndex;
+import colgatedb.dbfile.DbFileIterator;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * IndexOnlyScan reads the included columns of a table from a {@link CoveringIndex}
+ * without touching the pages of the table itself.  The returned tuples contain
+ * only the included columns (in the order of {@link CoveringIndex#getFields()})
+ * but carry the RecordIds of the corresponding records in the table.
+ *
+ * @see ScanPlanner
+ */
+public class IndexOnlyScan implements DbIterator {
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final CoveringIndex index;
+    private final TupleDesc td;
+    private final DbFileIterator indexIterator;
+
+    /**
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the id of the table whose index is scanned
+     * @param tableAlias the alias of this table; field names are prefixed as in SeqScan
+     * @param index      a covering index of the table
+     */
+    public IndexOnlyScan(TransactionId tid, int tableid, String tableAlias, CoveringIndex index) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.index = index;
+        this.indexIterator = index.iterator(tid);
+
+        TupleDesc indexTd = index.getTupleDesc();
+        int numFields = indexTd.numFields();
+        Type[] types = new Type[numFields];
+        String[] fieldNames = new String[numFields];
+        for (int i = 0; i < numFields; i++) {
+            types[i] = indexTd.getFieldType(i);
+            fieldNames[i] = tableAlias + '.' + indexTd.getFieldName(i);
+        }
+        td = new TupleDesc(types, fieldNames);
+    }
+
+    /**
+     * @return the actual name of the table in the catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public CoveringIndex getIndex() {
+        return index;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        indexIterator.open();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return indexIterator.hasNext();
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        return indexIterator.next();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        indexIterator.rewind();
+    }
+
+    public void close() {
+        indexIterator.close();
+    }
+}
@@ -1,10 +1,14 @@
 package colgatedb.operators;
 
+import colgatedb.Database;
+import colgatedb.dbfile.SpillFile;
 import colgatedb.tuple.*;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * ColgateDB
@@ -19,10 +23,43 @@ import java.util.LinkedList;
  */
 
 /**
- * Knows how to compute some aggregate over a set of IntFields.
+ * Knows how to compute some aggregate over a set of IntFields.  More generally,
+ * it computes any number of aggregates at once, grouped by any number of fields;
+ * COUNT may be computed over fields of any type since it never looks at them.
+ * <p>
+ * Groups are looked up in a {@link GroupTable} and their running values are kept
+ * in primitive arrays indexed by group id.  The number of groups kept in memory
+ * is bounded by a budget of pages.  Once the table is full, tuples of groups that
+ * are not in the table are hashed into {@link #NUM_PARTITIONS} partitions and
+ * spilled to {@link SpillFile}s (the groups already in the table keep being
+ * updated in memory).  Each spilled partition is aggregated by a fresh aggregator
+ * when the results are read, using a different hash function, so a partition
+ * that is still too large is split again, up to {@link #MAX_DEPTH} times; beyond
+ * that the table is allowed to exceed the budget.
  */
 public class IntegerAggregator implements Aggregator {
 
+    public static final int DEFAULT_MEMORY_PAGES = 64;
+    public static final int NUM_PARTITIONS = 16;
+    public static final int MAX_DEPTH = 3;
+
+    private final int[] gbfields;
+    private final Type[] gbfieldtypes;
+    private final int[] afields;
+    private final Op[] whats;
+    private final int memoryPages;
+    private final int maxGroups;
+    private final int depth;
+    private final TupleDesc td;
+
+    private GroupTable table;
+    private long[][] acc;   // min, max or sum of each group, for each aggregate; unused for COUNT
+    private long[] count;   // number of values of each group
+
+    private List<List<SpillFile>> partitions;   // null until a tuple is spilled
+    private SpillFile[] writing;                // file of each partition currently being appended to
+    private int numSpilledPartitions;
+
     /**
      * Aggregate constructor
      *
@@ -35,7 +72,81 @@ public class IntegerAggregator implements Aggregator {
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        throw new UnsupportedOperationException("implement me!");
+        this(gbfield, gbfieldtype, afield, what, DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * @param memoryPages the number of pages worth of groups that may be held in memory
+     */
+    public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what, int memoryPages) {
+        this(gbfield == NO_GROUPING ? new int[0] : new int[]{gbfield},
+                gbfield == NO_GROUPING ? new Type[0] : new Type[]{gbfieldtype},
+                new int[]{afield}, new Op[]{what}, memoryPages);
+    }
+
+    /**
+     * Creates an aggregator computing several aggregates of each group.  The
+     * results have the group-by fields first, in the given order, followed by
+     * the value of each aggregate.
+     *
+     * @param gbfields     the indexes of the group-by fields; empty if there is no grouping
+     * @param gbfieldtypes the types of the group-by fields
+     * @param afields      the field over which each aggregate is computed
+     * @param whats        the aggregation operator of each aggregate
+     * @param memoryPages  the number of pages worth of groups that may be held in memory
+     */
+    public IntegerAggregator(int[] gbfields, Type[] gbfieldtypes, int[] afields, Op[] whats, int memoryPages) {
+        this(gbfields, gbfieldtypes, afields, whats, memoryPages, 0);
+    }
+
+    private IntegerAggregator(int[] gbfields, Type[] gbfieldtypes, int[] afields, Op[] whats,
+                              int memoryPages, int depth) {
+        if (gbfields.length != gbfieldtypes.length || afields.length != whats.length || afields.length == 0) {
+            throw new IllegalArgumentException("mismatched group-by fields or aggregates");
+        }
+        for (Op what : whats) {
+            if (what == Op.SUM_COUNT || what == Op.SC_AVG) {
+                throw new IllegalArgumentException("unsupported aggregate: " + what);
+            }
+        }
+        if (memoryPages < 1) {
+            throw new IllegalArgumentException("IntegerAggregator needs at least one page");
+        }
+        this.gbfields = gbfields.clone();
+        this.gbfieldtypes = gbfieldtypes.clone();
+        this.afields = afields.clone();
+        this.whats = whats.clone();
+        this.memoryPages = memoryPages;
+        this.depth = depth;
+        // a group costs its key, its hash, its count, its running values and (at most) two table slots
+        int groupSize = 16 + 8 * whats.length;
+        for (Type t : gbfieldtypes) {
+            groupSize += t.getLen();
+        }
+        this.maxGroups = Math.max(1, memoryPages * (Database.getPageSize() / groupSize));
+        Type[] types = new Type[gbfields.length + afields.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = i < gbfields.length ? gbfieldtypes[i] : Type.INT_TYPE;
+        }
+        this.td = new TupleDesc(types);
+        this.table = new GroupTable(gbfields, gbfieldtypes);
+        this.acc = new long[whats.length][8];
+        this.count = new long[8];
+    }
+
+    /**
+     * @return the maximum number of groups held in memory
+     */
+    public int getMaxGroups() {
+        return maxGroups;
+    }
+
+    /**
+     * @return the number of partitions whose tuples were spilled to disk (not
+     * counting those spilled while aggregating spilled partitions)
+     */
+    public int getNumSpilledPartitions() {
+        return numSpilledPartitions;
     }
 
     /**
@@ -45,7 +156,100 @@ public class IntegerAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        throw new UnsupportedOperationException("implement me!");
+        int g = table.find(tup);
+        if (g == -1) {
+            if (table.size() >= maxGroups && depth < MAX_DEPTH) {
+                spill(tup);
+                return;
+            }
+            g = addGroup(tup);
+        }
+        count[g]++;
+        for (int i = 0; i < whats.length; i++) {
+            if (whats[i] != Op.COUNT) {
+                acc[i][g] = merge(whats[i], acc[i][g], ((IntField) tup.getField(afields[i])).getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the running value of a group before any values are merged into it
+     */
+    static long initialValue(Op what) {
+        return what == Op.MIN ? Integer.MAX_VALUE : what == Op.MAX ? Integer.MIN_VALUE : 0;
+    }
+
+    /**
+     * @return the running value of a group after merging another value into it
+     */
+    static long merge(Op what, long acc, int value) {
+        switch (what) {
+            case MIN:
+                return Math.min(acc, value);
+            case MAX:
+                return Math.max(acc, value);
+            default:
+                return acc + value;
+        }
+    }
+
+    /**
+     * @return the aggregate of a group given its running value and its number of values
+     */
+    static int finalValue(Op what, long acc, long count) {
+        switch (what) {
+            case COUNT:
+                return (int) count;
+            case AVG:
+                return (int) (acc / count);
+            default:
+                return (int) acc;
+        }
+    }
+
+    private int addGroup(Tuple tup) {
+        int g = table.add(tup);
+        if (g == count.length) {
+            count = Arrays.copyOf(count, 2 * g);
+            for (int i = 0; i < whats.length; i++) {
+                acc[i] = Arrays.copyOf(acc[i], 2 * g);
+            }
+        }
+        count[g] = 0;
+        for (int i = 0; i < whats.length; i++) {
+            acc[i][g] = initialValue(whats[i]);
+        }
+        return g;
+    }
+
+    private void spill(Tuple tup) {
+        if (partitions == null) {
+            partitions = new ArrayList<>();
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                partitions.add(new ArrayList<SpillFile>());
+            }
+            writing = new SpillFile[NUM_PARTITIONS];
+        }
+        int part = Math.floorMod(GroupTable.mix(table.hash(tup), depth + 1), NUM_PARTITIONS);
+        if (writing[part] == null) {
+            writing[part] = new SpillFile();
+            if (partitions.get(part).isEmpty()) {
+                numSpilledPartitions++;
+            }
+            partitions.get(part).add(writing[part]);
+        }
+        writing[part].add(tup);
+    }
+
+    private Tuple result(int g) {
+        Tuple t = new Tuple(td);
+        for (int c = 0; c < gbfields.length; c++) {
+            t.setField(c, table.key(g, c));
+        }
+        for (int i = 0; i < whats.length; i++) {
+            t.setField(gbfields.length + i, new IntField(finalValue(whats[i], acc[i][g], count[g])));
+        }
+        return t;
     }
 
     /**
@@ -57,22 +261,117 @@ public class IntegerAggregator implements Aggregator {
      * the constructor.
      */
     public DbIterator iterator() {
-        throw new UnsupportedOperationException("implement me!");
+        if (writing != null) {
+            // the spill files are about to be read; later spills go to new files
+            Arrays.fill(writing, null);
+        }
+        return new ResultIterator();
     }
 
     /**
-     * A helper struct to store accumulated aggregate values.
+     * Discards all groups and deletes the spill files.
      */
-    private class AggregateFields {
-        public String groupVal;
-        public int min, max, sum, count, sumCount;
-
-        public AggregateFields(String groupVal) {
-            this.groupVal = groupVal;
-            min = Integer.MAX_VALUE;
-            max = Integer.MIN_VALUE;
-            sum = count = sumCount = 0;
+    public void clear() {
+        if (partitions != null) {
+            for (List<SpillFile> files : partitions) {
+                for (SpillFile f : files) {
+                    f.delete();
+                }
+            }
         }
+        partitions = null;
+        writing = null;
+        numSpilledPartitions = 0;
+        table = new GroupTable(gbfields, gbfieldtypes);
+        acc = new long[whats.length][8];
+        count = new long[8];
     }
 
+    /**
+     * Returns the groups held in memory, then the groups of each spilled
+     * partition, which are aggregated one partition at a time.
+     */
+    private class ResultIterator implements DbIterator {
+        private boolean isOpen;
+        private int numGroups;      // groups in the table when the iterator was opened
+        private int nextGroup;
+        private int nextPartition;
+        private IntegerAggregator partitionAgg;
+        private ResultIterator partitionIt;
+
+        @Override
+        public void open() {
+            isOpen = true;
+            numGroups = table.size();
+            nextGroup = 0;
+            nextPartition = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!isOpen) {
+                return false;
+            }
+            if (nextGroup < numGroups) {
+                return true;
+            }
+            while (partitionIt == null || !partitionIt.hasNext()) {
+                closePartition();
+                if (partitions == null || nextPartition == partitions.size()) {
+                    return false;
+                }
+                List<SpillFile> files = partitions.get(nextPartition++);
+                if (files.isEmpty()) {
+                    continue;
+                }
+                partitionAgg = new IntegerAggregator(gbfields, gbfieldtypes, afields, whats, memoryPages, depth + 1);
+                for (SpillFile f : files) {
+                    Iterator<Tuple> it = f.iterator();
+                    while (it.hasNext()) {
+                        partitionAgg.mergeTupleIntoGroup(it.next());
+                    }
+                }
+                partitionIt = (ResultIterator) partitionAgg.iterator();
+                partitionIt.open();
+            }
+            return true;
+        }
+
+        @Override
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextGroup < numGroups) {
+                return result(nextGroup++);
+            }
+            return partitionIt.next();
+        }
+
+        private void closePartition() {
+            if (partitionIt != null) {
+                partitionIt.close();
+                partitionAgg.clear();
+                partitionIt = null;
+                partitionAgg = null;
+            }
+        }
+
+        @Override
+        public void rewind() {
+            close();
+            open();
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
+            return td;
+        }
+
+        @Override
+        public void close() {
+            closePartition();
+            isOpen = false;
+        }
+    }
 }
@@ -2,9 +2,12 @@ package colgatedb.operators;
 
 import colgatedb.DbException;
 import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 
 /**
@@ -24,9 +27,23 @@ import java.util.NoSuchElementException;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * For equality joins, a {@link BloomFilter} can be built over the join keys of
+ * the inner relation when the operator is opened.  Building it costs an extra
+ * scan of the inner relation, which only pays off if the filter prunes many
+ * outer tuples, so by default it is only built when the inner relation is known
+ * to be small (see {@link ScanPlanner#useBloomFilter(DbIterator, DbIterator)});
+ * {@link #setUseBloomFilter(boolean)} overrides this.  The size and false
+ * positive rate of the filter are reported along with the other statistics of
+ * the operator.  If the outer child is a SeqScan
+ * or a Filter, the Bloom filter is pushed down into it so that outer tuples
+ * without a matching key are dropped before they reach the join; otherwise the
+ * join itself consults the filter before rescanning the inner relation.
  */
 public class Join extends Operator {
 
+    private static final double BLOOM_FILTER_FPP = 0.01;
+
     private JoinPredicate p;
     private DbIterator child1;
     private DbIterator child2;
@@ -35,6 +52,9 @@ public class Join extends Operator {
     private boolean open;
     private TupleDesc td;
     private Tuple mergedTup;
+    private Boolean useBloomFilter;   // null if left to ScanPlanner
+    private BloomFilter bloomFilter;
+    private boolean bloomFilterPushedDown;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -56,6 +76,45 @@ public class Join extends Operator {
         return p;
     }
 
+    /**
+     * @param useBloomFilter whether a Bloom filter should be built over the inner
+     *                       relation for equality joins, whatever its size
+     */
+    public void setUseBloomFilter(boolean useBloomFilter) {
+        this.useBloomFilter = useBloomFilter;
+    }
+
+    /**
+     * @return the Bloom filter built over the join keys of the inner relation
+     * when this operator was opened, or null if none was built.  Its size and
+     * false positive rate are available through its getters.
+     */
+    public BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * @return the size in bits of the Bloom filter, or 0 if none was built
+     */
+    public int getBloomFilterNumBits() {
+        return bloomFilter == null ? 0 : bloomFilter.getNumBits();
+    }
+
+    /**
+     * @return the expected false positive rate of the Bloom filter, or 0 if none
+     * was built
+     */
+    public double getBloomFilterFalsePositiveRate() {
+        return bloomFilter == null ? 0 : bloomFilter.getFalsePositiveRate();
+    }
+
+    /**
+     * @return true if the Bloom filter was pushed down into the outer child.
+     */
+    public boolean isBloomFilterPushedDown() {
+        return bloomFilterPushedDown;
+    }
+
     @Override
     public TupleDesc getTupleDesc() {
         return td;
@@ -66,11 +125,60 @@ public class Join extends Operator {
             TransactionAbortedException {
         child1.open();
         child2.open();
+        if (buildsBloomFilter()) {
+            buildBloomFilter();
+        }
         open = true;
     }
 
+    private boolean buildsBloomFilter() {
+        if (p.getOperator() != Op.EQUALS) {
+            return false;
+        }
+        return useBloomFilter != null ? useBloomFilter : ScanPlanner.useBloomFilter(child1, child2);
+    }
+
+    /**
+     * Builds the Bloom filter from the join keys of the inner relation and pushes
+     * it down into the outer child if possible.
+     */
+    private void buildBloomFilter() throws DbException, TransactionAbortedException {
+        ArrayList<Field> keys = new ArrayList<>();
+        while (child2.hasNext()) {
+            keys.add(child2.next().getField(p.getField2()));
+        }
+        child2.rewind();
+        bloomFilter = new BloomFilter(keys.size(), BLOOM_FILTER_FPP);
+        for (Field key : keys) {
+            bloomFilter.add(key);
+        }
+        bloomFilterPushedDown = true;
+        if (child1 instanceof SeqScan) {
+            ((SeqScan) child1).setRuntimeFilter(bloomFilter, p.getField1());
+        } else if (child1 instanceof Filter) {
+            ((Filter) child1).setRuntimeFilter(bloomFilter, p.getField1());
+        } else {
+            bloomFilterPushedDown = false;
+        }
+    }
+
+    /**
+     * Removes the Bloom filter pushed down into the outer child, if any.
+     */
+    private void clearPushedDownFilter() {
+        if (bloomFilterPushedDown) {
+            if (child1 instanceof SeqScan) {
+                ((SeqScan) child1).setRuntimeFilter(null, -1);
+            } else {
+                ((Filter) child1).setRuntimeFilter(null, -1);
+            }
+            bloomFilterPushedDown = false;
+        }
+    }
+
     @Override
     public void close() {
+        clearPushedDownFilter();
         child1.close();
         child2.close();
         open = false;
@@ -94,21 +202,17 @@ public class Join extends Operator {
         while (child1.hasNext() || tuple1 != null) {
             if (tuple1 == null) {
                 tuple1 = child1.next();
+                if (bloomFilter != null && !bloomFilterPushedDown &&
+                        !bloomFilter.mightContain(tuple1.getField(p.getField1()))) {
+                    tuple1 = null;   // no match in inner relation, no need to scan it
+                    continue;
+                }
                 child2.rewind();
             }
             while (child2.hasNext()) {
                 tuple2 = child2.next();
                 if (p.filter(tuple1,tuple2)) {
-                    mergedTup = new Tuple(td);
-                    int tupIdx = 0;
-                    for (int i = 0; i < tuple1.getTupleDesc().numFields(); i++) {
-                        mergedTup.setField(tupIdx, tuple1.getField(i));
-                        tupIdx++;
-                    }
-                    for (int i = 0; i < tuple2.getTupleDesc().numFields(); i++) {
-                        mergedTup.setField(tupIdx, tuple2.getField(i));
-                        tupIdx++;
-                    }
+                    mergedTup = merge(td, tuple1, tuple2);
                     return true;
                 }
             }
@@ -156,8 +260,35 @@ public class Join extends Operator {
         if (children.length != 2) {
             throw new DbException("[ERROR] Join.java: Failed to set children with array of length " + children.length);
         }
+        clearPushedDownFilter();
         this.child1 = children[0];
         this.child2 = children[1];
+        this.bloomFilter = null;
+        if (open && buildsBloomFilter()) {
+            try {
+                buildBloomFilter();
+            } catch (TransactionAbortedException e) {
+                throw new DbException("[ERROR] unable to rebuild the Bloom filter: " + e);
+            }
+        }
+    }
+
+    /**
+     * Concatenates a left and a right tuple; used by all of the join operators.
+     *
+     * @param td the schema of the result, the merge of the schemas of the two tuples
+     * @return a new tuple holding the fields of tuple1 followed by those of tuple2
+     */
+    static Tuple merge(TupleDesc td, Tuple tuple1, Tuple tuple2) {
+        Tuple merged = new Tuple(td);
+        int n1 = tuple1.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++) {
+            merged.setField(i, tuple1.getField(i));
+        }
+        for (int i = 0; i < tuple2.getTupleDesc().numFields(); i++) {
+            merged.setField(n1 + i, tuple2.getField(i));
+        }
+        return merged;
     }
 
 }
@@ -0,0 +1,121 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+/**
+ * Limit returns at most the first n tuples of its child.
+ * <p>
+ * If the child is an {@link OrderBy}, the limit is evaluated with a {@link TopN}
+ * over the OrderBy's child instead, so the input is never fully sorted.  The TopN
+ * replaces the OrderBy as the child of the Limit, so {@link #getChildren()}
+ * returns the operator that actually runs.
+ */
+public class Limit extends Operator {
+
+    private DbIterator child;       // the given child, or a TopN that replaces an OrderBy
+    private final int n;
+    private int count;
+    private boolean open;
+
+    /**
+     * @param n     the maximum number of tuples to return
+     * @param child the child operator
+     */
+    public Limit(int n, DbIterator child) {
+        if (n < 0) {
+            throw new DbException("[ERROR] Limit needs a non-negative limit");
+        }
+        this.n = n;
+        setChild(child);
+    }
+
+    private void setChild(DbIterator child) {
+        if (child instanceof OrderBy) {
+            OrderBy orderBy = (OrderBy) child;
+            this.child = new TopN(orderBy.getOrderByFields(), orderBy.getAscending(), n, orderBy.getChildren()[0]);
+        } else {
+            this.child = child;
+        }
+    }
+
+    public int getLimit() {
+        return n;
+    }
+
+    /**
+     * @return true if the limit is evaluated with a TopN in place of an OrderBy child
+     */
+    public boolean isUsingTopN() {
+        return child instanceof TopN;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        count = 0;
+        open = true;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        open = false;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        count = 0;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return open && count < n && child.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        count++;
+        return child.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        setChild(children[0]);
+    }
+}
@@ -0,0 +1,106 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Tuple;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A LoserTree merges k sorted iterators of tuples.  Each internal node of the
+ * tree remembers the loser of the comparison made there, and the overall winner
+ * is kept at the root, so replacing the winner by the next tuple of its source
+ * takes one comparison per level (about log2 k) on the path back to the root.
+ * <p>
+ * Ties are broken in favor of the source that comes first in the list, so
+ * merging runs that were produced in input order yields a stable sort.
+ */
+class LoserTree implements Iterator<Tuple> {
+
+    private final List<Iterator<Tuple>> sources;
+    private final Comparator<Tuple> comparator;
+    private final Tuple[] heads;   // current tuple of each source, null if the source is exhausted
+    private final int[] tree;      // tree[0] is the winner; tree[1..k-1] are the losers at internal nodes
+    private final int k;
+
+    LoserTree(List<Iterator<Tuple>> sources, Comparator<Tuple> comparator) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.k = sources.size();
+        this.heads = new Tuple[k];
+        this.tree = new int[Math.max(1, k)];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < k; i++) {
+            Iterator<Tuple> it = sources.get(i);
+            heads[i] = it.hasNext() ? it.next() : null;
+        }
+        for (int i = k - 1; i >= 0; i--) {
+            replay(i);
+        }
+    }
+
+    /**
+     * @return true if the head of source a comes before the head of source b; -1
+     * stands for a source smaller than any other (only used while building the tree)
+     */
+    private boolean beats(int a, int b) {
+        if (a == -1 || b == -1) {
+            return a == -1;
+        }
+        if (heads[a] == null || heads[b] == null) {
+            return heads[b] == null && heads[a] != null;
+        }
+        int c = comparator.compare(heads[a], heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    /**
+     * Replays the matches on the path from the leaf of the given source to the root.
+     */
+    private void replay(int source) {
+        int winner = source;
+        for (int node = (source + k) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return k > 0 && heads[tree[0]] != null;
+    }
+
+    @Override
+    public Tuple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int winner = tree[0];
+        Tuple t = heads[winner];
+        Iterator<Tuple> it = sources.get(winner);
+        heads[winner] = it.hasNext() ? it.next() : null;
+        replay(winner);
+        return t;
+    }
+}
@@ -0,0 +1,164 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.DbFileIterator;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.dbfile.NGramIndex;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.*;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * NGramScan evaluates a {@code LIKE} predicate on a string column using an
+ * {@link NGramIndex}.  The index produces the RecordIds of candidate records,
+ * which are fetched from the table and re-checked with {@link Predicate#filter},
+ * since the index may return records that do not match.  If the pattern is too
+ * short to have any trigrams, the scan falls back to reading the whole table.
+ *
+ * @see ScanPlanner#filteredScan
+ */
+public class NGramScan implements DbIterator {
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final HeapFile file;
+    private final NGramIndex index;
+    private final Predicate predicate;
+    private final TupleDesc td;
+    private List<RecordId> candidates;     // null when falling back to a full scan
+    private int nextCandidate;
+    private DbFileIterator fullScan;
+    private Tuple nextTuple;
+
+    /**
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the id of the table to scan, which must be stored in a HeapFile
+     * @param tableAlias the alias of this table; field names are prefixed as in SeqScan
+     * @param index      an n-gram index on the column of the predicate
+     * @param predicate  a LIKE predicate on the indexed column
+     */
+    public NGramScan(TransactionId tid, int tableid, String tableAlias, NGramIndex index, Predicate predicate) {
+        if (predicate.getOp() != Op.LIKE || predicate.getField() != index.getField()) {
+            throw new DbException("NGramScan requires a LIKE predicate on the indexed column");
+        }
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.file = (HeapFile) Database.getCatalog().getDatabaseFile(tableid);
+        this.index = index;
+        this.predicate = predicate;
+
+        TupleDesc fileTd = file.getTupleDesc();
+        int numFields = fileTd.numFields();
+        Type[] types = new Type[numFields];
+        String[] fieldNames = new String[numFields];
+        for (int i = 0; i < numFields; i++) {
+            types[i] = fileTd.getFieldType(i);
+            fieldNames[i] = tableAlias + '.' + fileTd.getFieldName(i);
+        }
+        td = new TupleDesc(types, fieldNames);
+    }
+
+    /**
+     * @return the actual name of the table in the catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableid);
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * @return the number of candidate records produced by the index, or -1 if the
+     * scan is not open or is reading the whole table
+     */
+    public int getNumCandidates() {
+        return candidates == null ? -1 : candidates.size();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        String pattern = ((StringField) predicate.getOperand()).getValue();
+        candidates = index.candidates(tid, pattern);
+        nextCandidate = 0;
+        if (candidates == null) {
+            fullScan = file.iterator(tid, predicate);
+            fullScan.open();
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (nextTuple != null) {
+            return true;
+        }
+        if (fullScan != null) {
+            if (fullScan.hasNext()) {
+                nextTuple = fullScan.next();
+            }
+            return nextTuple != null;
+        }
+        while (candidates != null && nextCandidate < candidates.size()) {
+            Tuple t = file.getTuple(tid, candidates.get(nextCandidate++));
+            if (t != null && predicate.filter(t)) {
+                nextTuple = t;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        nextTuple = null;
+        nextCandidate = 0;
+        if (fullScan != null) {
+            fullScan.rewind();
+        }
+    }
+
+    public void close() {
+        nextTuple = null;
+        candidates = null;
+        if (fullScan != null) {
+            fullScan.close();
+            fullScan = null;
+        }
+    }
+}
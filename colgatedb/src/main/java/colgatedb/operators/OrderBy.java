@@ -1,9 +1,9 @@
 package colgatedb.operators;
 
+import colgatedb.Database;
 import colgatedb.DbException;
+import colgatedb.dbfile.SpillFile;
 import colgatedb.transactions.TransactionAbortedException;
-import colgatedb.tuple.Field;
-import colgatedb.tuple.Op;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
 
@@ -23,17 +23,33 @@ import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * Tuples may be sorted on several fields, each ascending or descending.  The
+ * sort is an external merge sort bounded by a memory budget: the child is read
+ * into memory until the budget is full, and each such batch is sorted and
+ * written to a temporary {@link SpillFile} as a sorted run.  If everything fits
+ * in memory, no run is written.  Otherwise the runs are merged with a
+ * {@link LoserTree}, at most (budget - 1) runs at a time, in as many passes as
+ * needed to leave few enough runs for the final merge, which produces the output.
+ * The sort is stable.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_MEMORY_PAGES = 64;
+
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    private int orderByField;
-    private String orderByFieldName;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final String orderByFieldName;
+    private final int memoryPages;
+    private final TupleComparator comparator;
+    private List<SpillFile> runs = new ArrayList<>();   // empty if the input fit in memory
+    private int numRunsWritten;
+    private int numMergePasses;
     private Iterator<Tuple> it;
-    private boolean asc;
     private boolean open;
 
     /**
@@ -44,25 +60,88 @@ public class OrderBy extends Operator {
      * @param child        the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(new int[]{orderbyField}, new boolean[]{asc}, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields, using the default
+     * memory budget.
+     *
+     * @param orderbyFields the fields to sort on, most significant first.
+     * @param asc           for each field, true if the sort order is ascending.
+     * @param child         the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child) {
+        this(orderbyFields, asc, child, DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * @param memoryPages the number of pages worth of tuples that may be held in
+     *                    memory; at least 3 so that two runs can be merged
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child, int memoryPages) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new DbException("[ERROR] OrderBy needs a sort order for each sort field");
+        }
+        if (memoryPages < 3) {
+            throw new DbException("[ERROR] OrderBy needs at least 3 pages of memory");
+        }
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.orderByFieldName = td.getFieldName(orderbyFields[0]);
+        this.memoryPages = memoryPages;
+        this.comparator = new TupleComparator(this.orderByFields, this.asc);
     }
 
+    /**
+     * @return true if the sort order of the first sort field is ascending
+     */
     public boolean isASC() {
-        return this.asc;
+        return this.asc[0];
     }
 
+    /**
+     * @return the first (most significant) sort field
+     */
     public int getOrderByField() {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
 
     public String getOrderFieldName() {
         return this.orderByFieldName;
     }
 
+    /**
+     * @return all of the sort fields, most significant first
+     */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return for each sort field, true if it is sorted in ascending order
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    /**
+     * @return the number of sorted runs written to disk by the last open (including
+     * runs written by intermediate merge passes), 0 if the input fit in memory
+     */
+    public int getNumRunsWritten() {
+        return numRunsWritten;
+    }
+
+    /**
+     * @return the number of merge passes made before the final merge by the last open
+     */
+    public int getNumMergePasses() {
+        return numMergePasses;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
@@ -70,21 +149,101 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        deleteRuns();
+        childTups = new ArrayList<Tuple>();
+        numRunsWritten = 0;
+        numMergePasses = 0;
+        int runSize = -1;
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (runSize == -1) {
+                runSize = Math.max(1, memoryPages * (Database.getPageSize() / t.getTupleDesc().getSize()));
+            }
+            childTups.add(t);
+            if (childTups.size() == runSize) {
+                writeRun();
+            }
+        }
+        if (runs.isEmpty()) {
+            Collections.sort(childTups, comparator);
+        } else {
+            if (!childTups.isEmpty()) {
+                writeRun();
+            }
+            // leave one page of memory for the output of a merge
+            int fanIn = memoryPages - 1;
+            while (runs.size() > fanIn) {
+                mergePass(fanIn);
+            }
+        }
         open = true;
+        rewind();
+    }
+
+    /**
+     * Sorts the tuples in memory and writes them to a new run.
+     */
+    private void writeRun() {
+        Collections.sort(childTups, comparator);
+        SpillFile run = new SpillFile();
+        for (Tuple t : childTups) {
+            run.add(t);
+        }
+        runs.add(run);
+        numRunsWritten++;
+        childTups = new ArrayList<Tuple>();
+    }
+
+    /**
+     * Merges groups of fanIn consecutive runs into one run each.
+     */
+    private void mergePass(int fanIn) {
+        List<SpillFile> merged = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += fanIn) {
+            List<SpillFile> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            SpillFile out = new SpillFile();
+            Iterator<Tuple> merge = merge(group);
+            while (merge.hasNext()) {
+                out.add(merge.next());
+            }
+            for (SpillFile run : group) {
+                run.delete();
+            }
+            merged.add(out);
+            numRunsWritten++;
+        }
+        runs = merged;
+        numMergePasses++;
+    }
+
+    private Iterator<Tuple> merge(List<SpillFile> group) {
+        List<Iterator<Tuple>> sources = new ArrayList<>();
+        for (SpillFile run : group) {
+            sources.add(run.iterator());
+        }
+        return new LoserTree(sources, comparator);
+    }
+
+    private void deleteRuns() {
+        for (SpillFile run : runs) {
+            run.delete();
+        }
+        runs = new ArrayList<>();
     }
 
     public void close() {
         open = false;
         it = null;
+        childTups = new ArrayList<Tuple>();
+        deleteRuns();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        it = runs.isEmpty() ? childTups.iterator() : merge(runs);
     }
 
     @Override
@@ -113,25 +272,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-
-}
@@ -0,0 +1,160 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.dbfile.CoveringIndex;
+import colgatedb.dbfile.DbFile;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.dbfile.NGramIndex;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.util.ArrayList;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Chooses the access path for reading a table, and whether a join builds a
+ * Bloom filter over its inner relation.
+ * <p>
+ * Indexes only describe the current contents of a table, not the older versions
+ * of its records, so snapshot and optimistic transactions (see
+ * {@link colgatedb.transactions.SnapshotManager}) always read the base file.
+ */
+public class ScanPlanner {
+
+    /**
+     * The size, in pages, up to which the inner relation of a join counts as small
+     * enough to build a Bloom filter over by default.
+     */
+    public static final int BLOOM_FILTER_MAX_INNER_PAGES = 64;
+
+    /**
+     * Builds a plan that reads the given columns of a table, i.e., a Project over
+     * a scan.  If the table has a covering index that includes all of the columns,
+     * the plan uses an {@link IndexOnlyScan}, unless tid reads a snapshot; otherwise
+     * it uses a {@link SeqScan}.
+     *
+     * @param tid       the transaction running the query
+     * @param tableid   the table to read
+     * @param alias     the alias of the table
+     * @param fieldList indexes (in the table's schema) of the columns to return
+     * @return a Project operator whose output has the requested columns, in order
+     */
+    public static Project projectedScan(TransactionId tid, int tableid, String alias,
+                                        ArrayList<Integer> fieldList) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        TupleDesc tableTd = file.getTupleDesc();
+        Type[] types = new Type[fieldList.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = tableTd.getFieldType(fieldList.get(i));
+        }
+
+        if (file instanceof HeapFile && !Database.getSnapshotManager().isSnapshot(tid)) {
+            CoveringIndex index = ((HeapFile) file).findCoveringIndex(fieldList);
+            if (index != null) {
+                ArrayList<Integer> indexFields = new ArrayList<>();
+                for (int f : fieldList) {
+                    indexFields.add(index.indexOf(f));
+                }
+                return new Project(indexFields, types, new IndexOnlyScan(tid, tableid, alias, index));
+            }
+        }
+        return new Project(fieldList, types, new SeqScan(tid, tableid, alias));
+    }
+
+    /**
+     * Builds a plan that returns the tuples of a table satisfying a predicate.  A
+     * LIKE predicate on a column with an n-gram index is answered with an
+     * {@link NGramScan}, unless tid reads a snapshot; any other predicate is pushed
+     * down into a {@link SeqScan}.
+     *
+     * @param tid       the transaction running the query
+     * @param tableid   the table to read
+     * @param alias     the alias of the table
+     * @param predicate the predicate to apply to the tuples of the table
+     */
+    public static DbIterator filteredScan(TransactionId tid, int tableid, String alias, Predicate predicate) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (predicate.getOp() == Op.LIKE && file instanceof HeapFile &&
+                !Database.getSnapshotManager().isSnapshot(tid)) {
+            NGramIndex index = ((HeapFile) file).findNGramIndex(predicate.getField());
+            if (index != null) {
+                return new NGramScan(tid, tableid, alias, index, predicate);
+            }
+        }
+        return new SeqScan(tid, tableid, alias, predicate);
+    }
+
+    /**
+     * Splits a scan of a table into scans of disjoint, contiguous page ranges of
+     * roughly equal size, which can be run in parallel below a gathering
+     * {@link Exchange}.  Pages appended to the table after the plan is built
+     * are only read by the last scan.
+     *
+     * @param predicate     the predicate pushed down into each scan, or null
+     * @param numPartitions the maximum number of scans; fewer are returned for a
+     *                      table with fewer pages
+     * @return the scans, in page order (a single scan if the table is not a HeapFile)
+     */
+    public static SeqScan[] partitionedScans(TransactionId tid, int tableid, String alias, Predicate predicate,
+                                             int numPartitions) {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            return new SeqScan[]{new SeqScan(tid, tableid, alias, predicate)};
+        }
+        int numPages = ((HeapFile) file).numPages();
+        int n = Math.max(1, Math.min(numPartitions, numPages));
+        SeqScan[] scans = new SeqScan[n];
+        for (int i = 0; i < n; i++) {
+            int start = (int) ((long) numPages * i / n);
+            int end = i == n - 1 ? Integer.MAX_VALUE : (int) ((long) numPages * (i + 1) / n);
+            scans[i] = new SeqScan(tid, tableid, alias, predicate, start, end);
+        }
+        return scans;
+    }
+
+    /**
+     * Decides whether a {@link Join} of outer with inner should build a Bloom filter
+     * over the join keys of inner (see {@link Join#setUseBloomFilter(boolean)}).
+     * Building the filter costs an extra scan of inner, so it is only worth it when
+     * inner is known to be small: at most {@link #BLOOM_FILTER_MAX_INNER_PAGES}
+     * pages, and not larger than outer if the size of outer is known.
+     */
+    public static boolean useBloomFilter(DbIterator outer, DbIterator inner) {
+        int innerPages = estimatePages(inner);
+        int outerPages = estimatePages(outer);
+        return innerPages >= 0 && innerPages <= BLOOM_FILTER_MAX_INNER_PAGES &&
+                (outerPages < 0 || innerPages <= outerPages);
+    }
+
+    /**
+     * @return the number of pages read by a scan, possibly below Filters and
+     * Projects, or -1 if it is not known
+     */
+    static int estimatePages(DbIterator it) {
+        if (it instanceof SeqScan) {
+            DbFile file = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+            return file instanceof HeapFile ? ((HeapFile) file).numPages() : -1;
+        } else if (it instanceof IndexOnlyScan) {
+            return ((IndexOnlyScan) it).getIndex().numPages();
+        } else if (it instanceof Filter || it instanceof Project) {
+            return estimatePages(((Operator) it).getChildren()[0]);
+        }
+        return -1;
+    }
+}
@@ -5,6 +5,7 @@ import colgatedb.Database;
 import colgatedb.DbException;
 import colgatedb.dbfile.DbFile;
 import colgatedb.dbfile.DbFileIterator;
+import colgatedb.dbfile.HeapFile;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
 import colgatedb.tuple.Tuple;
@@ -40,6 +41,10 @@ public class SeqScan implements DbIterator {
     private String tableName;
     private TupleDesc td;
     private DbFileIterator dbFileIterator;
+    private final Predicate predicate;
+    private BloomFilter runtimeFilter;
+    private int runtimeFilterField;
+    private Tuple nextTuple;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -55,13 +60,57 @@ public class SeqScan implements DbIterator {
      *                   tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that only returns the tuples satisfying the given
+     * predicate.  The predicate is pushed down into the DbFile, which may skip
+     * pages that cannot contain a matching tuple (see {@link DbFile#iterator(TransactionId, Predicate)}).
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the id of the table to scan.
+     * @param tableAlias the alias of this table (see above)
+     * @param predicate  the predicate to apply to the tuples of the table, or null
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate predicate) {
+        this(tid, tableid, tableAlias, predicate, predicate == null ?
+                Database.getCatalog().getDatabaseFile(tableid).iterator(tid) :
+                Database.getCatalog().getDatabaseFile(tableid).iterator(tid, predicate));
+    }
+
+    /**
+     * Creates a scan of the pages startPage (inclusive) to endPage (exclusive) of
+     * a table stored in a HeapFile.  Scans of disjoint page ranges can be run in
+     * parallel, e.g., below an {@link Exchange}.
+     *
+     * @param predicate the predicate to apply to the tuples of the table, or null
+     * @throws DbException if the table is not stored in a HeapFile
+     * @see ScanPlanner#partitionedScans
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate predicate,
+                   int startPage, int endPage) {
+        this(tid, tableid, tableAlias, predicate,
+                heapFile(tableid).iterator(tid, predicate, startPage, endPage));
+    }
+
+    private static HeapFile heapFile(int tableid) {
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(tableid);
+        if (!(dbFile instanceof HeapFile)) {
+            throw new DbException("[ERROR] only HeapFiles can be scanned by page range");
+        }
+        return (HeapFile) dbFile;
+    }
+
+    private SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate predicate,
+                    DbFileIterator dbFileIterator) {
         this.tid = tid;
         this.tableid = tableid;
         tableName = Database.getCatalog().getTableName(tableid);
         this.tableAlias = tableAlias;
-
+        this.predicate = predicate;
+        this.dbFileIterator = dbFileIterator;
         DbFile dbFile = Database.getCatalog().getDatabaseFile(tableid);
-        dbFileIterator = dbFile.iterator(tid);
 
 //        Build new tupledesc
         TupleDesc tdTemp = dbFile.getTupleDesc();
@@ -70,6 +119,7 @@ public class SeqScan implements DbIterator {
         String [] fieldNames = new String[numFields];
 
         for (int i = 0; i < numFields; i++) {
+            types[i] = tdTemp.getFieldType(i);
             fieldNames[i] = tableAlias + '.' + tdTemp.getFieldName(i);
         }
         td = new TupleDesc(types,fieldNames);
@@ -87,6 +137,13 @@ public class SeqScan implements DbIterator {
         return tableName;
     }
 
+    /**
+     * @return the id of the table this operator scans
+     */
+    public int getTableId() {
+        return tableid;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      */
@@ -94,6 +151,26 @@ public class SeqScan implements DbIterator {
         return this.tableAlias;
     }
 
+    /**
+     * Installs an additional filter computed at runtime (e.g., by a join over the
+     * join keys of its other input): tuples whose value in the given field is
+     * definitely not in the Bloom filter are not returned by this scan.
+     *
+     * @param bf    the Bloom filter, or null to remove the runtime filter
+     * @param field the field to look up in bf
+     */
+    public void setRuntimeFilter(BloomFilter bf, int field) {
+        this.runtimeFilter = bf;
+        this.runtimeFilterField = field;
+    }
+
+    /**
+     * @return the predicate pushed down into this scan, or null if there is none.
+     */
+    public Predicate getPredicate() {
+        return this.predicate;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
         this.dbFileIterator.open();
     }
@@ -112,20 +189,37 @@ public class SeqScan implements DbIterator {
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
-        return this.dbFileIterator.hasNext();
+        if (nextTuple != null) {
+            return true;
+        }
+        while (this.dbFileIterator.hasNext()) {
+            Tuple t = this.dbFileIterator.next();
+            if (runtimeFilter == null || runtimeFilter.mightContain(t.getField(runtimeFilterField))) {
+                nextTuple = t;
+                return true;
+            }
+        }
+        return false;
     }
 
     public Tuple next() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        return this.dbFileIterator.next();
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
     }
 
     public void close() {
+        nextTuple = null;
         this.dbFileIterator.close();
     }
 
     public void rewind() throws DbException, NoSuchElementException,
             TransactionAbortedException {
-        this.dbFileIterator.close();
+        nextTuple = null;
+        this.dbFileIterator.rewind();
     }
 }
@@ -0,0 +1,282 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Field;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * SortMergeJoin joins two inputs that are both sorted in ascending order of
+ * their join fields (e.g., the output of {@link OrderBy}) by merging them in a
+ * single pass; neither child is ever rewound.
+ * <p>
+ * For an equality predicate, the right tuples sharing the current join key are
+ * buffered and joined with every left tuple with that key.  For {@code <, <=, >, >=}
+ * the tuples of one input that satisfy the predicate form a prefix of that input
+ * that only grows as the other input advances: for {@code >} and {@code >=} the
+ * left input is streamed and the qualifying prefix of the right input is
+ * buffered, and for {@code <} and {@code <=} the roles are swapped.  Other
+ * operators cannot be evaluated by merging and are rejected.
+ * <p>
+ * The output tuples are the same as those of {@link Join} (left fields followed
+ * by right fields), although for inequality predicates they come in a different order.
+ */
+public class SortMergeJoin extends Operator {
+
+    private final JoinPredicate p;
+    private DbIterator child1;
+    private DbIterator child2;
+    private final TupleDesc td;
+    private boolean open;
+    private Tuple nextTuple;
+
+    private Field lastLeftKey;
+    private Field lastRightKey;
+
+    // equality joins
+    private boolean started;
+    private Tuple left;
+    private ArrayList<Tuple> group;
+    private Field groupKey;
+    private Tuple rightPeek;
+    private int groupIdx;
+
+    // inequality joins
+    private final boolean streamLeft;
+    private Tuple stream;
+    private final ArrayList<Tuple> prefix = new ArrayList<>();
+    private Tuple prefixPeek;
+    private int prefixIdx;
+
+    /**
+     * @param p      the predicate to join on; its operator must be one of {@code =, <, <=, >, >=}
+     * @param child1 Iterator for the left relation, sorted in ascending order of the left join field
+     * @param child2 Iterator for the right relation, sorted in ascending order of the right join field
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        Op op = p.getOperator();
+        if (op == Op.NOT_EQUALS || op == Op.LIKE) {
+            throw new DbException("[ERROR] SortMergeJoin cannot evaluate " + op);
+        }
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.streamLeft = op == Op.GREATER_THAN || op == Op.GREATER_THAN_OR_EQ;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        setTupleDesc(td);
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        open = true;
+        reset();
+    }
+
+    private void reset() {
+        nextTuple = null;
+        lastLeftKey = null;
+        lastRightKey = null;
+        started = false;
+        left = null;
+        group = null;
+        groupKey = null;
+        rightPeek = null;
+        groupIdx = 0;
+        stream = null;
+        prefix.clear();
+        prefixPeek = null;
+        prefixIdx = 0;
+    }
+
+    /**
+     * @return the next left tuple, or null if there are no more
+     * @throws DbException if the left input is not sorted
+     */
+    private Tuple nextLeft() throws DbException, TransactionAbortedException {
+        if (!child1.hasNext()) {
+            return null;
+        }
+        Tuple t = child1.next();
+        lastLeftKey = checkOrder(lastLeftKey, t.getField(p.getField1()));
+        return t;
+    }
+
+    private Tuple nextRight() throws DbException, TransactionAbortedException {
+        if (!child2.hasNext()) {
+            return null;
+        }
+        Tuple t = child2.next();
+        lastRightKey = checkOrder(lastRightKey, t.getField(p.getField2()));
+        return t;
+    }
+
+    private Field checkOrder(Field previous, Field key) {
+        if (previous != null && key.compare(Op.LESS_THAN, previous)) {
+            throw new DbException("[ERROR] SortMergeJoin input is not sorted on the join field");
+        }
+        return key;
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (nextTuple != null) {
+            return true;
+        }
+        if (!open) {
+            return false;
+        }
+        return p.getOperator() == Op.EQUALS ? nextEquality() : nextInequality();
+    }
+
+    private boolean nextEquality() throws DbException, TransactionAbortedException {
+        if (!started) {
+            left = nextLeft();
+            started = true;
+        }
+        while (left != null) {
+            Field key = left.getField(p.getField1());
+            if (group != null && key.equals(groupKey)) {
+                if (groupIdx < group.size()) {
+                    nextTuple = Join.merge(td, left, group.get(groupIdx++));
+                    return true;
+                }
+                left = nextLeft();
+                groupIdx = 0;
+            } else if (group == null || groupKey.compare(Op.LESS_THAN, key)) {
+                if (!loadGroup()) {
+                    left = null;
+                }
+            } else {
+                left = nextLeft();
+                groupIdx = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next group of right tuples sharing a join key.
+     *
+     * @return false if the right input is exhausted
+     */
+    private boolean loadGroup() throws DbException, TransactionAbortedException {
+        Tuple first = rightPeek != null ? rightPeek : nextRight();
+        rightPeek = null;
+        if (first == null) {
+            group = null;
+            return false;
+        }
+        group = new ArrayList<>();
+        group.add(first);
+        groupKey = first.getField(p.getField2());
+        groupIdx = 0;
+        Tuple t;
+        while ((t = nextRight()) != null) {
+            if (!t.getField(p.getField2()).equals(groupKey)) {
+                rightPeek = t;
+                break;
+            }
+            group.add(t);
+        }
+        return true;
+    }
+
+    private boolean nextInequality() throws DbException, TransactionAbortedException {
+        while (true) {
+            if (stream != null && prefixIdx < prefix.size()) {
+                Tuple buffered = prefix.get(prefixIdx++);
+                nextTuple = streamLeft ? Join.merge(td, stream, buffered) : Join.merge(td, buffered, stream);
+                return true;
+            }
+            stream = streamLeft ? nextLeft() : nextRight();
+            prefixIdx = 0;
+            if (stream == null) {
+                return false;
+            }
+            while (true) {
+                if (prefixPeek == null) {
+                    prefixPeek = streamLeft ? nextRight() : nextLeft();
+                }
+                if (prefixPeek == null ||
+                        !(streamLeft ? p.filter(stream, prefixPeek) : p.filter(prefixPeek, stream))) {
+                    break;
+                }
+                prefix.add(prefixPeek);
+                prefixPeek = null;
+            }
+        }
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more tuples!");
+        }
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (!open) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        child1.rewind();
+        child2.rewind();
+        reset();
+    }
+
+    @Override
+    public void close() {
+        child1.close();
+        child2.close();
+        open = false;
+        reset();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) throws DbException {
+        if (children.length != 2) {
+            throw new DbException("[ERROR] SortMergeJoin.java: Failed to set children with array of length " + children.length);
+        }
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
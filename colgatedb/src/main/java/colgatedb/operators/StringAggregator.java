@@ -2,10 +2,6 @@ package colgatedb.operators;
 
 import colgatedb.tuple.*;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
-
 /**
  * ColgateDB
  * @author Michael Hay mhay@colgate.edu
@@ -20,9 +16,14 @@ import java.util.LinkedList;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * <p>
+ * The only aggregate supported over strings is COUNT, which never looks at the
+ * values being aggregated, so the work (including spilling groups that do not
+ * fit in memory) is delegated to an {@link IntegerAggregator}.
  */
 public class StringAggregator implements Aggregator {
 
+    private final IntegerAggregator counter;
 
     /**
      * Aggregate constructor
@@ -35,7 +36,17 @@ public class StringAggregator implements Aggregator {
      */
 
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        throw new UnsupportedOperationException("implement me!");
+        this(gbfield, gbfieldtype, afield, what, IntegerAggregator.DEFAULT_MEMORY_PAGES);
+    }
+
+    /**
+     * @param memoryPages the number of pages worth of groups that may be held in memory
+     */
+    public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what, int memoryPages) {
+        if (what != Op.COUNT) {
+            throw new IllegalArgumentException("StringAggregator only supports COUNT, got " + what);
+        }
+        counter = new IntegerAggregator(gbfield, gbfieldtype, afield, what, memoryPages);
     }
 
     /**
@@ -44,7 +55,7 @@ public class StringAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        throw new UnsupportedOperationException("implement me!");
+        counter.mergeTupleIntoGroup(tup);
     }
 
     /**
@@ -56,19 +67,10 @@ public class StringAggregator implements Aggregator {
      * aggregate specified in the constructor.
      */
     public DbIterator iterator() {
-        throw new UnsupportedOperationException("implement me!");
+        return counter.iterator();
     }
 
-    /**
-     * A helper struct to store accumulated aggregate values.
-     */
-    private class AggregateFields {
-        public String groupVal;
-        public int count;
-
-        public AggregateFields(String groupVal) {
-            this.groupVal = groupVal;
-            count = 0;
-        }
+    public void clear() {
+        counter.clear();
     }
 }
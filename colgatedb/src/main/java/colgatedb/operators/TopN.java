@@ -0,0 +1,163 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+
+import java.util.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+/**
+ * TopN returns the first n tuples of its child in sorted order, i.e., the same
+ * tuples as a {@link Limit} over an {@link OrderBy}, without sorting the whole
+ * input.  It keeps a bounded heap of the n best tuples seen so far, with the
+ * worst of them on top: each child tuple is compared with the top and replaces
+ * it if it is better, so memory is O(n) and time is O(input * log n).
+ * <p>
+ * As with OrderBy, ties are kept in input order.
+ */
+public class TopN extends Operator {
+
+    private DbIterator child;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int n;
+    private final Comparator<Entry> order;
+    private ArrayList<Tuple> result;
+    private Iterator<Tuple> it;
+
+    /**
+     * A tuple together with its position in the input, used to break ties.
+     */
+    private static class Entry {
+        final Tuple tuple;
+        final long seq;
+
+        Entry(Tuple tuple, long seq) {
+            this.tuple = tuple;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * @param orderbyFields the fields to sort on, most significant first
+     * @param asc           for each field, true if the sort order is ascending
+     * @param n             the number of tuples to return
+     * @param child         the tuples to sort
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int n, DbIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new DbException("[ERROR] TopN needs a sort order for each sort field");
+        }
+        if (n < 0) {
+            throw new DbException("[ERROR] TopN needs a non-negative limit");
+        }
+        this.child = child;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.n = n;
+        final TupleComparator comparator = new TupleComparator(this.orderByFields, this.asc);
+        this.order = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                int c = comparator.compare(a.tuple, b.tuple);
+                return c != 0 ? c : Long.compare(a.seq, b.seq);
+            }
+        };
+    }
+
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    public int getLimit() {
+        return n;
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.max(1, n), Collections.reverseOrder(order));
+        long seq = 0;
+        while (child.hasNext()) {
+            Entry e = new Entry(child.next(), seq++);
+            if (heap.size() < n) {
+                heap.add(e);
+            } else if (n > 0 && order.compare(e, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        ArrayList<Entry> entries = new ArrayList<>(heap);
+        Collections.sort(entries, order);
+        result = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            result.add(e.tuple);
+        }
+        it = result.iterator();
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        result = null;
+        it = null;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (result == null) {
+            throw new DbException("[ERROR] Unable to rewind: Not open!");
+        }
+        it = result.iterator();
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        return it != null && it.hasNext();
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more tuples!");
+        }
+        return it.next();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length != 1) {
+            throw new DbException("Expected only one child!");
+        }
+        this.child = children[0];
+    }
+}
@@ -0,0 +1,36 @@
+package colgatedb.transactions;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * How the lock manager deals with deadlocks.
+ * <ul>
+ * <li>DETECT: transactions wait freely and a cycle in the {@link WaitsForGraph} is
+ * broken by aborting its youngest transaction.</li>
+ * <li>WAIT_DIE: a transaction may only wait for younger transactions; a transaction
+ * that would have to wait for an older one aborts ("dies") instead.</li>
+ * <li>WOUND_WAIT: a transaction may only wait for older transactions; a transaction
+ * that would have to wait for a younger one aborts it ("wounds" it) and waits for
+ * its locks to be released.</li>
+ * </ul>
+ * Under both prevention policies the age of a transaction is its
+ * {@link TransactionId#getId()} (smaller is older).  Every wait is then from an
+ * older to a younger transaction (WAIT_DIE) or from a younger to an older one
+ * (WOUND_WAIT), so no cycle can form and no global graph has to be searched.
+ */
+public enum DeadlockPolicy {
+    DETECT, WAIT_DIE, WOUND_WAIT
+}
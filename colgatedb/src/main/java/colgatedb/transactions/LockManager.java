@@ -1,6 +1,8 @@
 package colgatedb.transactions;
 
 import colgatedb.page.PageId;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.RecordId;
 
 import java.util.List;
 
@@ -34,6 +36,94 @@ public interface LockManager {
      */
     void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException;
 
+    /**
+     * Attempts to acquire a lock on a single record on behalf of a given transaction, waiting
+     * until it is acquired.  The table and page of the record are first locked in the matching
+     * intention mode (IS or IX).  No record lock is taken if tid holds a page or table lock that
+     * covers the record.
+     *
+     * @param tid txn requesting the lock
+     * @param rid id of the record on which the lock is desired
+     * @param perm determines whether the lock is shared (read only) or exclusive (read write)
+     * @throws TransactionAbortedException if deadlock is detected
+     */
+    void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * Like {@link #acquireRecordLock(TransactionId, RecordId, Permissions)}, but gives up
+     * instead of waiting if the record lock cannot be granted right away.  The intention
+     * locks on the table and page are still waited for.
+     *
+     * @return true if tid now holds the lock
+     * @throws TransactionAbortedException if deadlock is detected while waiting for an intention lock
+     */
+    boolean tryAcquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * @return true if tid holds a lock on rid, or on its page or table, with permissions at
+     *         least as strong as perm
+     */
+    boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm);
+
+    /**
+     * Release the lock held by transaction tid on a record and notify any waiting threads.
+     *
+     * @throws LockManagerException if tid does not hold a lock on this record
+     */
+    void releaseRecordLock(TransactionId tid, RecordId rid) throws LockManagerException;
+
+    /**
+     * Attempts to acquire a lock on the tuple with a given key, for tables whose tuples are
+     * identified by key, on behalf of a given transaction, waiting until it is acquired.  The
+     * table is first locked in the matching intention mode (IS or IX).  Key locks are kept in a
+     * lock table of their own and do not count towards lock escalation.  No key lock is taken
+     * if tid holds a table lock that covers the key.
+     *
+     * @param tid txn requesting the lock
+     * @param key id of the key on which the lock is desired
+     * @param perm determines whether the lock is shared (read only) or exclusive (read write)
+     * @throws TransactionAbortedException if deadlock is detected
+     */
+    void acquireKeyLock(TransactionId tid, KeyId key, Permissions perm) throws TransactionAbortedException;
+
+    /**
+     * @return true if tid holds a lock on key, or on its table, with permissions at least as
+     *         strong as perm
+     */
+    boolean holdsKeyLock(TransactionId tid, KeyId key, Permissions perm);
+
+    /**
+     * Release the lock held by transaction tid on a key and notify any waiting threads.
+     *
+     * @throws LockManagerException if tid does not hold a lock on this key
+     */
+    void releaseKeyLock(TransactionId tid, KeyId key) throws LockManagerException;
+
+    /**
+     * Attempts to acquire a lock on a table on behalf of a given transaction, waiting until it
+     * is acquired.  If tid already holds a lock on the table, the lock is strengthened to cover
+     * both the held mode and the requested one (e.g., S and IX give SIX).
+     *
+     * @param tid txn requesting the lock
+     * @param tableid id of the table on which the lock is desired
+     * @param mode the lock mode
+     * @throws TransactionAbortedException if deadlock is detected
+     * @see LockMode
+     */
+    void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException;
+
+    /**
+     * @return true if tid holds a lock on the table in a mode that covers mode
+     */
+    boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode);
+
+    /**
+     * Release the lock held by transaction tid on a table and notify any waiting threads.
+     *
+     * @throws LockManagerException if tid does not hold a lock on this table
+     */
+    void releaseTableLock(TransactionId tid, int tableid) throws LockManagerException;
+
     /**
      * Indicates whether a page with given pid is currently locked by given tid with permissions
      * AT LEAST AS STRONG as the ones specified.
@@ -43,8 +133,8 @@ public interface LockManager {
      * @param tid transaction id
      * @param pid page id
      * @param perm permissions
-     * @return true if tid holds a lock on pid with permissions at least as strong as perm,
-     *         false otherwise
+     * @return true if tid holds a lock on pid (or on the table of pid) with permissions at
+     *         least as strong as perm, false otherwise
      */
     boolean holdsLock(TransactionId tid, PageId pid, Permissions perm);
 
@@ -64,6 +154,24 @@ public interface LockManager {
      */
     List<PageId> getPagesForTid(TransactionId tid);
 
+    /**
+     * @param tid transaction id
+     * @return a list of the records on which this transaction currently has record locks
+     */
+    List<RecordId> getRecordsForTid(TransactionId tid);
+
+    /**
+     * @param tid transaction id
+     * @return a list of the keys on which this transaction currently has key locks
+     */
+    List<KeyId> getKeysForTid(TransactionId tid);
+
+    /**
+     * @param tid transaction id
+     * @return a list of the ids of the tables on which this transaction currently has locks
+     */
+    List<Integer> getTablesForTid(TransactionId tid);
+
     /**
      * @param pid page id
      * @return a list of the transaction ids of the transactions holding the lock on given pid
@@ -1,9 +1,16 @@
 package colgatedb.transactions;
 
 import colgatedb.page.PageId;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.RecordId;
 
-import java.util.*;
-import java.util.concurrent.locks.Lock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ColgateDB
@@ -19,99 +26,631 @@ import java.util.concurrent.locks.Lock;
  * course at Colgate.  If this file contains remnants from SimpleDB, we are
  * grateful for Sam's permission to use and adapt his materials.
  */
+
+/**
+ * Locks are kept in two lock tables: a concurrent hash map from PageId to the
+ * {@link LockTableEntry} of the page, and one from tableid to the entry of the
+ * table, so finding the entry of a page or table does not depend on how many are
+ * locked.  Each entry is guarded by its own monitor; threads locking different
+ * pages never contend.  An entry is removed from its table as soon as it has no
+ * holders and no outstanding requests, so the tables only hold pages and tables
+ * that are in use.  Entries are created and removed inside {@code compute} calls on
+ * the maps, which serializes them with any thread about to enqueue a request on the
+ * same page or table.
+ * <p>
+ * Locking is multi-granular (see {@link LockMode}).  Before a page is locked, its
+ * table is locked in the matching intention mode (IS for READ_ONLY, IX for
+ * READ_WRITE), unless the transaction already holds a table lock that covers the
+ * page, in which case no page lock is taken at all.  A scan can thus lock a whole
+ * table with one S lock.  Table locks, including intention locks, are held until
+ * they are released with {@link #releaseTableLock(TransactionId, int)}, normally
+ * when the transaction completes.
+ * <p>
+ * Records can be locked too, in a third lock table keyed by RecordId.  A record
+ * lock is taken under intention locks on both its table and its page, so that
+ * transactions writing different records of a page can proceed in parallel while
+ * a page or table lock in S or X mode still excludes them.  Tables whose tuples
+ * are identified by key rather than by position lock keys instead, in a fourth
+ * lock table keyed by {@link KeyId}, under an intention lock on the table only.
+ * <p>
+ * The pages and tables locked by each transaction are also kept in maps so that
+ * {@link #getPagesForTid(TransactionId)} does not scan the lock tables.  When a
+ * transaction holds locks on more than a threshold of pages of one table, the lock
+ * manager tries to escalate them to a single lock on the table, which saves memory
+ * in the lock table and makes the transaction's later requests on the table free.
+ * <p>
+ * A transaction whose request cannot be granted waits on the monitor of the entry.
+ * Requests are only granted when the entry changes, i.e., when a request is added,
+ * withdrawn, or a lock is released, and the waiters are notified only when that
+ * grants something, so a waiting thread does not spin.
+ * <p>
+ * Deadlocks are handled according to a {@link DeadlockPolicy}.  Under DETECT (the
+ * default) a deadlock is detected with a {@link WaitsForGraph} as soon as the
+ * transaction that closes a cycle blocks, and the youngest transaction in the cycle
+ * aborts.  Under WAIT_DIE and WOUND_WAIT the decision to wait, die or wound is made
+ * from the ids of the transactions the request waits for.  A wounded transaction
+ * aborts when it is woken or when it next requests a lock; if it finishes first,
+ * the wound is forgotten when it releases its last lock.
+ * <p>
+ * The waits-for state is kept per transaction, which assumes that a transaction
+ * waits for at most one lock at a time.  Several threads may work for the same
+ * transaction (e.g., the producers of an {@link colgatedb.operators.Exchange}), so
+ * the requests of one transaction that may wait are serialized: while one of its
+ * threads waits for a lock, its other threads wait for their turn to request one.
+ */
 public class LockManagerImpl implements LockManager {
 
-    private ArrayList<LockTableEntry> lockTableEntries;
+    public static final int DEFAULT_ESCALATION_THRESHOLD = 1000;
+
+    private final ConcurrentHashMap<PageId, LockTableEntry> pageLocks;
+    private final ConcurrentHashMap<Integer, LockTableEntry> tableLocks;
+    private final ConcurrentHashMap<RecordId, LockTableEntry> recordLocks;
+    private final ConcurrentHashMap<KeyId, LockTableEntry> keyLocks;
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<Integer, Set<PageId>>> pagesByTid;
+    private final ConcurrentHashMap<TransactionId, Set<Integer>> tablesByTid;
+    private final ConcurrentHashMap<TransactionId, Set<RecordId>> recordsByTid;
+    private final ConcurrentHashMap<TransactionId, Set<KeyId>> keysByTid;
+    private final ConcurrentHashMap<TransactionId, LockTableEntry> blockedOn;
+    private final ConcurrentHashMap<TransactionId, Object> requesting;   // serializes the waits of each tid
+    private final Set<TransactionId> wounded;
+    private final WaitsForGraph waitsFor;
+    private final DeadlockPolicy policy;
+    private final int escalationThreshold;
+    private final AtomicLong numEscalations = new AtomicLong();
+    private final AtomicLong numFailedEscalations = new AtomicLong();
 
     public LockManagerImpl() {
-        lockTableEntries = new ArrayList<>();
+        this(DeadlockPolicy.DETECT, DEFAULT_ESCALATION_THRESHOLD);
+    }
+
+    public LockManagerImpl(DeadlockPolicy policy) {
+        this(policy, DEFAULT_ESCALATION_THRESHOLD);
+    }
+
+    /**
+     * @param policy              how deadlocks are dealt with
+     * @param escalationThreshold the number of page locks a transaction may hold on one
+     *                            table before the lock manager tries to escalate them to
+     *                            a table lock
+     */
+    public LockManagerImpl(DeadlockPolicy policy, int escalationThreshold) {
+        if (escalationThreshold < 1) {
+            throw new IllegalArgumentException("escalation threshold must be positive");
+        }
+        this.policy = policy;
+        this.escalationThreshold = escalationThreshold;
+        pageLocks = new ConcurrentHashMap<>();
+        tableLocks = new ConcurrentHashMap<>();
+        recordLocks = new ConcurrentHashMap<>();
+        keyLocks = new ConcurrentHashMap<>();
+        pagesByTid = new ConcurrentHashMap<>();
+        tablesByTid = new ConcurrentHashMap<>();
+        recordsByTid = new ConcurrentHashMap<>();
+        keysByTid = new ConcurrentHashMap<>();
+        blockedOn = new ConcurrentHashMap<>();
+        requesting = new ConcurrentHashMap<>();
+        wounded = ConcurrentHashMap.newKeySet();
+        waitsFor = new WaitsForGraph();
+    }
+
+    public DeadlockPolicy getDeadlockPolicy() {
+        return policy;
+    }
+
+    public int getEscalationThreshold() {
+        return escalationThreshold;
+    }
+
+    /**
+     * @return the number of times the page locks of a transaction on a table were
+     * replaced by a table lock
+     */
+    public long getNumEscalations() {
+        return numEscalations.get();
+    }
+
+    /**
+     * @return the number of escalations that were abandoned because another
+     * transaction held a conflicting lock on the table
+     */
+    public long getNumFailedEscalations() {
+        return numFailedEscalations.get();
     }
 
     @Override
     public void acquireLock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
-        System.out.println("LMI: added holdsLock check to acquireLock method - please remove me if not applicable!");
         if (holdsLock(tid, pid, perm)) {
             return;
         }
-        LockTableEntry e = getEntry(pid);
-        synchronized (this) {
-            e.addEntry(tid, perm);
+        LockMode mode = LockMode.of(perm);
+        acquireTableLock(tid, pid.getTableId(), mode.intention());
+        lock(pageLocks, pid, tid, mode);
+        if (addPage(tid, pid) > escalationThreshold) {
+            escalate(tid, pid.getTableId());
+        }
+    }
+
+    @Override
+    public void acquireRecordLock(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException {
+        if (holdsRecordLock(tid, rid, perm) || lockIntentions(tid, rid, perm)) {
+            return;
+        }
+        lock(recordLocks, rid, tid, LockMode.of(perm));
+        recordsByTid.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(rid);
+    }
+
+    @Override
+    public boolean tryAcquireRecordLock(TransactionId tid, RecordId rid, Permissions perm)
+            throws TransactionAbortedException {
+        if (holdsRecordLock(tid, rid, perm) || lockIntentions(tid, rid, perm)) {
+            return true;
+        }
+        if (!tryLock(recordLocks, rid, tid, LockMode.of(perm))) {
+            return false;
+        }
+        recordsByTid.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(rid);
+        return true;
+    }
+
+    @Override
+    public void acquireKeyLock(TransactionId tid, KeyId key, Permissions perm) throws TransactionAbortedException {
+        if (holdsKeyLock(tid, key, perm)) {
+            return;
+        }
+        LockMode mode = LockMode.of(perm);
+        acquireTableLock(tid, key.getTableId(), mode.intention());
+        lock(keyLocks, key, tid, mode);
+        keysByTid.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    /**
+     * Locks the table and page of a record in the intention mode matching perm.
+     *
+     * @return true if this escalated the page locks of tid to a table lock that
+     * covers the record, so that no record lock is needed
+     */
+    private boolean lockIntentions(TransactionId tid, RecordId rid, Permissions perm)
+            throws TransactionAbortedException {
+        LockMode intention = LockMode.of(perm).intention();
+        PageId pid = rid.getPageId();
+        acquireTableLock(tid, pid.getTableId(), intention);
+        if (!holds(pageLocks, pid, tid, intention)) {
+            lock(pageLocks, pid, tid, intention);
+            if (addPage(tid, pid) > escalationThreshold) {
+                escalate(tid, pid.getTableId());
+                return holdsRecordLock(tid, rid, perm);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void acquireTableLock(TransactionId tid, int tableid, LockMode mode) throws TransactionAbortedException {
+        if (holdsTableLock(tid, tableid, mode)) {
+            return;
+        }
+        lock(tableLocks, tableid, tid, mode);
+        tablesByTid.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(tableid);
+    }
+
+    /**
+     * Tries to replace the page locks of tid on a table by a single table lock: S if
+     * tid only reads the table, X if it also writes it.  Waiting for the table lock
+     * could create a deadlock that would not otherwise exist, so if it cannot be
+     * granted right away the escalation is abandoned (and retried when tid locks its
+     * next page on the table).
+     */
+    private void escalate(TransactionId tid, int tableid) {
+        LockMode mode = holdsTableLock(tid, tableid, LockMode.IX) ? LockMode.X : LockMode.S;
+        if (!tryLock(tableLocks, tableid, tid, mode)) {
+            numFailedEscalations.incrementAndGet();
+            return;
+        }
+        numEscalations.incrementAndGet();
+        Set<PageId> pids = removePages(tid, tableid);
+        for (PageId pid : pids) {
+            unlock(pageLocks, pid, tid);
+        }
+    }
+
+    /**
+     * Requests the lock on a page or table and waits until it is granted.  Only one
+     * thread of tid may do so at a time.
+     */
+    private <K> void lock(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid, LockMode mode)
+            throws TransactionAbortedException {
+        synchronized (requesting.computeIfAbsent(tid, k -> new Object())) {
+            lockAlone(locks, key, tid, mode);
+        }
+    }
+
+    private <K> void lockAlone(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid, LockMode mode)
+            throws TransactionAbortedException {
+        if (wounded.remove(tid)) {
+            throw new TransactionAbortedException();
+        }
+        LockTableEntry e = enqueue(locks, key, tid, mode);
+        blockedOn.put(tid, e);
+        boolean granted = await(e, tid, mode);
+        blockedOn.remove(tid);
+        waitsFor.unblock(tid);
+        if (!granted) {
+            wounded.remove(tid);
+            synchronized (e) {
+                e.cancelRequest(tid);
+                changed(e);
+            }
+            removeIfIdle(locks, key);
+            throw new TransactionAbortedException();
+        }
+    }
+
+    /**
+     * Requests the lock on a page or table, but withdraws the request if it cannot be
+     * granted immediately.
+     *
+     * @return true if the lock was granted
+     */
+    private <K> boolean tryLock(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid, LockMode mode) {
+        LockTableEntry e = enqueue(locks, key, tid, mode);
+        synchronized (e) {
+            changed(e);
+            if (e.holdsLock(tid, mode)) {
+                return true;
+            }
+            e.cancelRequest(tid);
+            changed(e);
         }
+        removeIfIdle(locks, key);
+        return false;
+    }
 
-//        busy wait for lock
+    /**
+     * Waits on the monitor of e until the request of tid is granted.  Each time tid
+     * finds that it still has to wait, the deadlock policy is applied to the
+     * transactions it waits for.  Other transactions that must abort as a result
+     * are woken after releasing the monitor of e, so that this thread never holds
+     * two entries at once.
+     *
+     * @return true if the lock was granted, false if tid should abort
+     */
+    private boolean await(LockTableEntry e, TransactionId tid, LockMode mode) {
         while (true) {
-            boolean exceededTicks;
-            boolean holds;
-            synchronized (this) {
-                exceededTicks = e.processLock(tid);
-                holds = holdsLock(tid, pid, perm);
-//                deadlock detected!
-                if (exceededTicks) {
-                    e.cleanUpDeadlock(tid, perm);
-                    throw new TransactionAbortedException();
+            List<TransactionId> victims;
+            synchronized (e) {
+                changed(e);
+                if (e.holdsLock(tid, mode)) {
+                    return true;
                 }
-//            successfully acquired lock!
-                else if (holds) {
-                    break;
+                if (waitsFor.isVictim(tid) || wounded.contains(tid)) {
+                    return false;
+                }
+                victims = victimsOf(tid, e.blockers(tid));
+                if (victims.contains(tid)) {
+                    return false;
+                }
+                if (victims.isEmpty()) {
+                    try {
+                        e.wait();
+                    } catch (InterruptedException x) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    continue;
+                }
+            }
+            for (TransactionId victim : victims) {
+                LockTableEntry victimEntry = blockedOn.get(victim);
+                if (victimEntry != null) {
+                    synchronized (victimEntry) {
+                        victimEntry.notifyAll();
+                    }
                 }
             }
+        }
+    }
 
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException x) {}
+    /**
+     * Applies the deadlock policy to a transaction that has to wait for the given
+     * transactions.
+     *
+     * @return the transactions that must abort so that tid may wait, possibly
+     * including tid itself
+     */
+    private List<TransactionId> victimsOf(TransactionId tid, List<TransactionId> blockers) {
+        List<TransactionId> victims = new ArrayList<>();
+        switch (policy) {
+            case DETECT:
+                TransactionId victim = waitsFor.block(tid, blockers);
+                if (victim != null) {
+                    victims.add(victim);
+                }
+                break;
+            case WAIT_DIE:
+                for (TransactionId b : blockers) {
+                    if (b.getId() < tid.getId()) {
+                        victims.add(tid);   // tid would wait for an older transaction: die
+                        break;
+                    }
+                }
+                break;
+            case WOUND_WAIT:
+                for (TransactionId b : blockers) {
+                    if (b.getId() > tid.getId() && wounded.add(b)) {
+                        victims.add(b);     // tid would wait for a younger transaction: wound it
+                    }
+                }
+                break;
         }
+        return victims;
     }
 
     @Override
     public boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
-        for (LockTableEntry e : lockTableEntries) {
-            if (e.holdsLock(tid,pid, perm)) {
-                return true;
-            }
+        LockMode mode = LockMode.of(perm);
+        return holds(tableLocks, pid.getTableId(), tid, mode) || holds(pageLocks, pid, tid, mode);
+    }
+
+    @Override
+    public boolean holdsRecordLock(TransactionId tid, RecordId rid, Permissions perm) {
+        return holdsLock(tid, rid.getPageId(), perm) || holds(recordLocks, rid, tid, LockMode.of(perm));
+    }
+
+    @Override
+    public boolean holdsKeyLock(TransactionId tid, KeyId key, Permissions perm) {
+        LockMode mode = LockMode.of(perm);
+        return holds(tableLocks, key.getTableId(), tid, mode) || holds(keyLocks, key, tid, mode);
+    }
+
+    @Override
+    public boolean holdsTableLock(TransactionId tid, int tableid, LockMode mode) {
+        return holds(tableLocks, tableid, tid, mode);
+    }
+
+    private <K> boolean holds(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid, LockMode mode) {
+        LockTableEntry e = locks.get(key);
+        if (e == null) {
+            return false;
+        }
+        synchronized (e) {
+            return e.holdsLock(tid, mode);
         }
-        return false;
     }
 
+    /**
+     * Releases the lock held by tid on pid.  If the page lock was released when the
+     * page locks of tid were escalated, this does nothing: tid still holds the page
+     * through its table lock until it releases that.
+     */
     @Override
     public void releaseLock(TransactionId tid, PageId pid) {
-        for (LockTableEntry e : lockTableEntries) {
-            if (e.equalsPid(pid) && e.getTids().contains(tid)) {
-                e.releaseLock(tid);
-                return;
+        if (unlock(pageLocks, pid, tid)) {
+            removePage(tid, pid);
+        } else if (!holdsTableLock(tid, pid.getTableId(), LockMode.S)) {
+            throw new LockManagerException("[ERROR] Failed to release lock. Transaction ID " + tid.toString() + " not found.");
+        }
+        forgetWound(tid);
+    }
+
+    /**
+     * Releases the lock held by tid on a record.  As with pages, this does nothing if
+     * the record is only locked through a page or table lock.
+     */
+    @Override
+    public void releaseRecordLock(TransactionId tid, RecordId rid) {
+        if (unlock(recordLocks, rid, tid)) {
+            recordsByTid.computeIfPresent(tid, (k, rids) -> {
+                rids.remove(rid);
+                return rids.isEmpty() ? null : rids;
+            });
+        } else if (!holdsLock(tid, rid.getPageId(), Permissions.READ_ONLY)) {
+            throw new LockManagerException("[ERROR] Failed to release record lock. Transaction ID " + tid.toString() + " not found.");
+        }
+        forgetWound(tid);
+    }
+
+    /**
+     * Releases the lock held by tid on a key.  This does nothing if the key is only
+     * locked through a table lock.
+     */
+    @Override
+    public void releaseKeyLock(TransactionId tid, KeyId key) {
+        if (unlock(keyLocks, key, tid)) {
+            keysByTid.computeIfPresent(tid, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        } else if (!holdsTableLock(tid, key.getTableId(), LockMode.S)) {
+            throw new LockManagerException("[ERROR] Failed to release key lock. Transaction ID " + tid.toString() + " not found.");
+        }
+        forgetWound(tid);
+    }
+
+    @Override
+    public void releaseTableLock(TransactionId tid, int tableid) {
+        if (!unlock(tableLocks, tableid, tid)) {
+            throw new LockManagerException("[ERROR] Failed to release table lock. Transaction ID " + tid.toString() + " not found.");
+        }
+        tablesByTid.computeIfPresent(tid, (k, tableids) -> {
+            tableids.remove(tableid);
+            return tableids.isEmpty() ? null : tableids;
+        });
+        forgetWound(tid);
+    }
+
+    /**
+     * @return true if tid held the lock and it was released
+     */
+    private <K> boolean unlock(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid) {
+        LockTableEntry e = locks.get(key);
+        if (e == null) {
+            return false;
+        }
+        synchronized (e) {
+            if (!e.releaseLock(tid)) {
+                return false;
             }
+            changed(e);
         }
-        throw new LockManagerException("[ERROR] Failed to release lock. Transaction ID " + tid.toString() + " not found.");
+        removeIfIdle(locks, key);
+        return true;
+    }
+
+    /**
+     * A wound only matters while tid holds locks; see {@link DeadlockPolicy#WOUND_WAIT}.
+     * The same goes for the monitor that serializes its requests.
+     */
+    private void forgetWound(TransactionId tid) {
+        if (!pagesByTid.containsKey(tid) && !tablesByTid.containsKey(tid) && !recordsByTid.containsKey(tid)
+                && !keysByTid.containsKey(tid)) {
+            wounded.remove(tid);
+            requesting.remove(tid);
+        }
+    }
+
+    /**
+     * Records that tid holds a lock on pid.
+     * @return the number of pages of the same table that tid holds locks on
+     */
+    private int addPage(TransactionId tid, PageId pid) {
+        int[] count = new int[1];
+        pagesByTid.compute(tid, (k, tables) -> {
+            if (tables == null) {
+                tables = new ConcurrentHashMap<>();
+            }
+            Set<PageId> pids = tables.computeIfAbsent(pid.getTableId(), t -> ConcurrentHashMap.newKeySet());
+            pids.add(pid);
+            count[0] = pids.size();
+            return tables;
+        });
+        return count[0];
+    }
+
+    private void removePage(TransactionId tid, PageId pid) {
+        pagesByTid.computeIfPresent(tid, (k, tables) -> {
+            Set<PageId> pids = tables.get(pid.getTableId());
+            if (pids != null) {
+                pids.remove(pid);
+                if (pids.isEmpty()) {
+                    tables.remove(pid.getTableId());
+                }
+            }
+            return tables.isEmpty() ? null : tables;
+        });
+    }
+
+    /**
+     * Forgets all of the page locks of tid on a table.
+     * @return the pages
+     */
+    private Set<PageId> removePages(TransactionId tid, int tableid) {
+        List<Set<PageId>> removed = new ArrayList<>();
+        pagesByTid.computeIfPresent(tid, (k, tables) -> {
+            Set<PageId> pids = tables.remove(tableid);
+            if (pids != null) {
+                removed.add(pids);
+            }
+            return tables.isEmpty() ? null : tables;
+        });
+        return removed.isEmpty() ? Collections.<PageId>emptySet() : removed.get(0);
     }
 
     @Override
-    public synchronized List<PageId> getPagesForTid(TransactionId tid) {
-        ArrayList<PageId> pids = new ArrayList<>();
-        for (LockTableEntry e : lockTableEntries) {
-            if (e.getTids().contains(tid)) {
-                pids.add(e.getPid());
+    public List<PageId> getPagesForTid(TransactionId tid) {
+        List<PageId> pids = new ArrayList<>();
+        Map<Integer, Set<PageId>> tables = pagesByTid.get(tid);
+        if (tables != null) {
+            for (Set<PageId> tablePids : tables.values()) {
+                pids.addAll(tablePids);
             }
         }
         return pids;
     }
 
     @Override
-    public synchronized List<TransactionId> getTidsForPage(PageId pid) {
-        for (LockTableEntry e : lockTableEntries) {
-            if (e.equalsPid(pid)) {
-                return e.getTids();
-            }
+    public List<RecordId> getRecordsForTid(TransactionId tid) {
+        Set<RecordId> rids = recordsByTid.get(tid);
+        return rids == null ? new ArrayList<RecordId>() : new ArrayList<>(rids);
+    }
+
+    @Override
+    public List<KeyId> getKeysForTid(TransactionId tid) {
+        Set<KeyId> keys = keysByTid.get(tid);
+        return keys == null ? new ArrayList<KeyId>() : new ArrayList<>(keys);
+    }
+
+    @Override
+    public List<Integer> getTablesForTid(TransactionId tid) {
+        Set<Integer> tableids = tablesByTid.get(tid);
+        return tableids == null ? new ArrayList<Integer>() : new ArrayList<>(tableids);
+    }
+
+    @Override
+    public List<TransactionId> getTidsForPage(PageId pid) {
+        LockTableEntry e = pageLocks.get(pid);
+        if (e == null) {
+            return new ArrayList<>();
         }
-        throw new NullPointerException();
+        synchronized (e) {
+            return e.getTids();
+        }
+    }
+
+    /**
+     * @return the number of pages in the page lock table, i.e., pages that are locked or requested
+     */
+    int numEntries() {
+        return pageLocks.size();
     }
 
-    private synchronized LockTableEntry getEntry(PageId pid) {
-        for (LockTableEntry e : lockTableEntries) {
-            if (e.equalsPid(pid)) {
-                return e;
+    /**
+     * Adds a request to the entry of a page or table, creating the entry if there is none.
+     * @return the entry
+     */
+    private <K> LockTableEntry enqueue(ConcurrentHashMap<K, LockTableEntry> locks, K key, TransactionId tid,
+                                       LockMode mode) {
+        return locks.compute(key, (k, e) -> {
+            if (e == null) {
+                e = new LockTableEntry();
+            }
+            synchronized (e) {
+                e.addEntry(tid, mode);
+            }
+            return e;
+        });
+    }
+
+    /**
+     * Called, while holding the monitor of e, after a request was added to or
+     * withdrawn from e or a lock on e was released.  Grants whatever can now be
+     * granted, waking the waiters if anything was, and (under DETECT) updates
+     * the waits-for graph: the granted transactions no longer wait, and those still waiting on
+     * e may be waiting for different transactions.
+     */
+    private void changed(LockTableEntry e) {
+        List<TransactionId> granted = e.grant();
+        if (!granted.isEmpty()) {
+            e.notifyAll();
+        }
+        if (policy == DeadlockPolicy.DETECT) {
+            for (TransactionId t : granted) {
+                waitsFor.unblock(t);
+            }
+            for (TransactionId waiter : e.getWaiters()) {
+                waitsFor.update(waiter, e.blockers(waiter));
             }
         }
-        LockTableEntry p = new LockTableEntry(pid);
-        lockTableEntries.add(p);
-        return p;
+    }
+
+    /**
+     * Removes the entry of a page or table from its lock table if no transaction
+     * holds or is waiting for the lock.
+     */
+    private <K> void removeIfIdle(ConcurrentHashMap<K, LockTableEntry> locks, K key) {
+        locks.computeIfPresent(key, (k, e) -> {
+            synchronized (e) {
+                return e.isIdle() ? null : e;
+            }
+        });
     }
 }
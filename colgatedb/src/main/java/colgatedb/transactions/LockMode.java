@@ -0,0 +1,91 @@
+package colgatedb.transactions;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The modes of the locks on tables (and, through {@link Permissions}, on pages) for
+ * multi-granularity locking.  A transaction locks a page in S (READ_ONLY) or X
+ * (READ_WRITE) mode only after locking its table in the matching intention mode
+ * (IS or IX); a table lock in S, SIX or X mode instead covers the pages that it
+ * implicitly locks.
+ * <ul>
+ * <li>IS: intention to lock pages of the table in S mode.</li>
+ * <li>IX: intention to lock pages of the table in X mode.</li>
+ * <li>S: shared lock on the whole table.</li>
+ * <li>SIX: S on the whole table plus IX, e.g., to scan the table and update a few
+ * pages.</li>
+ * <li>X: exclusive lock on the whole table.</li>
+ * </ul>
+ */
+public enum LockMode {
+    IS, IX, S, SIX, X;
+
+    // COMPATIBLE[a][b] is true if a lock in mode a may be granted while another
+    // transaction holds a lock in mode b
+    private static final boolean[][] COMPATIBLE = {
+            //           IS     IX     S      SIX    X
+            /* IS  */ {true,  true,  true,  true,  false},
+            /* IX  */ {true,  true,  false, false, false},
+            /* S   */ {true,  false, true,  false, false},
+            /* SIX */ {true,  false, false, false, false},
+            /* X   */ {false, false, false, false, false}
+    };
+
+    // COVERS[a][b] is true if holding a lock in mode a grants everything mode b does
+    private static final boolean[][] COVERS = {
+            //           IS     IX     S      SIX    X
+            /* IS  */ {true,  false, false, false, false},
+            /* IX  */ {true,  true,  false, false, false},
+            /* S   */ {true,  false, true,  false, false},
+            /* SIX */ {true,  true,  true,  true,  false},
+            /* X   */ {true,  true,  true,  true,  true}
+    };
+
+    public boolean isCompatibleWith(LockMode other) {
+        return COMPATIBLE[ordinal()][other.ordinal()];
+    }
+
+    public boolean covers(LockMode other) {
+        return COVERS[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * @return the weakest mode that covers both this mode and other, e.g., SIX for S and IX
+     */
+    public LockMode combine(LockMode other) {
+        if (covers(other)) {
+            return this;
+        }
+        if (other.covers(this)) {
+            return other;
+        }
+        return SIX;   // the only modes that do not cover one another are S and IX
+    }
+
+    /**
+     * @return the intention mode to hold on a table before locking one of its pages in this mode
+     */
+    public LockMode intention() {
+        return this == IS || this == S ? IS : IX;
+    }
+
+    /**
+     * @return the mode of a page lock with the given permissions
+     */
+    public static LockMode of(Permissions perm) {
+        return perm.permLevel == 0 ? S : X;
+    }
+}
@@ -1,12 +1,6 @@
 package colgatedb.transactions;
 
-import colgatedb.page.PageId;
-
-import javax.sound.midi.SysexMessage;
-import java.lang.reflect.Array;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.Lock;
 
 /**
  * ColgateDB
@@ -24,112 +18,163 @@ import java.util.concurrent.locks.Lock;
  */
 
 /**
- * Represents the state associated with the lock on a particular page.
+ * Represents the state associated with the lock on a particular page or table.  An
+ * entry is not thread-safe; callers synchronize on it, and threads waiting for the
+ * lock wait on its monitor.
+ * <p>
+ * Each holder holds the lock in some {@link LockMode}; a request is compatible if
+ * its mode is compatible with the modes of all other holders.  Requests are
+ * granted in FIFO order, except that a request by a holder to strengthen its lock
+ * (e.g., S to X) goes to the front of the queue.  When the request at the front is
+ * granted, any compatible requests right behind it are granted with it.
  */
 public class LockTableEntry {
 
-    private Permissions lockType;             // null if no one currently has a lock
-    private Set<TransactionId> lockHolders;   // a set of txns currently holding a lock on this page
-    private ArrayList<LockRequest> requests;       // a queue of outstanding requests
-    private PageId pid;
-    private int tickCount;
+    private final Map<TransactionId, LockMode> lockHolders;   // txns currently holding the lock, and their modes
+    private final LinkedList<LockRequest> requests;          // a queue of outstanding requests
 
     public LockTableEntry() {
-        lockType = null;
-        lockHolders = new HashSet<>();
-        requests = new ArrayList<>();
-        pid = null;
-        tickCount = 0;
-    }
-
-    public LockTableEntry(PageId pid) {
-        this();
-        this.pid = pid;
+        lockHolders = new HashMap<>();
+        requests = new LinkedList<>();
     }
 
-    public void addEntry(TransactionId tid, Permissions perm) {
-        if (holdsLock(tid, this.pid, perm)) {
+    /**
+     * Queues a request, unless tid already holds the lock in a mode that covers mode.
+     * A holder's request is for the combination of its current mode and mode.
+     */
+    public void addEntry(TransactionId tid, LockMode mode) {
+        if (holdsLock(tid, mode) || hasRequest(tid)) {
             return;
         }
-        if (lockHolders.contains(tid) && perm.permLevel == 1) {
-            requests.add(0, new LockRequest(tid, perm));
+        LockMode held = lockHolders.get(tid);
+        if (held != null) {
+            requests.addFirst(new LockRequest(tid, held.combine(mode)));
         } else {
-            requests.add(new LockRequest(tid, perm));
+            requests.addLast(new LockRequest(tid, mode));
         }
     }
 
-    public boolean processLock(TransactionId tid) {
-        LockRequest r = requests.get(0);
-        if (tid.equals(r.tid)) {
-//            allow first thread to grab lock
-            if (lockType == null || lockHolders.isEmpty() || (lockType.permLevel == r.perm.permLevel && lockType.permLevel == 0)) {
-                lockType = r.perm;
-                lockHolders.add(requests.remove(0).tid);
-                tickCount = 0;
-            }
-//                upgrade currently held lock
-            else if (lockHolders.size() == 1 && lockHolders.contains(r.tid) && (lockType.permLevel > 0 || r.perm.permLevel > 0)) {
-                lockType = Permissions.READ_WRITE;
-                lockHolders.add(requests.remove(0).tid);
-                tickCount = 0;
+    /**
+     * Grants the requests at the front of the queue that are compatible with the
+     * current holders.  Callers should notify the waiters on this entry if any
+     * request was granted.
+     *
+     * @return the transactions whose requests were granted, possibly none
+     */
+    public List<TransactionId> grant() {
+        List<TransactionId> granted = new ArrayList<>();
+        while (!requests.isEmpty() && isCompatible(requests.getFirst())) {
+            LockRequest r = requests.removeFirst();
+            lockHolders.put(r.tid, r.mode);
+            granted.add(r.tid);
+        }
+        return granted;
+    }
+
+    private boolean isCompatible(LockRequest r) {
+        for (Map.Entry<TransactionId, LockMode> holder : lockHolders.entrySet()) {
+            if (!holder.getKey().equals(r.tid) && !r.mode.isCompatibleWith(holder.getValue())) {
+                return false;
             }
-            tickCount++;
         }
-        return tickCount > ThreadLocalRandom.current().nextInt(1000,1500);
+        return true;
     }
 
-    public boolean holdsLock(TransactionId tid, PageId pid, Permissions perm) {
-        return lockType != null && lockHolders.contains(tid) && this.pid.equals(pid) && perm.permLevel <= lockType.permLevel;
+    /**
+     * @return true if tid holds the lock in a mode that covers mode
+     */
+    public boolean holdsLock(TransactionId tid, LockMode mode) {
+        LockMode held = lockHolders.get(tid);
+        return held != null && held.covers(mode);
     }
 
-    public void cleanUpDeadlock(TransactionId tid, Permissions perm) {
-        if (requests.size() > 0 && requests.get(0).tid.equals(tid) && requests.get(0).perm.permLevel == perm.permLevel) {
-            requests.remove(0);
-        }
+    /**
+     * @return the mode in which tid holds the lock, or null if it does not hold it
+     */
+    public LockMode getMode(TransactionId tid) {
+        return lockHolders.get(tid);
     }
 
-    public boolean releaseLock(TransactionId tid) {
-        if (!lockHolders.contains(tid)) return false;
+    /**
+     * @return true if tid has a request in the queue
+     */
+    public boolean hasRequest(TransactionId tid) {
+        for (LockRequest r : requests) {
+            if (r.tid.equals(tid)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        lockHolders.remove(tid);
-        if (lockHolders.isEmpty()) {
-            lockType = null;
+    /**
+     * @return the transactions that the request of tid is waiting for: the other
+     * holders of the lock and the transactions whose requests are ahead of it
+     */
+    public List<TransactionId> blockers(TransactionId tid) {
+        List<TransactionId> blockers = new ArrayList<>();
+        for (TransactionId holder : lockHolders.keySet()) {
+            if (!holder.equals(tid)) {
+                blockers.add(holder);
+            }
         }
-        return true;
+        for (LockRequest r : requests) {
+            if (r.tid.equals(tid)) {
+                break;
+            }
+            blockers.add(r.tid);
+        }
+        return blockers;
     }
 
-    public boolean contains(PageId pid, TransactionId tid, Permissions perm) {
+    /**
+     * @return the transactions with outstanding requests, in queue order
+     */
+    public List<TransactionId> getWaiters() {
+        List<TransactionId> waiters = new ArrayList<>();
         for (LockRequest r : requests) {
-            if (r.tid.equals(tid) && lockType.equals(perm)) {
-                return this.pid.equals(pid);
+            waiters.add(r.tid);
+        }
+        return waiters;
+    }
+
+    /**
+     * Withdraws the outstanding request of tid, e.g., because tid is aborting.
+     */
+    public void cancelRequest(TransactionId tid) {
+        Iterator<LockRequest> it = requests.iterator();
+        while (it.hasNext()) {
+            if (it.next().tid.equals(tid)) {
+                it.remove();
             }
         }
-        return this.pid.equals(pid) && lockHolders.contains(tid);
     }
 
-    public boolean equalsPid(PageId pid) {
-        return this.pid.equals(pid);
+    public boolean releaseLock(TransactionId tid) {
+        return lockHolders.remove(tid) != null;
     }
 
-    public List<TransactionId> getTids() {
-        return new ArrayList<>(lockHolders);
+    /**
+     * @return true if no transaction holds or is waiting for the lock
+     */
+    public boolean isIdle() {
+        return lockHolders.isEmpty() && requests.isEmpty();
     }
 
-    public PageId getPid() {
-        return pid;
+    public List<TransactionId> getTids() {
+        return new ArrayList<>(lockHolders.keySet());
     }
 
     /**
-     * A class representing a single lock request.  Simply tracks the txn and the desired lock type.
-     * Feel free to use this, modify it, or not use it at all.
+     * A single lock request.  Simply tracks the txn and the desired lock mode.
      */
     private class LockRequest {
         public final TransactionId tid;
-        public final Permissions perm;
+        public final LockMode mode;
 
-        public LockRequest(TransactionId tid, Permissions perm) {
+        public LockRequest(TransactionId tid, LockMode mode) {
             this.tid = tid;
-            this.perm = perm;
+            this.mode = mode;
         }
 
         public boolean equals(Object o) {
@@ -137,11 +182,11 @@ public class LockTableEntry {
                 return false;
             }
             LockRequest otherLockRequest = (LockRequest) o;
-            return tid.equals(otherLockRequest.tid) && perm.equals(otherLockRequest.perm);
+            return tid.equals(otherLockRequest.tid) && mode == otherLockRequest.mode;
         }
 
         public String toString() {
-            return "Request[" + tid + "," + perm + "]";
+            return "Request[" + tid + "," + mode + "]";
         }
     }
 }
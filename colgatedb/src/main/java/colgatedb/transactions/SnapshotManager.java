@@ -0,0 +1,105 @@
+package colgatedb.transactions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Hands out the timestamps used for multi-version reads.  Every committing
+ * transaction gets the next commit timestamp; a read-only snapshot transaction
+ * remembers the timestamp of the last commit when it began and sees exactly the
+ * writes of transactions that committed up to then.
+ * <p>
+ * Files stamp the versions written by a transaction when it completes (see
+ * {@link colgatedb.dbfile.HeapFile#transactionComplete(TransactionId, boolean)}).
+ * Until they are done, the commit timestamp of the transaction is looked up here.
+ * Taking a snapshot and committing are serialized, so a snapshot sees all of the
+ * writes of a transaction or none of them.
+ */
+public class SnapshotManager {
+
+    private long clock;   // commit timestamp of the last committed transaction
+    private final Map<TransactionId, Long> snapshots = new ConcurrentHashMap<>();
+    private final Map<TransactionId, Long> committing = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a snapshot for a read-only transaction.
+     */
+    public synchronized void beginSnapshot(TransactionId tid) {
+        snapshots.put(tid, clock);
+    }
+
+    /**
+     * @return true if tid is a snapshot transaction that has not yet completed
+     */
+    public boolean isSnapshot(TransactionId tid) {
+        return snapshots.containsKey(tid);
+    }
+
+    /**
+     * @return the timestamp of the snapshot of tid
+     * @throws IllegalArgumentException if tid is not a snapshot transaction
+     */
+    public long getSnapshot(TransactionId tid) {
+        Long ts = snapshots.get(tid);
+        if (ts == null) {
+            throw new IllegalArgumentException(tid + " is not a snapshot transaction");
+        }
+        return ts;
+    }
+
+    public void endSnapshot(TransactionId tid) {
+        snapshots.remove(tid);
+    }
+
+    /**
+     * Commits tid: from now on, new snapshots see its writes.  Must be followed by
+     * {@link #endCommit(TransactionId)} once the files have stamped its versions.
+     *
+     * @return the commit timestamp of tid
+     */
+    public synchronized long commit(TransactionId tid) {
+        clock++;
+        committing.put(tid, clock);
+        return clock;
+    }
+
+    public void endCommit(TransactionId tid) {
+        committing.remove(tid);
+    }
+
+    /**
+     * @return the commit timestamp of a transaction that is committing, or null if
+     * the transaction has not committed (or its versions have already been stamped)
+     */
+    public Long getCommitTimestamp(TransactionId tid) {
+        return committing.get(tid);
+    }
+
+    /**
+     * Returns the timestamp of the oldest running snapshot, or of the last commit if
+     * there is none.  Versions committed at or before the horizon have been seen by
+     * every snapshot, so the versions they replaced may be garbage collected.
+     */
+    public synchronized long getHorizon() {
+        long horizon = clock;
+        for (long ts : snapshots.values()) {
+            horizon = Math.min(horizon, ts);
+        }
+        return horizon;
+    }
+}
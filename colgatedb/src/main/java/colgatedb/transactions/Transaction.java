@@ -22,10 +22,22 @@ import java.io.IOException;
  */
 public class Transaction {
     private final TransactionId tid;
+    private final boolean optimistic;
     volatile boolean started = false;
 
     public Transaction() {
+        this(false);
+    }
+
+    /**
+     * @param optimistic if true, the transaction runs under optimistic concurrency
+     *                   control: it reads without taking locks and is validated when it
+     *                   commits (see {@link ValidationManager}); otherwise it uses
+     *                   two-phase locking
+     */
+    public Transaction(boolean optimistic) {
         tid = new TransactionId();
+        this.optimistic = optimistic;
     }
 
     /** Start the transaction running */
@@ -36,14 +48,57 @@ public class Transaction {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (optimistic) {
+            Database.getValidationManager().begin(tid);
+        }
+    }
+
+    /**
+     * Start the transaction running as a read-only snapshot transaction: it reads
+     * the database as of the last commit before it started, without taking locks,
+     * so it neither waits for writers nor makes them wait.
+     */
+    public void startReadOnly() {
+        start();
+        Database.getSnapshotManager().beginSnapshot(tid);
     }
 
     public TransactionId getId() {
         return tid;
     }
 
-    /** Finish the transaction */
-    public void commit() throws IOException {
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Returns a new transaction, using the same concurrency control, with which to
+     * redo the work of this one after it aborted.  Retries of optimistic transactions
+     * are counted by the ValidationManager.
+     */
+    public Transaction retry() {
+        if (optimistic) {
+            Database.getValidationManager().recordRetry();
+        }
+        return new Transaction(optimistic);
+    }
+
+    /**
+     * Finish the transaction
+     * @throws TransactionAbortedException if the transaction is optimistic and failed
+     * validation, in which case it has been aborted
+     */
+    public void commit() throws IOException, TransactionAbortedException {
+        if (optimistic && started) {
+            try {
+                Database.getAccessManager().validateAndCommit(tid);
+            } catch (TransactionAbortedException e) {
+                Database.getLogFile().logAbort(tid);
+                throw e;
+            }
+            Database.getLogFile().logCommit(tid);
+            return;
+        }
         transactionComplete(true);
     }
 
@@ -0,0 +1,189 @@
+package colgatedb.transactions;
+
+import colgatedb.page.PageId;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Validates optimistic transactions.  An optimistic transaction reads a snapshot
+ * (see {@link SnapshotManager}) without taking any locks, and the pages it reads
+ * make up its read set.  The pages written by every transaction, optimistic or
+ * not, make up its write set.  When an optimistic transaction commits, it is
+ * validated backwards: if a transaction that committed after the optimistic one
+ * started wrote a page it read, what it read may be stale and it is aborted
+ * instead.  Otherwise it commits, serialized at its commit timestamp.
+ * <p>
+ * The write sets of committed transactions are kept only while some optimistic
+ * transaction that started before them is running.
+ */
+public class ValidationManager {
+
+    private final SnapshotManager sm;
+    private final Set<TransactionId> optimistic = ConcurrentHashMap.newKeySet();
+    private final Map<TransactionId, Set<PageId>> readSets = new ConcurrentHashMap<>();
+    private final Map<TransactionId, Set<PageId>> writeSets = new ConcurrentHashMap<>();
+    private final Deque<CommittedWrites> history = new ArrayDeque<>();   // in commit order
+    private final AtomicLong numValidations = new AtomicLong();
+    private final AtomicLong numFailedValidations = new AtomicLong();
+    private final AtomicLong numRetries = new AtomicLong();
+
+    public ValidationManager(SnapshotManager sm) {
+        this.sm = sm;
+    }
+
+    /**
+     * Starts an optimistic transaction.
+     */
+    public synchronized void begin(TransactionId tid) {
+        sm.beginSnapshot(tid);
+        optimistic.add(tid);
+        readSets.put(tid, ConcurrentHashMap.<PageId>newKeySet());
+    }
+
+    /**
+     * @return true if tid is an optimistic transaction that has not yet completed
+     */
+    public boolean isOptimistic(TransactionId tid) {
+        return optimistic.contains(tid);
+    }
+
+    /**
+     * Adds a page to the read set of tid; does nothing if tid is not optimistic.
+     */
+    public void recordRead(TransactionId tid, PageId pid) {
+        Set<PageId> reads = readSets.get(tid);
+        if (reads != null) {
+            reads.add(pid);
+        }
+    }
+
+    /**
+     * Adds a page to the write set of tid.
+     */
+    public void recordWrite(TransactionId tid, PageId pid) {
+        writeSets.computeIfAbsent(tid, k -> ConcurrentHashMap.<PageId>newKeySet()).add(pid);
+    }
+
+    /**
+     * Commits tid, after validating it if it is optimistic, and hands out its commit
+     * timestamp (see {@link SnapshotManager#commit(TransactionId)}).  A read-only
+     * snapshot transaction simply ends.
+     *
+     * @return false if tid failed validation, in which case it must be aborted
+     */
+    public synchronized boolean commit(TransactionId tid) {
+        if (optimistic.contains(tid)) {
+            numValidations.incrementAndGet();
+            if (!isValid(tid)) {
+                numFailedValidations.incrementAndGet();
+                end(tid);
+                return false;
+            }
+        } else if (sm.isSnapshot(tid)) {
+            end(tid);
+            return true;
+        }
+        long ts = sm.commit(tid);
+        Set<PageId> writes = writeSets.get(tid);
+        end(tid);
+        if (writes != null && !optimistic.isEmpty()) {
+            history.addLast(new CommittedWrites(ts, writes));
+        }
+        return true;
+    }
+
+    /**
+     * Forgets an aborted transaction.
+     */
+    public synchronized void abort(TransactionId tid) {
+        end(tid);
+    }
+
+    private boolean isValid(TransactionId tid) {
+        long start = sm.getSnapshot(tid);
+        Set<PageId> reads = readSets.get(tid);
+        for (CommittedWrites committed : history) {
+            if (committed.ts > start) {
+                for (PageId pid : committed.pages) {
+                    if (reads.contains(pid)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void end(TransactionId tid) {
+        optimistic.remove(tid);
+        readSets.remove(tid);
+        writeSets.remove(tid);
+        sm.endSnapshot(tid);
+        // drop the write sets no running optimistic transaction will be validated against
+        long oldest = Long.MAX_VALUE;
+        for (TransactionId other : optimistic) {
+            oldest = Math.min(oldest, sm.getSnapshot(other));
+        }
+        while (!history.isEmpty() && history.peekFirst().ts <= oldest) {
+            history.pollFirst();
+        }
+    }
+
+    /**
+     * Counts an optimistic transaction started to redo the work of one that aborted.
+     */
+    public void recordRetry() {
+        numRetries.incrementAndGet();
+    }
+
+    /**
+     * @return the number of optimistic transactions that have been validated
+     */
+    public long getNumValidations() {
+        return numValidations.get();
+    }
+
+    /**
+     * @return the number of optimistic transactions that failed validation and aborted
+     */
+    public long getNumFailedValidations() {
+        return numFailedValidations.get();
+    }
+
+    /**
+     * @return the number of optimistic transactions that were retries of aborted ones
+     */
+    public long getNumRetries() {
+        return numRetries.get();
+    }
+
+    private static class CommittedWrites {
+        final long ts;
+        final Set<PageId> pages;
+
+        CommittedWrites(long ts, Set<PageId> pages) {
+            this.ts = ts;
+            this.pages = pages;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package colgatedb.transactions;
+
+import java.util.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The waits-for graph of the lock manager: there is an edge from a blocked
+ * transaction to each transaction it is waiting for, i.e., the other holders of
+ * the lock it requested and the transactions queued ahead of it.  A cycle in the
+ * graph is a deadlock.
+ * <p>
+ * Edges are replaced whenever a transaction blocks (or is woken without being
+ * granted its lock) and removed when it stops waiting.  Every time a transaction
+ * blocks, the graph is searched for a cycle through it; since every earlier cycle
+ * was already broken, a new cycle must pass through the transaction that just
+ * blocked.  The youngest transaction in the cycle (the one with the largest id) is
+ * chosen as the victim, as it has likely done the least work.  The victim learns
+ * that it must abort from {@link #isVictim(TransactionId)}.
+ * <p>
+ * All methods are synchronized on the graph.  The graph never locks a
+ * {@link LockTableEntry}, so it may be called while holding the monitor of one.
+ * The graph is only used under {@link DeadlockPolicy#DETECT}.
+ */
+class WaitsForGraph {
+
+    private final Map<TransactionId, Set<TransactionId>> waitsFor = new HashMap<>();
+    private final Set<TransactionId> victims = new HashSet<>();
+
+    /**
+     * Records that tid is blocked waiting for the given transactions,
+     * and looks for a deadlock.
+     *
+     * @return the victim chosen to break a cycle through tid, or null if there is
+     * no such cycle or it already contains a victim
+     */
+    synchronized TransactionId block(TransactionId tid, Collection<TransactionId> blockers) {
+        waitsFor.put(tid, new HashSet<>(blockers));
+        List<TransactionId> cycle = findCycle(tid);
+        if (cycle == null) {
+            return null;
+        }
+        TransactionId victim = null;
+        for (TransactionId t : cycle) {
+            if (victims.contains(t)) {
+                return null;    // cycle is already being broken
+            }
+            if (victim == null || t.getId() > victim.getId()) {
+                victim = t;
+            }
+        }
+        victims.add(victim);
+        return victim;
+    }
+
+    /**
+     * Replaces the edges of tid, if it is blocked, e.g., after a holder that tid
+     * was waiting for released its lock.  Removing edges cannot create a cycle, so
+     * no deadlock detection is done.
+     */
+    synchronized void update(TransactionId tid, Collection<TransactionId> blockers) {
+        if (waitsFor.containsKey(tid)) {
+            waitsFor.put(tid, new HashSet<>(blockers));
+        }
+    }
+
+    /**
+     * Removes tid from the graph once it is no longer waiting.
+     */
+    synchronized void unblock(TransactionId tid) {
+        waitsFor.remove(tid);
+        victims.remove(tid);
+    }
+
+    /**
+     * @return true if tid was chosen as the victim of a deadlock and should abort
+     */
+    synchronized boolean isVictim(TransactionId tid) {
+        return victims.contains(tid);
+    }
+
+    /**
+     * @return the transactions of a cycle through start, or null if there is none
+     */
+    private List<TransactionId> findCycle(TransactionId start) {
+        LinkedList<TransactionId> path = new LinkedList<>();
+        Set<TransactionId> visited = new HashSet<>();
+        return findCycle(start, start, path, visited) ? path : null;
+    }
+
+    private boolean findCycle(TransactionId start, TransactionId t, LinkedList<TransactionId> path,
+                              Set<TransactionId> visited) {
+        path.addLast(t);
+        visited.add(t);
+        Set<TransactionId> next = waitsFor.get(t);
+        if (next != null) {
+            for (TransactionId u : next) {
+                if (u.equals(start)) {
+                    return true;
+                }
+                if (!visited.contains(u) && findCycle(start, u, path, visited)) {
+                    return true;
+                }
+            }
+        }
+        path.removeLast();
+        return false;
+    }
+}
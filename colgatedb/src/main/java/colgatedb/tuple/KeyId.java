@@ -0,0 +1,63 @@
+package colgatedb.tuple;
+
+import java.io.Serializable;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A KeyId is a reference to the tuple with a given key in a specific table, for
+ * tables whose tuples are identified by key rather than by position (see
+ * {@link colgatedb.dbfile.LsmFile}).
+ */
+public class KeyId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int tableid;
+    private final Field key;
+
+    public KeyId(int tableid, Field key) {
+        this.tableid = tableid;
+        this.key = key;
+    }
+
+    public int getTableId() {
+        return tableid;
+    }
+
+    public Field getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof KeyId) {
+            KeyId other = (KeyId) o;
+            return other.tableid == tableid && other.key.equals(key);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * tableid + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "KeyId(" + tableid + ", " + key + ")";
+    }
+}
@@ -136,6 +136,22 @@ public class AccessManagerTest extends AccessManagerTestBase {
         assertFalse(bm.wasFlushed(pid1));  // pid1 isn't dirty
     }
 
+    @Test
+    public void testPagesOnlyReadAreNotFlushed() throws TransactionAbortedException {
+        am.setForce(false);
+        am.acquireLock(tid0, pid0, Permissions.READ_WRITE);
+        am.unpinPage(tid0, am.pinPage(tid0, pid0, pm), true);
+        am.transactionComplete(tid0);   // under NO-FORCE, pid0 stays dirty
+
+        am.setForce(true);
+        am.acquireLock(tid1, pid0, Permissions.READ_ONLY);
+        am.unpinPage(tid1, am.pinPage(tid1, pid0, pm), false);
+        am.transactionComplete(tid1);
+
+        assertTrue(bm.isDirty(pid0));
+        assertFalse(bm.wasFlushed(pid0));   // tid1 never wrote pid0
+    }
+
     @Test
     @GradedTest(number="23.9", max_score=1.0, visibility="visible")
     public void testDirtyPagesDiscardedOnAbort() throws TransactionAbortedException {
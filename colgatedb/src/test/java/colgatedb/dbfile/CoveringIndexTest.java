@@ -0,0 +1,222 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManager;
+import colgatedb.Database;
+import colgatedb.TestUtility;
+import colgatedb.operators.IndexOnlyScan;
+import colgatedb.operators.Project;
+import colgatedb.operators.ScanPlanner;
+import colgatedb.operators.SeqScan;
+import colgatedb.page.SimplePageId;
+import colgatedb.page.SlottedPage;
+import colgatedb.page.SlottedPageMaker;
+import colgatedb.transactions.LockMode;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class CoveringIndexTest {
+
+    private static final int NUM_TUPLES = 1000;
+    private final TransactionId tid = new TransactionId();
+    private HeapFile hf;
+    private CoveringIndex index;
+
+    @Before
+    public void setUp() throws IOException, TransactionAbortedException {
+        Database.reset();
+        int[] data = new int[NUM_TUPLES * 3];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            data[3 * i] = i;
+            data[3 * i + 1] = -i;
+            data[3 * i + 2] = 2 * i;
+        }
+        hf = TestUtilHeapFile.createHeapFile(3, data);
+        File indexFile = File.createTempFile("index", ".dat");
+        indexFile.deleteOnExit();
+        index = new CoveringIndex(hf, new int[]{2, 0}, indexFile);
+        index.build(tid);
+        hf.addCoveringIndex(index);
+    }
+
+    @Test
+    public void indexIsNarrower() {
+        assertTrue(index.numPages() < hf.numPages());
+        assertEquals(2, index.getTupleDesc().numFields());
+    }
+
+    @Test
+    public void indexMatchesBaseFile() throws TransactionAbortedException {
+        Map<Integer, Integer> contents = scanIndex();
+        assertEquals(NUM_TUPLES, contents.size());
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            assertEquals(Integer.valueOf(2 * i), contents.get(i));
+        }
+    }
+
+    @Test
+    public void recordIdsReferToBaseFile() throws TransactionAbortedException {
+        Map<RecordId, Tuple> baseTuples = new HashMap<>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            baseTuples.put(t.getRecordId(), t);
+        }
+        it.close();
+
+        it = index.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            Tuple base = baseTuples.get(t.getRecordId());
+            assertEquals(base.getField(2), t.getField(0));
+            assertEquals(base.getField(0), t.getField(1));
+        }
+        it.close();
+    }
+
+    @Test
+    public void maintainedOnDelete() throws TransactionAbortedException {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        hf.deleteTuple(tid, t);
+        Map<Integer, Integer> contents = scanIndex();
+        assertEquals(NUM_TUPLES - 1, contents.size());
+        assertFalse(contents.containsKey(0));
+    }
+
+    @Test
+    public void maintainedOnInsert() throws TransactionAbortedException {
+        hf.insertTuple(tid, TestUtility.getIntTuple(new int[]{5000, 1, 7}));
+        Map<Integer, Integer> contents = scanIndex();
+        assertEquals(NUM_TUPLES + 1, contents.size());
+        assertEquals(Integer.valueOf(7), contents.get(5000));
+    }
+
+    @Test
+    public void scanLocksIndex() throws TransactionAbortedException {
+        Database.getAccessManager().transactionComplete(tid);
+        TransactionId reader = new TransactionId();
+        DbFileIterator it = index.iterator(reader);
+        it.open();
+        assertTrue(Database.getAccessManager().holdsTableLock(reader, index.getId(), LockMode.S));
+        it.close();
+    }
+
+    @Test(timeout = 10000)
+    public void writersShareIndexPage() throws TransactionAbortedException {
+        AccessManager am = Database.getAccessManager();
+        am.transactionComplete(tid);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        // records 0 and 1 are on the same base page and hence the same index page
+        hf.deleteTuple(t1, hf.getTuple(t1, new RecordId(new SimplePageId(hf.getId(), 0), 0)));
+        hf.deleteTuple(t2, hf.getTuple(t2, new RecordId(new SimplePageId(hf.getId(), 0), 1)));
+        am.transactionComplete(t1, false);
+        am.transactionComplete(t2, true);
+
+        TransactionId reader = new TransactionId();
+        Map<Integer, Integer> contents = scanIndex(reader);
+        assertEquals(NUM_TUPLES - 1, contents.size());
+        assertEquals(Integer.valueOf(0), contents.get(0));   // restored when t1 aborted
+        assertFalse(contents.containsKey(1));
+    }
+
+    @Test(timeout = 10000)
+    public void commitForcesOnlyItsOwnIndexRecords() throws TransactionAbortedException {
+        AccessManager am = Database.getAccessManager();
+        am.transactionComplete(tid);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        hf.deleteTuple(t1, hf.getTuple(t1, new RecordId(new SimplePageId(hf.getId(), 0), 0)));
+        hf.deleteTuple(t2, hf.getTuple(t2, new RecordId(new SimplePageId(hf.getId(), 0), 1)));
+        am.transactionComplete(t2, true);
+
+        SlottedPage onDisk = (SlottedPage) Database.getDiskManager().readPage(new SimplePageId(index.getId(), 0),
+                new SlottedPageMaker(index.getTupleDesc(), Database.getPageSize()));
+        assertTrue(onDisk.isSlotUsed(0));    // t1 has not completed
+        assertFalse(onDisk.isSlotUsed(1));
+        am.transactionComplete(t1, false);
+    }
+
+    @Test
+    public void plannerChoosesIndexOnlyScan() {
+        Project covered = ScanPlanner.projectedScan(tid, hf.getId(), "t", new ArrayList<>(Arrays.asList(0, 2)));
+        assertTrue(covered.getChildren()[0] instanceof IndexOnlyScan);
+
+        Project notCovered = ScanPlanner.projectedScan(tid, hf.getId(), "t", new ArrayList<>(Arrays.asList(0, 1)));
+        assertTrue(notCovered.getChildren()[0] instanceof SeqScan);
+    }
+
+    @Test
+    public void snapshotsReadBaseFile() {
+        TransactionId reader = new TransactionId();
+        Database.getSnapshotManager().beginSnapshot(reader);
+        Project plan = ScanPlanner.projectedScan(reader, hf.getId(), "t", new ArrayList<>(Arrays.asList(0, 2)));
+        assertTrue(plan.getChildren()[0] instanceof SeqScan);
+    }
+
+    @Test
+    public void plannedScanReturnsProjection() throws Exception {
+        Project plan = ScanPlanner.projectedScan(tid, hf.getId(), "t", new ArrayList<>(Arrays.asList(0, 2)));
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            int f0 = ((IntField) t.getField(0)).getValue();
+            assertEquals(2 * f0, ((IntField) t.getField(1)).getValue());
+            n++;
+        }
+        plan.close();
+        assertEquals(NUM_TUPLES, n);
+    }
+
+    /**
+     * @return map from column 0 to column 2 of the records in the index
+     */
+    private Map<Integer, Integer> scanIndex() throws TransactionAbortedException {
+        return scanIndex(tid);
+    }
+
+    private Map<Integer, Integer> scanIndex(TransactionId tid) throws TransactionAbortedException {
+        Map<Integer, Integer> contents = new HashMap<>();
+        DbFileIterator it = index.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            contents.put(((IntField) t.getField(1)).getValue(), ((IntField) t.getField(0)).getValue());
+        }
+        it.close();
+        return contents;
+    }
+}
@@ -2,8 +2,10 @@ package colgatedb.dbfile;
 
 import colgatedb.*;
 import colgatedb.page.*;
+import colgatedb.transactions.Permissions;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.IntField;
 import colgatedb.tuple.RecordId;
 import colgatedb.tuple.Tuple;
 import colgatedb.tuple.TupleDesc;
@@ -13,6 +15,9 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -48,6 +53,96 @@ public class HeapFileMoreTest {
         Database.reset();
     }
 
+    @Test(timeout = 10000)
+    public void insertSkipsLockedSlots() throws TransactionAbortedException {
+        HeapFile hf = TestUtilHeapFile.createHeapFile(2, new int[]{1, 1, 2, 2});
+        // another inserter has locked the first free slot but not yet filled it
+        RecordId locked = new RecordId(new SimplePageId(hf.getId(), 0), 2);
+        TransactionId other = new TransactionId();
+        Database.getAccessManager().acquireRecordLock(other, locked, Permissions.READ_WRITE);
+
+        TransactionId tid1 = new TransactionId();
+        Tuple inserted = TestUtility.getIntTuple(new int[]{3, 3});
+        hf.insertTuple(tid1, inserted);
+        assertEquals(new RecordId(new SimplePageId(hf.getId(), 0), 3), inserted.getRecordId());
+    }
+
+    @Test
+    public void commitForcesOnlyItsOwnRecords() throws TransactionAbortedException {
+        HeapFile hf = TestUtilHeapFile.createHeapFile(2, new int[]{1, 1, 2, 2});
+        PageId pid = new SimplePageId(hf.getId(), 0);
+        TransactionId tid1 = new TransactionId();
+        TransactionId tid2 = new TransactionId();
+        hf.insertTuple(tid1, TestUtility.getIntTuple(new int[]{3, 3}));
+        Tuple inserted = TestUtility.getIntTuple(new int[]{4, 4});
+        hf.insertTuple(tid2, inserted);   // same page
+
+        Database.getAccessManager().transactionComplete(tid1, true);
+        assertEquals(Arrays.asList(1, 2, 3), valuesOnDisk(hf, pid));   // tid2 has not completed
+        assertEqualTuples(inserted, hf.getTuple(tid2, inserted.getRecordId()));   // but its insert is kept
+
+        Database.getAccessManager().transactionComplete(tid2, true);
+        assertEquals(Arrays.asList(1, 2, 3, 4), valuesOnDisk(hf, pid));
+    }
+
+    @Test
+    public void commitDoesNotForceUncommittedDeletes() throws TransactionAbortedException {
+        HeapFile hf = TestUtilHeapFile.createHeapFile(2, new int[]{1, 1, 2, 2});
+        PageId pid = new SimplePageId(hf.getId(), 0);
+        TransactionId tid1 = new TransactionId();
+        TransactionId tid2 = new TransactionId();
+        hf.insertTuple(tid1, TestUtility.getIntTuple(new int[]{3, 3}));
+        hf.deleteTuple(tid2, hf.getTuple(tid2, new RecordId(pid, 0)));   // same page
+
+        Database.getAccessManager().transactionComplete(tid1, true);
+        assertEquals(Arrays.asList(1, 2, 3), valuesOnDisk(hf, pid));
+
+        Database.getAccessManager().transactionComplete(tid2, false);
+        assertEquals(Arrays.asList(1, 2, 3), valuesOnDisk(hf, pid));
+    }
+
+    /**
+     * @return the sorted values of the first column of the tuples on disk in page pid
+     */
+    private static List<Integer> valuesOnDisk(HeapFile hf, PageId pid) {
+        List<Integer> values = new ArrayList<>();
+        for (Tuple t : tuplesOnDisk(hf, pid)) {
+            values.add(((IntField) t.getField(0)).getValue());
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    private static List<Tuple> tuplesOnDisk(HeapFile hf, PageId pid) {
+        PageMaker pageMaker = new SlottedPageMaker(hf.getTupleDesc(), Database.getPageSize());
+        Iterator<Tuple> it = ((SlottedPage) Database.getDiskManager().readPage(pid, pageMaker)).iterator();
+        List<Tuple> tuples = new LinkedList<>();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        return tuples;
+    }
+
+    @Test
+    public void abortUndoesOnlyItsOwnRecords() throws TransactionAbortedException {
+        HeapFile hf = TestUtilHeapFile.createHeapFile(2, new int[]{1, 1, 2, 2});
+        TransactionId tid1 = new TransactionId();
+        TransactionId tid2 = new TransactionId();
+        RecordId deleted = new RecordId(new SimplePageId(hf.getId(), 0), 0);
+        Tuple first = hf.getTuple(tid1, deleted);
+
+        hf.deleteTuple(tid1, first);
+        Tuple inserted = TestUtility.getIntTuple(new int[]{3, 3});
+        hf.insertTuple(tid2, inserted);   // same page, different record: does not wait for tid1
+        assertEquals(1, hf.numPages());
+        assertNotEquals(deleted, inserted.getRecordId());   // the deleted slot is not reused
+        assertNull(hf.getTuple(tid1, deleted));
+
+        Database.getAccessManager().transactionComplete(tid1, false);
+        assertEqualTuples(TestUtility.getIntTuple(new int[]{1, 1}), hf.getTuple(tid, deleted));
+        assertEqualTuples(inserted, hf.getTuple(tid2, inserted.getRecordId()));
+    }
+
     @Test
     @GradedTest(number="10.1", max_score=1.0, visibility="visible")
     public void notOpen() throws IOException, TransactionAbortedException {
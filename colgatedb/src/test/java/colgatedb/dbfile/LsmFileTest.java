@@ -0,0 +1,258 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManager;
+import colgatedb.Catalog;
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.operators.Predicate;
+import colgatedb.operators.SeqScan;
+import colgatedb.transactions.LockMode;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class LsmFileTest {
+
+    private final TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+            new String[]{"id", "value"});
+    private File directory;
+    private LsmFile lsm;
+
+    @Before
+    public void setUp() throws IOException {
+        Database.reset();
+        directory = Files.createTempDirectory("lsm").toFile();
+        directory.deleteOnExit();
+        lsm = Catalog.addLsmFile("events", td, "id", directory);
+        lsm.setMemtableSize(100);
+        lsm.setCompactionThreshold(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void scanIsSortedByKey() throws TransactionAbortedException {
+        TransactionId tid = new TransactionId();
+        for (int i = 9; i >= 0; i--) {
+            lsm.insertTuple(tid, tuple(i, i * 10));
+        }
+        lsm.insertTuple(tid, tuple(3, -1));     // replaces the earlier version
+        commit(tid);
+        List<int[]> contents = scan(lsm.iterator(new TransactionId()));
+        assertEquals(10, contents.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, contents.get(i)[0]);
+            assertEquals(i == 3 ? -1 : i * 10, contents.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void writesAreBufferedUntilCommit() throws TransactionAbortedException {
+        TransactionId writer = new TransactionId();
+        lsm.insertTuple(writer, tuple(1, 1));
+        assertEquals(1, scan(lsm.iterator(writer)).size());
+        Database.getAccessManager().transactionComplete(writer, false);
+        TransactionId reader = new TransactionId();
+        assertEquals(0, scan(lsm.iterator(reader)).size());
+        commit(reader);   // releases its lock on the table
+
+        TransactionId other = new TransactionId();
+        lsm.insertTuple(other, tuple(2, 2));
+        Database.getAccessManager().transactionComplete(other, true);
+        assertEquals(1, scan(lsm.iterator(new TransactionId())).size());
+    }
+
+    @Test
+    public void flushAndDeleteAcrossRuns() throws TransactionAbortedException {
+        insertRange(0, 250);
+        assertEquals(2, lsm.numRuns());
+        assertEquals(50, lsm.memtableSize());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 250; i += 2) {
+            lsm.deleteTuple(tid, tuple(i, i));
+        }
+        commit(tid);
+        List<int[]> contents = scan(lsm.iterator(new TransactionId()));
+        assertEquals(125, contents.size());
+        for (int[] t : contents) {
+            assertEquals(1, t[0] % 2);
+        }
+    }
+
+    @Test(expected = DbException.class)
+    public void deleteMissingKey() throws TransactionAbortedException {
+        lsm.deleteTuple(new TransactionId(), tuple(5, 5));
+    }
+
+    @Test
+    public void backgroundCompaction() throws Exception {
+        lsm.setCompactionThreshold(3);
+        insertRange(0, 200);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 100; i++) {
+            lsm.deleteTuple(tid, tuple(i, i));
+        }
+        commit(tid);
+        lsm.flush();        // third run triggers a compaction
+        lsm.awaitCompaction();
+        assertEquals(1, lsm.numRuns());
+        List<int[]> contents = scan(lsm.iterator(new TransactionId()));
+        assertEquals(100, contents.size());
+        assertEquals(100, contents.get(0)[0]);
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void pointLookups() throws TransactionAbortedException {
+        insertRange(0, 300);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 300; i += 7) {
+            Tuple t = lsm.get(tid, new IntField(i));
+            assertEquals(new IntField(i), t.getField(1));
+        }
+        assertNull(lsm.get(tid, new IntField(300)));
+        assertEquals(1, scan(lsm.iterator(tid, new Predicate(0, Op.EQUALS, new IntField(42)))).size());
+    }
+
+    @Test
+    public void reopen() throws TransactionAbortedException {
+        insertRange(0, 200);
+        assertEquals(2, lsm.numRuns());
+        LsmFile reopened = new LsmFile(td, lsm.getId(), 0, directory);
+        assertEquals(2, reopened.numRuns());
+        assertEquals(200, scan(reopened.iterator(new TransactionId())).size());
+    }
+
+    @Test
+    public void committedWritesSurviveReopen() throws TransactionAbortedException {
+        insertRange(0, 150);
+        TransactionId aborted = new TransactionId();
+        lsm.insertTuple(aborted, tuple(500, 500));
+        Database.getAccessManager().transactionComplete(aborted, false);
+        assertEquals(1, lsm.numRuns());
+        assertEquals(50, lsm.memtableSize());
+        // a new LsmFile on the directory, as after a crash: the memtable is read back from its log
+        LsmFile reopened = new LsmFile(td, lsm.getId(), 0, directory);
+        assertEquals(50, reopened.memtableSize());
+        assertEquals(150, scan(reopened.iterator(new TransactionId())).size());
+    }
+
+    @Test(timeout = 10000)
+    public void writersOfOneKeyAreSerialized() throws Exception {
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        lsm.insertTuple(t1, tuple(1, 1));
+        assertTrue(Database.getAccessManager().holdsTableLock(t1, lsm.getId(), LockMode.IX));
+        Thread writer = new Thread(() -> {
+            try {
+                lsm.insertTuple(t2, tuple(1, 2));
+            } catch (TransactionAbortedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());   // waiting for the lock of t1 on key 1
+        commit(t1);
+        writer.join();
+        commit(t2);
+        TransactionId reader = new TransactionId();
+        assertEquals(new IntField(2), lsm.get(reader, new IntField(1)).getField(1));
+        assertTrue(Database.getAccessManager().holdsTableLock(reader, lsm.getId(), LockMode.IS));
+    }
+
+    @Test
+    public void insertReplacesTupleWithSameKey() throws TransactionAbortedException {
+        insertRange(0, 10);
+        TransactionId tid = new TransactionId();
+        lsm.insertTuple(tid, tuple(3, -1));
+        commit(tid);
+        List<int[]> contents = scan(lsm.iterator(new TransactionId()));
+        assertEquals(10, contents.size());
+        assertArrayEquals(new int[]{3, -1}, contents.get(3));
+    }
+
+    @Test
+    public void keyLocksAreNotEscalated() throws TransactionAbortedException {
+        TransactionId tid = new TransactionId();
+        int n = Database.getLockEscalationThreshold() + 10;
+        for (int i = 0; i < n; i++) {
+            lsm.insertTuple(tid, tuple(i, i));
+        }
+        AccessManager am = Database.getAccessManager();
+        assertFalse(am.holdsTableLock(tid, lsm.getId(), LockMode.X));
+        assertTrue(am.holdsKeyLock(tid, new KeyId(lsm.getId(), new IntField(7)), Permissions.READ_WRITE));
+        assertFalse(am.holdsKeyLock(tid, new KeyId(lsm.getId(), new IntField(n)), Permissions.READ_ONLY));
+        commit(tid);
+        assertFalse(am.holdsKeyLock(tid, new KeyId(lsm.getId(), new IntField(7)), Permissions.READ_ONLY));
+    }
+
+    @Test
+    public void seqScan() throws Exception {
+        insertRange(0, 150);
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, lsm.getId(), "e", new Predicate(0, Op.LESS_THAN, new IntField(10)));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            assertEquals(n, ((IntField) scan.next().getField(0)).getValue());
+            n++;
+        }
+        scan.close();
+        assertEquals(10, n);
+    }
+
+    private Tuple tuple(int id, int value) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new IntField(value));
+        return t;
+    }
+
+    private void insertRange(int from, int to) throws TransactionAbortedException {
+        for (int i = from; i < to; i++) {
+            TransactionId tid = new TransactionId();
+            lsm.insertTuple(tid, tuple(i, i));
+            commit(tid);
+        }
+    }
+
+    private void commit(TransactionId tid) {
+        Database.getAccessManager().transactionComplete(tid, true);
+    }
+
+    private List<int[]> scan(DbFileIterator it) throws TransactionAbortedException {
+        List<int[]> contents = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            contents.add(new int[]{((IntField) t.getField(0)).getValue(), ((IntField) t.getField(1)).getValue()});
+        }
+        it.close();
+        return contents;
+    }
+}
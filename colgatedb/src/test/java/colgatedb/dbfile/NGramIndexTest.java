@@ -0,0 +1,182 @@
+package colgatedb.dbfile;
+
+import colgatedb.Catalog;
+import colgatedb.Database;
+import colgatedb.operators.DbIterator;
+import colgatedb.operators.NGramScan;
+import colgatedb.operators.Predicate;
+import colgatedb.operators.ScanPlanner;
+import colgatedb.operators.SeqScan;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class NGramIndexTest {
+
+    private static final int NUM_TUPLES = 500;
+    private static final String[] WORDS = {"apple", "banana", "cherry", "grape", "melon"};
+    private final TransactionId tid = new TransactionId();
+    private final TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "name"});
+    private HeapFile hf;
+    private File indexFile;
+    private NGramIndex index;
+
+    @Before
+    public void setUp() throws IOException, TransactionAbortedException {
+        Database.reset();
+        Database.getBufferManager().evictDirty(true);
+        File dataFile = File.createTempFile("strings", ".dat");
+        dataFile.deleteOnExit();
+        hf = Catalog.addHeapFile("strings", td, dataFile);
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            hf.insertTuple(tid, makeTuple(i, WORDS[i % WORDS.length] + " #" + i));
+        }
+        indexFile = File.createTempFile("ngram", ".dat");
+        indexFile.deleteOnExit();
+        index = new NGramIndex(hf, 1, indexFile);
+        index.build(tid);
+        hf.addNGramIndex(index);
+    }
+
+    @Test
+    public void trigrams() {
+        assertEquals(3, NGramIndex.trigrams("apple").size());
+        assertEquals(1, NGramIndex.trigrams("aaaa").size());
+        assertTrue(NGramIndex.trigrams("ab").isEmpty());
+    }
+
+    @Test
+    public void candidatesIncludeAllMatches() throws TransactionAbortedException {
+        List<RecordId> candidates = index.candidates(tid, "cherry");
+        assertTrue(candidates.size() >= NUM_TUPLES / WORDS.length);
+        assertTrue(candidates.size() < NUM_TUPLES);
+        assertNull(index.candidates(tid, "ap"));
+    }
+
+    @Test
+    public void scanMatchesFullScan() throws Exception {
+        String[] patterns = {"grape", "#12", "rry #4", "an", "zzz", "#499"};
+        for (String pattern : patterns) {
+            Predicate p = new Predicate(1, Op.LIKE, new StringField(pattern));
+            DbIterator scan = ScanPlanner.filteredScan(tid, hf.getId(), "s", p);
+            assertTrue(scan instanceof NGramScan);
+            assertEquals(ids(new SeqScan(tid, hf.getId(), "s", p)), ids(scan));
+        }
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        NGramScan scan = new NGramScan(tid, hf.getId(), "s", index,
+                new Predicate(1, Op.LIKE, new StringField("melon")));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.rewind();
+        while (scan.hasNext()) {
+            scan.next();
+            n--;
+        }
+        scan.close();
+        assertEquals(0, n);
+    }
+
+    @Test
+    public void maintainedOnInsertAndDelete() throws Exception {
+        hf.insertTuple(tid, makeTuple(1000, "kiwifruit"));
+        Predicate p = new Predicate(1, Op.LIKE, new StringField("kiwi"));
+        Set<Integer> expected = new HashSet<>();
+        expected.add(1000);
+        assertEquals(expected, ids(ScanPlanner.filteredScan(tid, hf.getId(), "s", p)));
+
+        // deleted records still have postings but are filtered out
+        DbFileIterator it = hf.iterator(tid, p);
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        hf.deleteTuple(tid, t);
+        assertTrue(ids(ScanPlanner.filteredScan(tid, hf.getId(), "s", p)).isEmpty());
+    }
+
+    @Test
+    public void directoryRebuiltOnOpen() throws TransactionAbortedException {
+        Database.getAccessManager().transactionComplete(tid);
+        TransactionId reader = new TransactionId();
+        NGramIndex reopened = new NGramIndex(hf, 1, indexFile);
+        assertEquals(index.numPages(), reopened.numPages());
+        assertEquals(index.candidates(reader, "cherry"), reopened.candidates(reader, "cherry"));
+        assertEquals(index.candidates(reader, "#49"), reopened.candidates(reader, "#49"));
+    }
+
+    @Test(timeout = 10000)
+    public void insertersDoNotBlockOnLastPage() throws Exception {
+        Database.getAccessManager().transactionComplete(tid);
+        TransactionId t1 = new TransactionId();
+        TransactionId t2 = new TransactionId();
+        hf.insertTuple(t1, makeTuple(1000, "kiwifruit"));
+        hf.insertTuple(t2, makeTuple(1001, "kiwano"));
+        Database.getAccessManager().transactionComplete(t1, false);
+        Database.getAccessManager().transactionComplete(t2);
+
+        TransactionId reader = new TransactionId();
+        Predicate p = new Predicate(1, Op.LIKE, new StringField("kiw"));
+        Set<Integer> expected = new HashSet<>();
+        expected.add(1001);   // the postings of the aborted insert are filtered out
+        assertEquals(expected, ids(ScanPlanner.filteredScan(reader, hf.getId(), "s", p)));
+    }
+
+    @Test
+    public void plannerFallsBackToSeqScan() {
+        Predicate p = new Predicate(0, Op.EQUALS, new IntField(3));
+        assertTrue(ScanPlanner.filteredScan(tid, hf.getId(), "s", p) instanceof SeqScan);
+
+        TransactionId occ = new TransactionId();
+        Database.getValidationManager().begin(occ);
+        Predicate like = new Predicate(1, Op.LIKE, new StringField("grape"));
+        assertTrue(ScanPlanner.filteredScan(occ, hf.getId(), "s", like) instanceof SeqScan);
+    }
+
+    private Tuple makeTuple(int id, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name));
+        return t;
+    }
+
+    private Set<Integer> ids(DbIterator it) throws Exception {
+        Set<Integer> ids = new HashSet<>();
+        it.open();
+        while (it.hasNext()) {
+            ids.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        return ids;
+    }
+}
@@ -0,0 +1,169 @@
+package colgatedb.dbfile;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.TestUtility;
+import colgatedb.page.SimplePageId;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.SnapshotManager;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.transactions.ValidationManager;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class SnapshotReadTest {
+
+    private final TransactionId writer = new TransactionId();
+    private SnapshotManager sm;
+    private HeapFile hf;
+    private Tuple first;
+
+    @Before
+    public void setUp() throws TransactionAbortedException {
+        Database.reset();
+        sm = Database.getSnapshotManager();
+        hf = TestUtilHeapFile.createHeapFile(2, new int[]{1, 1, 2, 2});
+        TransactionId setup = new TransactionId();
+        first = hf.getTuple(setup, new RecordId(new SimplePageId(hf.getId(), 0), 0));
+        Database.getAccessManager().transactionComplete(setup);
+    }
+
+    @Test(timeout = 10000)
+    public void readersDoNotWaitForWriters() throws TransactionAbortedException {
+        hf.deleteTuple(writer, first);
+        hf.insertTuple(writer, TestUtility.getIntTuple(new int[]{3, 3}));
+
+        TransactionId reader = new TransactionId();
+        sm.beginSnapshot(reader);
+        assertEquals(Arrays.asList(1, 2), scan(reader));   // the writer still holds its locks
+        assertEquals(first.getField(0), hf.getTuple(reader, new RecordId(new SimplePageId(hf.getId(), 0), 0)).getField(0));
+    }
+
+    @Test
+    public void snapshotIgnoresLaterCommits() throws TransactionAbortedException {
+        TransactionId before = new TransactionId();
+        sm.beginSnapshot(before);
+        hf.deleteTuple(writer, first);
+        hf.insertTuple(writer, TestUtility.getIntTuple(new int[]{3, 3}));
+        commit(writer);
+
+        TransactionId after = new TransactionId();
+        sm.beginSnapshot(after);
+        assertEquals(Arrays.asList(1, 2), scan(before));
+        assertEquals(Arrays.asList(2, 3), scan(after));
+    }
+
+    @Test
+    public void abortedWritesAreNeverSeen() throws TransactionAbortedException {
+        hf.deleteTuple(writer, first);
+        hf.transactionComplete(writer, false);
+        TransactionId reader = new TransactionId();
+        sm.beginSnapshot(reader);
+        assertEquals(Arrays.asList(1, 2), scan(reader));
+        assertEquals(0, hf.numVersions());
+    }
+
+    @Test
+    public void unneededVersionsAreCollected() throws TransactionAbortedException {
+        TransactionId reader = new TransactionId();
+        sm.beginSnapshot(reader);
+        hf.deleteTuple(writer, first);
+        commit(writer);
+        assertEquals(1, hf.numVersions());   // still needed by the reader
+
+        sm.endSnapshot(reader);
+        hf.transactionComplete(reader, true);
+        assertEquals(0, hf.numVersions());
+
+        // without running snapshots, versions are dropped as soon as their writer commits
+        TransactionId writer2 = new TransactionId();
+        hf.deleteTuple(writer2, hf.getTuple(writer2, new RecordId(new SimplePageId(hf.getId(), 0), 1)));
+        assertEquals(1, hf.numVersions());
+        commit(writer2);
+        assertEquals(0, hf.numVersions());
+    }
+
+    @Test
+    public void onlyLockingReadsLockRecords() throws TransactionAbortedException {
+        RecordId rid = new RecordId(new SimplePageId(hf.getId(), 0), 1);
+        TransactionId reader = new TransactionId();
+        hf.getTuple(reader, rid);
+        assertTrue(Database.getAccessManager().holdsRecordLock(reader, rid, Permissions.READ_ONLY));
+
+        TransactionId snapshot = new TransactionId();
+        sm.beginSnapshot(snapshot);
+        hf.getTuple(snapshot, rid);
+        assertFalse(Database.getAccessManager().holdsRecordLock(snapshot, rid, Permissions.READ_ONLY));
+    }
+
+    @Test(expected = DbException.class)
+    public void snapshotsAreReadOnly() throws TransactionAbortedException {
+        TransactionId reader = new TransactionId();
+        sm.beginSnapshot(reader);
+        hf.insertTuple(reader, TestUtility.getIntTuple(new int[]{3, 3}));
+    }
+
+    @Test
+    public void optimisticTransactionsSeeOwnWritesAndAreValidated() throws TransactionAbortedException {
+        ValidationManager vm = Database.getValidationManager();
+        TransactionId occ = new TransactionId();
+        vm.begin(occ);
+        hf.deleteTuple(occ, first);
+        assertEquals(Collections.singletonList(2), scan(occ));
+
+        hf.deleteTuple(writer, hf.getTuple(writer, new RecordId(new SimplePageId(hf.getId(), 0), 1)));
+        commit(writer);
+        assertFalse(vm.commit(occ));   // read the page the writer changed
+        hf.transactionComplete(occ, false);
+        assertEquals(1, vm.getNumFailedValidations());
+    }
+
+    /**
+     * Commits the writes of tid to the file as the AccessManager would.
+     */
+    private void commit(TransactionId tid) {
+        Database.getValidationManager().commit(tid);
+        hf.transactionComplete(tid, true);
+        sm.endCommit(tid);
+    }
+
+    /**
+     * @return the sorted values of the first column of the tuples seen by tid
+     */
+    private List<Integer> scan(TransactionId tid) throws TransactionAbortedException {
+        List<Integer> values = new ArrayList<>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            values.add(((IntField) it.next().getField(0)).getValue());
+        }
+        it.close();
+        Collections.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,137 @@
+package colgatedb.dbfile;
+
+import colgatedb.AccessManagerImpl;
+import colgatedb.BufferManager;
+import colgatedb.BufferManagerImpl;
+import colgatedb.Database;
+import colgatedb.TestUtility;
+import colgatedb.operators.Predicate;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import colgatedb.transactions.TransactionAbortedException;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ZoneMapTest {
+
+    private final TransactionId tid = new TransactionId();
+    private final TupleDesc td = TestUtility.getTupleDesc(2);
+
+    @Before
+    public void setUp() {
+        Database.reset();
+    }
+
+    @Test
+    public void unknownZoneAlwaysMatches() {
+        ZoneMap zm = new ZoneMap(td);
+        assertFalse(zm.isKnown(0));
+        assertTrue(zm.mightMatch(0, new Predicate(0, Op.EQUALS, new IntField(5))));
+    }
+
+    @Test
+    public void includeWidensZone() {
+        ZoneMap zm = new ZoneMap(td);
+        zm.addEmptyPage(0);
+        assertFalse(zm.mightMatch(0, new Predicate(0, Op.EQUALS, new IntField(5))));
+        zm.include(0, TestUtility.getIntTuple(new int[]{3, 30}));
+        zm.include(0, TestUtility.getIntTuple(new int[]{7, 70}));
+        assertTrue(zm.mightMatch(0, new Predicate(0, Op.EQUALS, new IntField(5))));
+        assertFalse(zm.mightMatch(0, new Predicate(0, Op.EQUALS, new IntField(8))));
+        assertFalse(zm.mightMatch(0, new Predicate(0, Op.GREATER_THAN, new IntField(7))));
+        assertTrue(zm.mightMatch(0, new Predicate(0, Op.GREATER_THAN_OR_EQ, new IntField(7))));
+        assertFalse(zm.mightMatch(0, new Predicate(1, Op.LESS_THAN, new IntField(30))));
+        assertTrue(zm.mightMatch(0, new Predicate(1, Op.LESS_THAN_OR_EQ, new IntField(30))));
+    }
+
+    @Test
+    public void invalidateForgetsZone() {
+        ZoneMap zm = new ZoneMap(td);
+        zm.addEmptyPage(0);
+        zm.invalidate(0);
+        assertFalse(zm.isKnown(0));
+        assertTrue(zm.mightMatch(0, new Predicate(0, Op.EQUALS, new IntField(5))));
+    }
+
+    @Test
+    public void staleZoneIsNotRecorded() {
+        ZoneMap zm = new ZoneMap(td);
+        int stamp = zm.getStamp(0);
+        zm.include(0, TestUtility.getIntTuple(new int[]{3, 30}));   // page modified during summary
+        zm.setZone(0, new ArrayList<Tuple>().iterator(), stamp);
+        assertFalse(zm.isKnown(0));
+    }
+
+    @Test
+    public void scanWithPredicate() throws IOException, TransactionAbortedException {
+        List<Tuple> tups = new LinkedList<Tuple>();
+        HeapFile hf = HeapFileMoreTest.initializeHeapFile(new int[]{2, 2, 2, 2}, tups);
+        final Set<PageId> pinned = new HashSet<>();
+        BufferManager bm = new BufferManagerImpl(1, Database.getDiskManager()) {
+            @Override
+            public synchronized Page pinPage(PageId pid, PageMaker pageMaker) {
+                pinned.add(pid);
+                return super.pinPage(pid, pageMaker);
+            }
+        };
+        Database.setBufferManager(bm);
+        Database.setAccessManager(new AccessManagerImpl(bm));
+
+        Predicate p = new Predicate(0, Op.EQUALS, new IntField(2));   // first column is page number
+        // first scan summarizes the pages, second one skips the pages that cannot match
+        assertEquals(2, count(hf.iterator(tid, p)));
+        assertEquals(4, pinned.size());
+        pinned.clear();
+        assertEquals(2, count(hf.iterator(tid, p)));
+        assertEquals(Collections.singleton(new SimplePageId(hf.getId(), 2)), pinned);
+
+        Database.getBufferManager().evictDirty(true);
+        Tuple t = TestUtility.getIntTuple(new int[]{2, 99});
+        hf.insertTuple(tid, t);
+        assertEquals(3, count(hf.iterator(tid, p)));
+        hf.deleteTuple(tid, t);
+        assertEquals(2, count(hf.iterator(tid, p)));
+    }
+
+    private static int count(DbFileIterator it) throws TransactionAbortedException {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+}
@@ -0,0 +1,96 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BlockNestedLoopJoinTest {
+
+    @Test
+    public void matchesNestedLoopJoin() throws Exception {
+        Op[] ops = {Op.EQUALS, Op.NOT_EQUALS, Op.LESS_THAN, Op.GREATER_THAN_OR_EQ};
+        for (Op op : ops) {
+            JoinPredicate pred = new JoinPredicate(0, op, 0);
+            List<String> expected = results(new Join(pred, keys(0, 30), keys(10, 40)));
+            List<String> actual = results(new BlockNestedLoopJoin(pred, keys(0, 30), keys(10, 40), 1));
+            assertEquals(op.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void innerScannedOncePerBlock() throws Exception {
+        // a page holds 512 two-int tuples, so 1200 outer tuples form three one-page blocks
+        BlockNestedLoopJoin op = new BlockNestedLoopJoin(new JoinPredicate(0, Op.GREATER_THAN, 0),
+                keys(0, 1200), keys(0, 10), 1);
+        List<String> actual = results(op);
+        assertEquals(3, op.getNumInnerScans());
+        assertEquals(1200 * 10 - 55, actual.size());
+
+        op = new BlockNestedLoopJoin(new JoinPredicate(0, Op.GREATER_THAN, 0), keys(0, 1200), keys(0, 10), 3);
+        results(op);
+        assertEquals(1, op.getNumInnerScans());
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        BlockNestedLoopJoin op = new BlockNestedLoopJoin(new JoinPredicate(0, Op.LESS_THAN, 0),
+                keys(0, 20), keys(0, 20), 1);
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        assertEquals(190, n);
+        op.rewind();
+        while (op.hasNext()) {
+            op.next();
+            n--;
+        }
+        assertEquals(0, n);
+    }
+
+    /**
+     * @return tuples (k, -k) for every k in [from, to)
+     */
+    private TupleIterator keys(int from, int to) {
+        int[] data = new int[(to - from) * 2];
+        for (int k = from; k < to; k++) {
+            data[2 * (k - from)] = k;
+            data[2 * (k - from) + 1] = -k;
+        }
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    private List<String> results(DbIterator op) throws Exception {
+        List<String> results = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            results.add(t.getField(0) + " " + t.getField(1) + " " + t.getField(2) + " " + t.getField(3));
+        }
+        op.close();
+        Collections.sort(results);
+        return results;
+    }
+}
@@ -0,0 +1,179 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.StringField;
+import org.junit.Test;
+
+import static colgatedb.dbfile.TestUtilHeapFile.createHeapFile;
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter bf = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            bf.add(new IntField(i * 7));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bf.mightContain(new IntField(i * 7)));
+        }
+        assertEquals(1000, bf.getNumAdded());
+    }
+
+    @Test
+    public void falsePositiveRate() {
+        BloomFilter bf = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            bf.add(new IntField(i));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (bf.mightContain(new IntField(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300);   // expected around 100
+        assertTrue(bf.getFalsePositiveRate() < 0.02);
+    }
+
+    @Test
+    public void stringFields() {
+        BloomFilter bf = new BloomFilter(2, 0.01);
+        bf.add(new StringField("alice"));
+        bf.add(new StringField("bob"));
+        assertTrue(bf.mightContain(new StringField("alice")));
+        assertTrue(bf.mightContain(new StringField("bob")));
+    }
+
+    /**
+     * The Bloom filter built by an equality join is pushed down into a Filter
+     * on the outer side; outer tuples without a match never reach the join.
+     */
+    @Test
+    public void joinPushesFilterDown() throws Exception {
+        TupleIterator scan1 = OperatorTestUtility.createTupleList(2,
+                new int[]{1, 10,
+                        2, 20,
+                        3, 30,
+                        4, 40});
+        TupleIterator scan2 = OperatorTestUtility.createTupleList(1,
+                new int[]{2,
+                        4});
+        TupleIterator expected = OperatorTestUtility.createTupleList(3,
+                new int[]{2, 20, 2,
+                        4, 40, 4});
+        Filter outer = new Filter(new Predicate(0, Op.GREATER_THAN, new IntField(0)), scan1);
+        Join op = new Join(new JoinPredicate(0, Op.EQUALS, 0), outer, scan2);
+        op.setUseBloomFilter(true);
+        op.open();
+        assertNotNull(op.getBloomFilter());
+        assertTrue(op.isBloomFilterPushedDown());
+        assertEquals(2, op.getBloomFilter().getNumAdded());
+        OperatorTestUtility.compareDbIterators(expected, op);
+        op.close();
+        assertFalse(op.isBloomFilterPushedDown());
+    }
+
+    @Test
+    public void noFilterForInnerOfUnknownSize() throws Exception {
+        TupleIterator scan1 = OperatorTestUtility.createTupleList(1, new int[]{1, 2});
+        TupleIterator scan2 = OperatorTestUtility.createTupleList(1, new int[]{1});
+        Join op = new Join(new JoinPredicate(0, Op.EQUALS, 0), scan1, scan2);
+        op.open();
+        assertNull(op.getBloomFilter());
+        assertEquals(0, op.getBloomFilterNumBits());
+        assertEquals(0, op.getBloomFilterFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void filterForSmallInner() throws Exception {
+        Database.reset();
+        TransactionId tid = new TransactionId();
+        HeapFile outer = createHeapFile("outer", 1, 2);
+        HeapFile inner = createHeapFile("inner", 1, 1);
+        Join op = new Join(new JoinPredicate(0, Op.EQUALS, 0),
+                new SeqScan(tid, outer.getId()), new SeqScan(tid, inner.getId()));
+        op.open();
+        assertNotNull(op.getBloomFilter());
+        assertTrue(op.isBloomFilterPushedDown());
+        assertEquals(op.getBloomFilter().getNumBits(), op.getBloomFilterNumBits());
+        assertEquals(op.getBloomFilter().getFalsePositiveRate(), op.getBloomFilterFalsePositiveRate(), 0);
+        op.close();
+        Database.getAccessManager().transactionComplete(tid);
+    }
+
+    @Test
+    public void noFilterForLargeInner() throws Exception {
+        Database.reset();
+        TransactionId tid = new TransactionId();
+        HeapFile small = createHeapFile("small", 1, 1);
+        HeapFile large = createHeapFile("large", 1, 2);
+        HeapFile huge = createHeapFile("huge", 1, ScanPlanner.BLOOM_FILTER_MAX_INNER_PAGES + 1);
+        JoinPredicate p = new JoinPredicate(0, Op.EQUALS, 0);
+        Join op = new Join(p, new SeqScan(tid, small.getId()), new SeqScan(tid, large.getId()));
+        op.open();
+        assertNull(op.getBloomFilter());   // inner larger than outer
+        op.close();
+        op = new Join(p, OperatorTestUtility.createTupleList(1, new int[]{1}), new SeqScan(tid, huge.getId()));
+        op.open();
+        assertNull(op.getBloomFilter());   // inner over the limit
+        op.close();
+        op = new Join(p, new SeqScan(tid, small.getId()), new SeqScan(tid, large.getId()));
+        op.setUseBloomFilter(true);
+        op.open();
+        assertNotNull(op.getBloomFilter());   // unless asked for
+        op.close();
+        Database.getAccessManager().transactionComplete(tid);
+    }
+
+    @Test
+    public void setChildrenRemovesPushedDownFilter() throws Exception {
+        TupleIterator scan1 = OperatorTestUtility.createTupleList(1, new int[]{1, 2});
+        TupleIterator scan2 = OperatorTestUtility.createTupleList(1, new int[]{1});
+        Filter outer = new Filter(new Predicate(0, Op.GREATER_THAN, new IntField(0)), scan1);
+        Join op = new Join(new JoinPredicate(0, Op.EQUALS, 0), outer, scan2);
+        op.setUseBloomFilter(true);
+        op.open();
+        assertTrue(op.isBloomFilterPushedDown());
+        TupleIterator other = OperatorTestUtility.createTupleList(1, new int[]{1, 2});
+        other.open();
+        op.setChildren(new DbIterator[]{other, scan2});
+        assertFalse(op.isBloomFilterPushedDown());
+        assertEquals(1, op.getBloomFilter().getNumAdded());   // rebuilt, but not pushed into a TupleIterator
+        outer.rewind();
+        int n = 0;
+        while (outer.hasNext()) {   // the old child no longer drops tuples
+            outer.next();
+            n++;
+        }
+        assertEquals(2, n);
+    }
+
+    @Test
+    public void noFilterForInequalityJoin() throws Exception {
+        TupleIterator scan1 = OperatorTestUtility.createTupleList(1, new int[]{1, 2});
+        TupleIterator scan2 = OperatorTestUtility.createTupleList(1, new int[]{1});
+        Join op = new Join(new JoinPredicate(0, Op.GREATER_THAN, 0), scan1, scan2);
+        op.open();
+        assertNull(op.getBloomFilter());
+    }
+}
@@ -0,0 +1,187 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.DbException;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.dbfile.TestUtilHeapFile;
+import colgatedb.transactions.TransactionId;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ExchangeTest {
+
+    private static final int NUM_TUPLES = 20000;
+    private final TransactionId tid = new TransactionId();
+    private HeapFile hf;
+
+    @Before
+    public void setUp() {
+        Database.reset();
+        int[] data = new int[2 * NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            data[2 * i] = i % 100;
+            data[2 * i + 1] = i;
+        }
+        hf = TestUtilHeapFile.createHeapFile(2, data);
+    }
+
+    private List<Integer> values(DbIterator it, int field) throws Exception {
+        List<Integer> values = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            values.add(((IntField) it.next().getField(field)).getValue());
+        }
+        it.close();
+        Collections.sort(values);
+        return values;
+    }
+
+    private List<Integer> range(int n) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    @Test
+    public void partitionedScansCoverTable() throws Exception {
+        SeqScan[] scans = ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 4);
+        assertEquals(4, scans.length);
+        int total = 0;
+        for (SeqScan scan : scans) {
+            int n = values(scan, 1).size();
+            assertTrue(n > 0);
+            total += n;
+        }
+        assertEquals(NUM_TUPLES, total);
+    }
+
+    @Test
+    public void gatherReturnsEveryTuple() throws Exception {
+        Exchange gather = new Exchange(ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 4));
+        assertEquals(Exchange.Mode.GATHER, gather.getMode());
+        assertEquals(range(NUM_TUPLES), values(gather, 1));
+    }
+
+    @Test
+    public void gatherRewind() throws Exception {
+        Exchange gather = new Exchange(ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 3));
+        gather.open();
+        for (int i = 0; i < 100; i++) {
+            gather.next();
+        }
+        gather.rewind();
+        int n = 0;
+        while (gather.hasNext()) {
+            gather.next();
+            n++;
+        }
+        assertEquals(NUM_TUPLES, n);
+        gather.close();
+    }
+
+    @Test
+    public void filtersRunInParallel() throws Exception {
+        Predicate p = new Predicate(1, Op.LESS_THAN, new IntField(5000));
+        SeqScan[] scans = ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 4);
+        DbIterator[] filters = new DbIterator[scans.length];
+        for (int i = 0; i < scans.length; i++) {
+            filters[i] = new Filter(p, scans[i]);
+        }
+        assertEquals(range(5000), values(new Exchange(filters), 1));
+    }
+
+    @Test
+    public void repartitionSendsEqualKeysToOneOutput() throws Exception {
+        Exchange[] outputs = Exchange.repartition(
+                ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 4), 0, 3);
+        // a partial count per output, gathered; the outputs must be consumed concurrently
+        DbIterator[] counts = new DbIterator[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            counts[i] = new Aggregate(outputs[i], 1, 0, Aggregator.Op.COUNT);
+        }
+        Exchange gather = new Exchange(counts);
+        Map<Integer, Integer> result = new HashMap<>();
+        gather.open();
+        while (gather.hasNext()) {
+            Tuple t = gather.next();
+            int key = ((IntField) t.getField(0)).getValue();
+            assertNull("key sent to two outputs: " + key,
+                    result.put(key, ((IntField) t.getField(1)).getValue()));
+        }
+        gather.close();
+        assertEquals(100, result.size());
+        for (int count : result.values()) {
+            assertEquals(NUM_TUPLES / 100, count);
+        }
+    }
+
+    @Test
+    public void broadcastSendsEveryTupleToEachOutput() throws Exception {
+        Exchange[] outputs = Exchange.broadcast(ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 2), 3);
+        List<Integer> all = values(new Exchange(outputs), 1);
+        assertEquals(3 * NUM_TUPLES, all.size());
+        Set<Integer> distinct = new HashSet<>(all);
+        assertEquals(NUM_TUPLES, distinct.size());
+    }
+
+    @Test(timeout = 10000)
+    public void closeBeforeTheEnd() throws Exception {
+        Exchange gather = new Exchange(ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 4));
+        gather.open();
+        gather.next();
+        gather.close();
+        assertFalse(gather.hasNext());
+    }
+
+    @Test
+    public void producerFailureIsReported() throws Exception {
+        DbIterator failing = new TupleIterator(OperatorTestUtility.createTupleList(2, new int[]{1, 2}).getTupleDesc(),
+                new ArrayList<Tuple>()) {
+            @Override
+            public boolean hasNext() {
+                throw new DbException("broken child");
+            }
+        };
+        Exchange gather = new Exchange(new DbIterator[]{failing,
+                ScanPlanner.partitionedScans(tid, hf.getId(), "t", null, 1)[0]});
+        gather.open();
+        try {
+            while (gather.hasNext()) {
+                gather.next();
+            }
+            fail("expected the failure of the producer");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("broken child"));
+        }
+        gather.close();
+    }
+}
@@ -0,0 +1,216 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.StringField;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.Type;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class HashAggregateTest {
+
+    private static final int NUM_GROUPS = 3000;
+
+    @Before
+    public void setUp() {
+        Database.reset();
+    }
+
+    /**
+     * The i-th group, labeled (i * 7919) % NUM_GROUPS, gets the values label,
+     * label + 1, ..., label + (i % 4).
+     */
+    private TupleIterator groupedTuples() {
+        int n = 0;
+        for (int g = 0; g < NUM_GROUPS; g++) {
+            n += g % 4 + 1;
+        }
+        int[] data = new int[2 * n];
+        int i = 0;
+        for (int k = 0; k < 4; k++) {
+            for (int g = 0; g < NUM_GROUPS; g++) {
+                if (k <= g % 4) {
+                    int group = (g * 7919) % NUM_GROUPS;
+                    data[i++] = group;
+                    data[i++] = group + k;
+                }
+            }
+        }
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    private Map<Integer, Integer> results(DbIterator it) throws Exception {
+        Map<Integer, Integer> results = new HashMap<>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int group = ((IntField) t.getField(0)).getValue();
+            assertNull("group returned twice: " + group, results.put(group, ((IntField) t.getField(1)).getValue()));
+        }
+        return results;
+    }
+
+    @Test
+    public void spillsWhenGroupsExceedBudget() throws Exception {
+        IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM, 1);
+        assertTrue(agg.getMaxGroups() < NUM_GROUPS);
+        DbIterator child = groupedTuples();
+        child.open();
+        while (child.hasNext()) {
+            agg.mergeTupleIntoGroup(child.next());
+        }
+        assertTrue(agg.getNumSpilledPartitions() > 0);
+
+        Map<Integer, Integer> sums = results(agg.iterator());
+        assertEquals(NUM_GROUPS, sums.size());
+        for (int g = 0; g < NUM_GROUPS; g++) {
+            int group = (g * 7919) % NUM_GROUPS;
+            int k = g % 4;
+            assertEquals((k + 1) * group + k * (k + 1) / 2, (int) sums.get(group));
+        }
+        agg.clear();
+    }
+
+    @Test
+    public void allOperatorsWithSpilling() throws Exception {
+        for (Aggregator.Op op : new Aggregator.Op[]{Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.AVG, Aggregator.Op.COUNT}) {
+            Map<Integer, Integer> spilled = results(new Aggregate(groupedTuples(), 1, 0, op, 1));
+            Map<Integer, Integer> inMemory = results(new Aggregate(groupedTuples(), 1, 0, op, 1000));
+            assertEquals(NUM_GROUPS, spilled.size());
+            assertEquals(inMemory, spilled);
+        }
+    }
+
+    @Test
+    public void mergeAfterReadingSpilledGroups() throws Exception {
+        IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT, 1);
+        DbIterator child = groupedTuples();
+        child.open();
+        while (child.hasNext()) {
+            agg.mergeTupleIntoGroup(child.next());
+        }
+        assertEquals(NUM_GROUPS, results(agg.iterator()).size());
+        // the spill files have been read, so further spills must go elsewhere
+        child.rewind();
+        while (child.hasNext()) {
+            agg.mergeTupleIntoGroup(child.next());
+        }
+        Map<Integer, Integer> counts = results(agg.iterator());
+        assertEquals(NUM_GROUPS, counts.size());
+        for (int g = 0; g < NUM_GROUPS; g++) {
+            assertEquals(2 * (g % 4 + 1), (int) counts.get((g * 7919) % NUM_GROUPS));
+        }
+        agg.clear();
+    }
+
+    @Test
+    public void stringGroupsSpill() throws Exception {
+        Object[] data = new Object[2 * 2 * NUM_GROUPS];
+        for (int i = 0; i < 2 * NUM_GROUPS; i++) {
+            data[2 * i] = "group" + (i % NUM_GROUPS);
+            data[2 * i + 1] = "value" + i;
+        }
+        StringAggregator agg = new StringAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.COUNT, 1);
+        DbIterator child = OperatorTestUtility.createTupleList(2, data);
+        child.open();
+        while (child.hasNext()) {
+            agg.mergeTupleIntoGroup(child.next());
+        }
+        DbIterator it = agg.iterator();
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertTrue(((StringField) t.getField(0)).getValue().startsWith("group"));
+            assertEquals(2, ((IntField) t.getField(1)).getValue());
+            n++;
+        }
+        assertEquals(NUM_GROUPS, n);
+        agg.clear();
+    }
+
+    @Test
+    public void noGrouping() throws Exception {
+        int max = 0;
+        for (int g = 0; g < NUM_GROUPS; g++) {
+            max = Math.max(max, (g * 7919) % NUM_GROUPS + g % 4);
+        }
+        Aggregate agg = new Aggregate(groupedTuples(), 1, Aggregator.NO_GROUPING, Aggregator.Op.MAX, 1);
+        agg.open();
+        assertTrue(agg.hasNext());
+        assertEquals(max, ((IntField) agg.next().getField(0)).getValue());
+        assertFalse(agg.hasNext());
+        agg.close();
+    }
+
+    @Test
+    public void severalGroupFieldsAndAggregates() throws Exception {
+        // tuples (a, b, v) with group (a, b) = (i % 40, i % 70), i.e., 280 groups
+        int n = 5000;
+        int[] data = new int[3 * n];
+        for (int i = 0; i < n; i++) {
+            data[3 * i] = i % 40;
+            data[3 * i + 1] = i % 70;
+            data[3 * i + 2] = i;
+        }
+        Aggregator.Op[] ops = {Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.SUM,
+                Aggregator.Op.AVG, Aggregator.Op.COUNT};
+        int[] afields = {2, 2, 2, 2, 0};
+        Aggregate agg = new Aggregate(OperatorTestUtility.createTupleList(3, data),
+                new int[]{1, 0}, afields, ops, 1);
+        assertFalse(agg.isStreaming());
+        assertEquals(7, agg.getTupleDesc().numFields());
+        assertEquals(Type.INT_TYPE, agg.getTupleDesc().getFieldType(6));
+
+        Map<String, Tuple> results = new HashMap<>();
+        agg.open();
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            assertNull(results.put(t.getField(0) + "," + t.getField(1), t));
+        }
+        agg.close();
+        assertEquals(280, results.size());
+        for (int b = 0; b < 70; b++) {
+            for (int a = 0; a < 40; a++) {
+                Tuple t = results.get(b + "," + a);
+                if (t == null) {
+                    continue;
+                }
+                int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, sum = 0, count = 0;
+                for (int i = 0; i < n; i++) {
+                    if (i % 40 == a && i % 70 == b) {
+                        min = Math.min(min, i);
+                        max = Math.max(max, i);
+                        sum += i;
+                        count++;
+                    }
+                }
+                int[] expected = {min, max, sum, sum / count, count};
+                for (int k = 0; k < expected.length; k++) {
+                    assertEquals(expected[k], ((IntField) t.getField(2 + k)).getValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.tuple.Op;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class HashJoinTest {
+
+    private TupleIterator small;
+    private TupleIterator large;
+    private TupleIterator expected;
+
+    @Before
+    public void createTupleLists() {
+        small = OperatorTestUtility.createTupleList(1,
+                new int[]{1,
+                        3,
+                        5,
+                        7});
+        large = OperatorTestUtility.createTupleList(2,
+                new int[]{1, 10,
+                        5, 20,
+                        1, 30,
+                        6, -1,
+                        5, 40,
+                        3, 50,
+                        3, 60,
+                        3, 70});
+        expected = OperatorTestUtility.createTupleList(3,
+                new int[]{1, 1, 10,
+                        5, 5, 20,
+                        1, 1, 30,
+                        5, 5, 40,
+                        3, 3, 50,
+                        3, 3, 60,
+                        3, 3, 70});
+    }
+
+    @Test
+    public void buildsOnSmallerLeft() throws Exception {
+        HashJoin op = new HashJoin(new JoinPredicate(0, Op.EQUALS, 0), small, large);
+        op.open();
+        assertTrue(op.isBuildOnLeft());
+        expected.open();
+        OperatorTestUtility.matchAllTuples(expected, op);
+    }
+
+    @Test
+    public void buildsOnSmallerRight() throws Exception {
+        TupleIterator swapped = OperatorTestUtility.createTupleList(3,
+                new int[]{1, 10, 1,
+                        5, 20, 5,
+                        1, 30, 1,
+                        5, 40, 5,
+                        3, 50, 3,
+                        3, 60, 3,
+                        3, 70, 3});
+        HashJoin op = new HashJoin(new JoinPredicate(0, Op.EQUALS, 0), large, small);
+        op.open();
+        assertFalse(op.isBuildOnLeft());
+        swapped.open();
+        OperatorTestUtility.matchAllTuples(swapped, op);
+    }
+
+    @Test
+    public void duplicatesOnBothSides() throws Exception {
+        TupleIterator left = OperatorTestUtility.createTupleList(1, new int[]{2, 2, 4});
+        TupleIterator right = OperatorTestUtility.createTupleList(1, new int[]{2, 2, 2, 3});
+        TupleIterator result = OperatorTestUtility.createTupleList(2,
+                new int[]{2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2});
+        HashJoin op = new HashJoin(new JoinPredicate(0, Op.EQUALS, 0), left, right);
+        op.open();
+        result.open();
+        OperatorTestUtility.matchAllTuples(result, op);
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        HashJoin op = new HashJoin(new JoinPredicate(0, Op.EQUALS, 0), large, small);
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        assertEquals(7, n);
+        op.rewind();
+        while (op.hasNext()) {
+            op.next();
+            n--;
+        }
+        assertEquals(0, n);
+    }
+
+    @Test(expected = DbException.class)
+    public void requiresEquality() {
+        new HashJoin(new JoinPredicate(0, Op.LESS_THAN, 0), small, large);
+    }
+}
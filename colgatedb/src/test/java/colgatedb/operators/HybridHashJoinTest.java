@@ -0,0 +1,115 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class HybridHashJoinTest {
+
+    private final JoinPredicate pred = new JoinPredicate(0, Op.EQUALS, 0);
+
+    @Before
+    public void setUp() {
+        Database.reset();
+    }
+
+    @Test
+    public void fitsInMemory() throws Exception {
+        HybridHashJoin op = new HybridHashJoin(pred, keys(0, 100, 2), keys(0, 50, 1), 10);
+        assertEquals(results(new HashJoin(pred, keys(0, 100, 2), keys(0, 50, 1))), results(op));
+        assertEquals(0, op.getNumSpilledPartitions());
+    }
+
+    @Test
+    public void spillsPartitions() throws Exception {
+        // one page holds 512 two-int tuples, so the 4000 build tuples cannot all stay in memory
+        HybridHashJoin op = new HybridHashJoin(pred, keys(0, 3000, 3), keys(0, 2000, 2), 1);
+        List<String> actual = results(op);
+        assertTrue(op.getNumSpilledPartitions() > 0);
+        assertEquals(results(new HashJoin(pred, keys(0, 3000, 3), keys(0, 2000, 2))), actual);
+        assertEquals(12000, actual.size());
+    }
+
+    @Test
+    public void recursiveRepartitioning() throws Exception {
+        HybridHashJoin op = new HybridHashJoin(pred, keys(0, 3000, 1), keys(0, 3000, 1), 1, 2);
+        List<String> actual = results(op);
+        assertTrue(op.getMaxDepthReached() >= 2);
+        assertEquals(3000, actual.size());
+    }
+
+    @Test
+    public void skewedKey() throws Exception {
+        HybridHashJoin op = new HybridHashJoin(pred, keys(7, 8, 3), keys(7, 8, 1500), 1);
+        List<String> actual = results(op);
+        assertEquals(1, op.getNumChunkedPartitions());
+        assertEquals(4500, actual.size());
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        HybridHashJoin op = new HybridHashJoin(pred, keys(0, 1000, 1), keys(0, 1000, 1), 1);
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        op.rewind();
+        while (op.hasNext()) {
+            op.next();
+            n--;
+        }
+        op.close();
+        assertEquals(0, n);
+    }
+
+    /**
+     * @return tuples (key, copy) for every key in [from, to), each repeated copies times
+     */
+    private TupleIterator keys(int from, int to, int copies) {
+        int[] data = new int[(to - from) * copies * 2];
+        int i = 0;
+        for (int c = 0; c < copies; c++) {
+            for (int k = from; k < to; k++) {
+                data[i++] = k;
+                data[i++] = c;
+            }
+        }
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    private List<String> results(DbIterator op) throws Exception {
+        List<String> results = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            results.add(t.getField(0) + " " + t.getField(1) + " " + t.getField(2) + " " + t.getField(3));
+        }
+        op.close();
+        Collections.sort(results);
+        return results;
+    }
+}
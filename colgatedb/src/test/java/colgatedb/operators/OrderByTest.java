@@ -0,0 +1,143 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class OrderByTest {
+
+    @Before
+    public void setUp() {
+        Database.reset();
+    }
+
+    @Test
+    public void singleField() throws Exception {
+        TupleIterator child = OperatorTestUtility.createTupleList(1, new int[]{3, 1, 2});
+        assertEquals(ints(3, 2, 1), column(new OrderBy(0, false, child), 0));
+        assertEquals(ints(1, 2, 3), column(new OrderBy(0, true, child), 0));
+    }
+
+    @Test
+    public void mixedAscDesc() throws Exception {
+        TupleIterator child = OperatorTestUtility.createTupleList(2,
+                new int[]{2, 1,
+                        1, 1,
+                        2, 3,
+                        1, 2,
+                        2, 2});
+        OrderBy op = new OrderBy(new int[]{0, 1}, new boolean[]{true, false}, child);
+        assertEquals(ints(1, 1, 2, 2, 2), column(op, 0));
+        assertEquals(ints(2, 1, 3, 2, 1), column(op, 1));
+    }
+
+    @Test
+    public void externalSortIsStable() throws Exception {
+        // a page holds 512 two-int tuples: 5000 tuples form 4 runs of 3 pages, merged 2 at a time
+        int n = 5000;
+        int[] data = new int[2 * n];
+        Random random = new Random(460);
+        for (int i = 0; i < n; i++) {
+            data[2 * i] = random.nextInt(100);
+            data[2 * i + 1] = i;
+        }
+        OrderBy op = new OrderBy(new int[]{0}, new boolean[]{true}, OperatorTestUtility.createTupleList(2, data), 3);
+        op.open();
+        int count = 0;
+        Tuple prev = null;
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            if (prev != null) {
+                int c = Integer.compare(value(prev, 0), value(t, 0));
+                assertTrue(c < 0 || (c == 0 && value(prev, 1) < value(t, 1)));
+            }
+            prev = t;
+            count++;
+        }
+        assertEquals(n, count);
+        assertEquals(6, op.getNumRunsWritten());
+        assertEquals(1, op.getNumMergePasses());
+
+        op.rewind();
+        count = 0;
+        while (op.hasNext()) {
+            op.next();
+            count++;
+        }
+        assertEquals(n, count);
+        op.close();
+    }
+
+    @Test
+    public void inMemoryWritesNoRuns() throws Exception {
+        OrderBy op = new OrderBy(0, true, OperatorTestUtility.createTupleList(1, new int[]{5, 4}));
+        op.open();
+        assertEquals(0, op.getNumRunsWritten());
+        op.close();
+    }
+
+    @Test
+    public void loserTreeMergesRuns() {
+        List<Iterator<Tuple>> sources = new ArrayList<>();
+        int[][] runs = {{1, 4, 7}, {}, {2, 5, 8, 9}, {3, 6}, {0}};
+        for (int[] run : runs) {
+            List<Tuple> tuples = new ArrayList<>();
+            TupleIterator it = OperatorTestUtility.createTupleList(1, run);
+            it.open();
+            while (it.hasNext()) {
+                tuples.add(it.next());
+            }
+            sources.add(tuples.iterator());
+        }
+        LoserTree tree = new LoserTree(sources, new TupleComparator(0, true));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, value(tree.next(), 0));
+        }
+        assertFalse(tree.hasNext());
+    }
+
+    private static int value(Tuple t, int field) {
+        return ((IntField) t.getField(field)).getValue();
+    }
+
+    private static List<Integer> ints(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int v : values) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    private static List<Integer> column(DbIterator op, int field) throws Exception {
+        List<Integer> values = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) {
+            values.add(value(op.next(), field));
+        }
+        op.close();
+        return values;
+    }
+}
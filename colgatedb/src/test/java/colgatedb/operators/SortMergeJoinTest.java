@@ -0,0 +1,129 @@
+package colgatedb.operators;
+
+import colgatedb.DbException;
+import colgatedb.tuple.Op;
+import colgatedb.tuple.Tuple;
+import colgatedb.tuple.TupleDesc;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class SortMergeJoinTest {
+
+    private static final int[] LEFT = {1, 10,
+            2, 20,
+            2, 21,
+            4, 40,
+            5, 50,
+            5, 51,
+            9, 90};
+    private static final int[] RIGHT = {0, 0,
+            2, 200,
+            2, 201,
+            2, 202,
+            3, 300,
+            5, 500,
+            9, 900,
+            9, 901};
+
+    @Test
+    public void matchesNestedLoopJoin() throws Exception {
+        Op[] ops = {Op.EQUALS, Op.LESS_THAN, Op.LESS_THAN_OR_EQ, Op.GREATER_THAN, Op.GREATER_THAN_OR_EQ};
+        for (Op op : ops) {
+            JoinPredicate pred = new JoinPredicate(0, op, 0);
+            List<String> expected = results(new Join(pred, list(LEFT), list(RIGHT)));
+            List<String> actual = results(new SortMergeJoin(pred, noRewind(LEFT), noRewind(RIGHT)));
+            assertEquals(op.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void emptyInputs() throws Exception {
+        JoinPredicate pred = new JoinPredicate(0, Op.EQUALS, 0);
+        assertTrue(results(new SortMergeJoin(pred, list(new int[0]), list(RIGHT))).isEmpty());
+        assertTrue(results(new SortMergeJoin(pred, list(LEFT), list(new int[0]))).isEmpty());
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        SortMergeJoin op = new SortMergeJoin(new JoinPredicate(0, Op.EQUALS, 0), list(LEFT), list(RIGHT));
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        assertEquals(2 * 3 + 2 * 1 + 2, n);
+        op.rewind();
+        while (op.hasNext()) {
+            op.next();
+            n--;
+        }
+        assertEquals(0, n);
+    }
+
+    @Test(expected = DbException.class)
+    public void unsortedInput() throws Exception {
+        SortMergeJoin op = new SortMergeJoin(new JoinPredicate(0, Op.EQUALS, 0),
+                list(new int[]{3, 0, 1, 0}), list(RIGHT));
+        results(op);
+    }
+
+    @Test(expected = DbException.class)
+    public void notEquals() {
+        new SortMergeJoin(new JoinPredicate(0, Op.NOT_EQUALS, 0), list(LEFT), list(RIGHT));
+    }
+
+    private TupleIterator list(int[] data) {
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    /**
+     * @return an iterator over the tuples that fails if it is rewound
+     */
+    private TupleIterator noRewind(int[] data) {
+        TupleIterator tuples = list(data);
+        List<Tuple> contents = new ArrayList<>();
+        tuples.open();
+        while (tuples.hasNext()) {
+            contents.add(tuples.next());
+        }
+        TupleDesc td = tuples.getTupleDesc();
+        return new TupleIterator(td, contents) {
+            @Override
+            public void rewind() {
+                fail("SortMergeJoin must not rewind its children");
+            }
+        };
+    }
+
+    private List<String> results(DbIterator op) throws Exception {
+        List<String> results = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) {
+            Tuple t = op.next();
+            results.add(t.getField(0) + " " + t.getField(1) + " " + t.getField(2) + " " + t.getField(3));
+        }
+        op.close();
+        Collections.sort(results);
+        return results;
+    }
+}
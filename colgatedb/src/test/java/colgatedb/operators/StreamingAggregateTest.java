@@ -0,0 +1,149 @@
+package colgatedb.operators;
+
+import colgatedb.Database;
+import colgatedb.tuple.IntField;
+import colgatedb.tuple.Tuple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class StreamingAggregateTest {
+
+    private static final Aggregator.Op[] OPS = {Aggregator.Op.MIN, Aggregator.Op.MAX,
+            Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT};
+
+    @Before
+    public void setUp() {
+        Database.reset();
+    }
+
+    private TupleIterator randomTuples() {
+        int n = 2000;
+        int[] data = new int[2 * n];
+        Random random = new Random(460);
+        for (int i = 0; i < n; i++) {
+            data[2 * i] = random.nextInt(300);
+            data[2 * i + 1] = random.nextInt(1000) - 500;
+        }
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    private List<String> sortedResults(DbIterator it) throws Exception {
+        List<String> results = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            results.add(it.next().toString());
+        }
+        it.close();
+        Collections.sort(results);
+        return results;
+    }
+
+    @Test
+    public void chosenForInputSortedOnGroupField() {
+        assertTrue(new Aggregate(new OrderBy(0, true, randomTuples()), 1, 0, Aggregator.Op.SUM).isStreaming());
+        assertTrue(new Aggregate(new OrderBy(0, false, randomTuples()), 1, 0, Aggregator.Op.SUM).isStreaming());
+        assertTrue(new Aggregate(randomTuples(), 1, Aggregator.NO_GROUPING, Aggregator.Op.SUM).isStreaming());
+        assertFalse(new Aggregate(new OrderBy(1, true, randomTuples()), 1, 0, Aggregator.Op.SUM).isStreaming());
+        assertFalse(new Aggregate(randomTuples(), 1, 0, Aggregator.Op.SUM).isStreaming());
+    }
+
+    @Test
+    public void sameResultsAsHashAggregate() throws Exception {
+        for (Aggregator.Op op : OPS) {
+            Aggregate streamed = new Aggregate(new OrderBy(0, false, randomTuples()), 1, 0, op);
+            Aggregate hashed = new Aggregate(randomTuples(), 1, 0, op);
+            assertEquals(sortedResults(hashed), sortedResults(streamed));
+
+            streamed = new Aggregate(randomTuples(), 1, Aggregator.NO_GROUPING, op);
+            IntegerAggregator agg = new IntegerAggregator(Aggregator.NO_GROUPING, null, 1, op);
+            DbIterator child = randomTuples();
+            child.open();
+            while (child.hasNext()) {
+                agg.mergeTupleIntoGroup(child.next());
+            }
+            assertEquals(sortedResults(agg.iterator()), sortedResults(streamed));
+        }
+    }
+
+    @Test
+    public void emitsGroupsInInputOrder() throws Exception {
+        Aggregate agg = new Aggregate(new OrderBy(0, true, randomTuples()), 1, 0, Aggregator.Op.COUNT);
+        agg.open();
+        int previous = Integer.MIN_VALUE;
+        int total = 0;
+        while (agg.hasNext()) {
+            Tuple t = agg.next();
+            int group = ((IntField) t.getField(0)).getValue();
+            assertTrue(group > previous);
+            previous = group;
+            total += ((IntField) t.getField(1)).getValue();
+        }
+        assertEquals(2000, total);
+        agg.close();
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        Aggregate agg = new Aggregate(new OrderBy(0, true, randomTuples()), 1, 0, Aggregator.Op.AVG);
+        agg.open();
+        List<String> first = new ArrayList<>();
+        while (agg.hasNext()) {
+            first.add(agg.next().toString());
+        }
+        agg.rewind();
+        List<String> second = new ArrayList<>();
+        while (agg.hasNext()) {
+            second.add(agg.next().toString());
+        }
+        assertEquals(first, second);
+        agg.close();
+    }
+
+    @Test
+    public void severalGroupFieldsAndAggregates() throws Exception {
+        int n = 3000;
+        int[] data = new int[3 * n];
+        Random random = new Random(460);
+        for (int i = 0; i < n; i++) {
+            data[3 * i] = random.nextInt(10);
+            data[3 * i + 1] = random.nextInt(10);
+            data[3 * i + 2] = random.nextInt(1000);
+        }
+        int[] gfields = {0, 1};
+        int[] afields = {2, 2, 2};
+        Aggregator.Op[] ops = {Aggregator.Op.SUM, Aggregator.Op.MAX, Aggregator.Op.COUNT};
+        OrderBy sorted = new OrderBy(new int[]{1, 0, 2}, new boolean[]{true, false, true},
+                OperatorTestUtility.createTupleList(3, data));
+        Aggregate streamed = new Aggregate(sorted, gfields, afields, ops);
+        assertTrue(streamed.isStreaming());
+        OrderBy sortedOnOne = new OrderBy(new int[]{1, 2}, new boolean[]{true, true},
+                OperatorTestUtility.createTupleList(3, data));
+        assertFalse(new Aggregate(sortedOnOne, gfields, afields, ops).isStreaming());
+
+        Aggregate hashed = new Aggregate(OperatorTestUtility.createTupleList(3, data), gfields, afields, ops);
+        List<String> expected = sortedResults(hashed);
+        assertEquals(100, expected.size());
+        assertEquals(expected, sortedResults(streamed));
+    }
+}
@@ -0,0 +1,102 @@
+package colgatedb.operators;
+
+import colgatedb.tuple.Tuple;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class TopNTest {
+
+    private TupleIterator randomTuples(int n) {
+        int[] data = new int[2 * n];
+        Random random = new Random(460);
+        for (int i = 0; i < n; i++) {
+            data[2 * i] = random.nextInt(50);
+            data[2 * i + 1] = i;
+        }
+        return OperatorTestUtility.createTupleList(2, data);
+    }
+
+    @Test
+    public void limitOverOrderByUsesTopN() {
+        Limit limit = new Limit(10, new OrderBy(0, true, randomTuples(10)));
+        assertTrue(limit.isUsingTopN());
+        assertTrue(limit.getChildren()[0] instanceof TopN);   // the plan shows what runs
+        assertFalse(new Limit(10, randomTuples(10)).isUsingTopN());
+    }
+
+    @Test
+    public void sameResultAsSortingEverything() throws Exception {
+        boolean[][] orders = {{true, true}, {false, true}, {true, false}};
+        for (boolean[] asc : orders) {
+            for (int n : new int[]{0, 1, 17, 1000, 2000}) {
+                OrderBy sorted = new OrderBy(new int[]{0, 1}, asc, randomTuples(1000));
+                List<String> expected = strings(sorted, n);
+                Limit limit = new Limit(n, new OrderBy(new int[]{0, 1}, asc, randomTuples(1000)));
+                assertEquals(expected, strings(limit, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    public void tiesKeepInputOrder() throws Exception {
+        TupleIterator child = OperatorTestUtility.createTupleList(2,
+                new int[]{1, 0,
+                        0, 1,
+                        1, 2,
+                        0, 3,
+                        1, 4});
+        TopN op = new TopN(new int[]{0}, new boolean[]{false}, 2, child);
+        List<String> expected = new ArrayList<>();
+        expected.add("1 0");
+        expected.add("1 2");
+        assertEquals(expected, strings(op, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void limitWithoutOrderBy() throws Exception {
+        Limit op = new Limit(3, OperatorTestUtility.createTupleList(1, new int[]{5, 4, 3, 2, 1}));
+        op.open();
+        int n = 0;
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        assertEquals(3, n);
+        op.rewind();
+        assertTrue(op.hasNext());
+        op.close();
+    }
+
+    /**
+     * @return the first max tuples of op as strings
+     */
+    private List<String> strings(DbIterator op, int max) throws Exception {
+        List<String> result = new ArrayList<>();
+        op.open();
+        while (op.hasNext() && result.size() < max) {
+            Tuple t = op.next();
+            result.add(t.getField(0) + " " + t.getField(1));
+        }
+        op.close();
+        return result;
+    }
+}
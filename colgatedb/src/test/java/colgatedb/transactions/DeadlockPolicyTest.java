@@ -0,0 +1,139 @@
+package colgatedb.transactions;
+
+import colgatedb.page.SimplePageId;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class DeadlockPolicyTest {
+    private SimplePageId pid0 = new SimplePageId(0, 0);
+    private SimplePageId pid1 = new SimplePageId(0, 1);
+    private TransactionId older = new TransactionId();
+    private TransactionId younger = new TransactionId();
+
+    @Test
+    public void waitDieYoungerDies() throws TransactionAbortedException {
+        LockManager lm = new LockManagerImpl(DeadlockPolicy.WAIT_DIE);
+        lm.acquireLock(older, pid0, Permissions.READ_WRITE);
+        try {
+            lm.acquireLock(younger, pid0, Permissions.READ_ONLY);
+            fail("younger transaction should die");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertEquals(1, lm.getTidsForPage(pid0).size());
+    }
+
+    @Test
+    public void waitDieOlderWaits() throws Exception {
+        LockManager lm = new LockManagerImpl(DeadlockPolicy.WAIT_DIE);
+        lm.acquireLock(younger, pid0, Permissions.READ_WRITE);
+        Requester r = new Requester(lm, older, pid0);
+        r.start();
+        Thread.sleep(100);
+        assertFalse(r.granted.get());
+        lm.releaseLock(younger, pid0);
+        r.join();
+        assertTrue(r.granted.get());
+    }
+
+    @Test
+    public void woundWaitOlderWounds() throws Exception {
+        LockManager lm = new LockManagerImpl(DeadlockPolicy.WOUND_WAIT);
+        lm.acquireLock(younger, pid0, Permissions.READ_WRITE);
+        Requester r = new Requester(lm, older, pid0);
+        r.start();
+        Thread.sleep(100);
+        assertFalse(r.granted.get());
+        // the younger transaction was wounded: its next request aborts it
+        try {
+            lm.acquireLock(younger, pid1, Permissions.READ_ONLY);
+            fail("wounded transaction should abort");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        lm.releaseLock(younger, pid0);
+        r.join();
+        assertTrue(r.granted.get());
+    }
+
+    @Test
+    public void woundWaitYoungerWaits() throws Exception {
+        LockManager lm = new LockManagerImpl(DeadlockPolicy.WOUND_WAIT);
+        lm.acquireLock(older, pid0, Permissions.READ_WRITE);
+        Requester r = new Requester(lm, younger, pid0);
+        r.start();
+        Thread.sleep(100);
+        assertFalse(r.granted.get());
+        lm.acquireLock(older, pid1, Permissions.READ_WRITE);   // not wounded
+        lm.releaseLock(older, pid0);
+        r.join();
+        assertTrue(r.granted.get());
+    }
+
+    /**
+     * Under both policies, the younger transaction of a deadlock aborts.
+     */
+    @Test
+    public void deadlockPrevented() throws Exception {
+        for (DeadlockPolicy policy : new DeadlockPolicy[]{DeadlockPolicy.WAIT_DIE, DeadlockPolicy.WOUND_WAIT}) {
+            LockManager lm = new LockManagerImpl(policy);
+            TransactionId t0 = new TransactionId();
+            TransactionId t1 = new TransactionId();
+            lm.acquireLock(t0, pid0, Permissions.READ_WRITE);
+            lm.acquireLock(t1, pid1, Permissions.READ_WRITE);
+            Requester r = new Requester(lm, t0, pid1);
+            r.start();
+            Thread.sleep(100);
+            try {
+                lm.acquireLock(t1, pid0, Permissions.READ_WRITE);
+                fail(policy + ": younger transaction should abort");
+            } catch (TransactionAbortedException e) {
+                lm.releaseLock(t1, pid1);
+            }
+            r.join();
+            assertTrue(r.granted.get());
+        }
+    }
+
+    /**
+     * Requests an exclusive lock in a separate thread.
+     */
+    private static class Requester extends Thread {
+        private final LockManager lm;
+        private final TransactionId tid;
+        private final SimplePageId pid;
+        final AtomicBoolean granted = new AtomicBoolean();
+
+        Requester(LockManager lm, TransactionId tid, SimplePageId pid) {
+            this.lm = lm;
+            this.tid = tid;
+            this.pid = pid;
+        }
+
+        public void run() {
+            try {
+                lm.acquireLock(tid, pid, Permissions.READ_WRITE);
+                granted.set(true);
+            } catch (TransactionAbortedException e) {
+                // granted stays false
+            }
+        }
+    }
+}
@@ -92,6 +92,20 @@ public class DeadlockTest {
         assertTrue(t3.txnCompleted());
     }
 
+    /**
+     * The youngest transaction of a cycle (the one created last) is the victim.
+     */
+    @Test
+    public void youngestAborts() throws InterruptedException {
+        LockGrabber t1 = new LockGrabber(tid0, pid0, pid1, Permissions.READ_ONLY, Permissions.READ_WRITE);
+        LockGrabber t2 = new LockGrabber(tid1, pid1, pid2, Permissions.READ_ONLY, Permissions.READ_WRITE);
+        LockGrabber t3 = new LockGrabber(tid2, pid2, pid0, Permissions.READ_ONLY, Permissions.READ_WRITE);
+        executeTxns(new LockGrabber[]{t1, t2, t3});
+        assertTrue(t1.txnCompleted());
+        assertTrue(t2.txnCompleted());
+        assertTrue(t3.txnAborted());
+    }
+
     /**
      * T0 gets p0, T1 gets p1, ..., T3 gets p3.  Then T0 requests p1, T1 requests p2, T2 requests p3 and T3 requests p0,
      * creating a cycle.
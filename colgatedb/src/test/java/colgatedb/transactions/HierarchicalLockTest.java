@@ -0,0 +1,229 @@
+package colgatedb.transactions;
+
+import colgatedb.page.SimplePageId;
+import colgatedb.tuple.KeyId;
+import colgatedb.tuple.RecordId;
+import colgatedb.tuple.StringField;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class HierarchicalLockTest {
+    private TransactionId tid1 = new TransactionId();
+    private TransactionId tid2 = new TransactionId();
+    private SimplePageId pid1 = new SimplePageId(0, 1);
+    private SimplePageId pid2 = new SimplePageId(0, 2);
+    private LockManagerImpl lm;
+
+    @Before
+    public void setUp() {
+        lm = new LockManagerImpl();
+    }
+
+    @Test
+    public void compatibilityIsSymmetric() {
+        for (LockMode a : LockMode.values()) {
+            for (LockMode b : LockMode.values()) {
+                assertEquals(a + "/" + b, a.isCompatibleWith(b), b.isCompatibleWith(a));
+            }
+        }
+        assertEquals(LockMode.SIX, LockMode.S.combine(LockMode.IX));
+        assertEquals(LockMode.X, LockMode.SIX.combine(LockMode.X));
+    }
+
+    @Test
+    public void tableLockCoversPages() throws TransactionAbortedException {
+        lm.acquireTableLock(tid1, 0, LockMode.S);
+        assertTrue(lm.holdsLock(tid1, pid1, Permissions.READ_ONLY));
+        assertFalse(lm.holdsLock(tid1, pid1, Permissions.READ_WRITE));
+        lm.acquireLock(tid1, pid1, Permissions.READ_ONLY);
+        assertEquals(0, lm.numEntries());   // no page lock needed
+    }
+
+    @Test
+    public void pageLockTakesIntentionLock() throws TransactionAbortedException {
+        lm.acquireLock(tid1, pid1, Permissions.READ_WRITE);
+        assertTrue(lm.holdsTableLock(tid1, 0, LockMode.IX));
+        assertFalse(lm.holdsTableLock(tid1, 0, LockMode.S));
+        lm.acquireLock(tid2, pid2, Permissions.READ_WRITE);   // IX locks are compatible
+        assertTrue(lm.holdsTableLock(tid2, 0, LockMode.IX));
+
+        lm.acquireTableLock(tid1, 1, LockMode.S);
+        lm.acquireLock(tid1, new SimplePageId(1, 0), Permissions.READ_WRITE);
+        assertTrue(lm.holdsTableLock(tid1, 1, LockMode.SIX));
+    }
+
+    @Test
+    public void scanBlocksWriters() throws Exception {
+        lm.acquireTableLock(tid1, 0, LockMode.S);
+        final AtomicBoolean granted = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    lm.acquireLock(tid2, pid1, Permissions.READ_WRITE);
+                    granted.set(true);
+                } catch (TransactionAbortedException e) {
+                    // granted stays false
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(100);
+        assertFalse(granted.get());
+        lm.releaseTableLock(tid1, 0);
+        writer.join();
+        assertTrue(granted.get());
+        assertTrue(lm.getTablesForTid(tid1).isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void threadsOfOneTransactionWaitOneAtATime() throws Exception {
+        lm.acquireLock(tid2, pid1, Permissions.READ_WRITE);
+        lm.acquireLock(tid2, pid2, Permissions.READ_WRITE);
+        final AtomicBoolean granted1 = new AtomicBoolean();
+        final AtomicBoolean granted2 = new AtomicBoolean();
+        Thread first = lockInThread(tid1, pid1, granted1);
+        first.start();
+        Thread.sleep(100);
+        Thread second = lockInThread(tid1, pid2, granted2);   // e.g., another Exchange producer of tid1
+        second.start();
+        lm.releaseLock(tid2, pid2);
+        Thread.sleep(100);
+        assertFalse(granted2.get());   // waits until the first thread of tid1 is done waiting
+        lm.releaseLock(tid2, pid1);
+        first.join();
+        second.join();
+        assertTrue(granted1.get());
+        assertTrue(granted2.get());
+    }
+
+    private Thread lockInThread(final TransactionId tid, final SimplePageId pid, final AtomicBoolean granted) {
+        return new Thread(new Runnable() {
+            public void run() {
+                try {
+                    lm.acquireLock(tid, pid, Permissions.READ_WRITE);
+                    granted.set(true);
+                } catch (TransactionAbortedException e) {
+                    // granted stays false
+                }
+            }
+        });
+    }
+
+    @Test
+    public void escalation() throws TransactionAbortedException {
+        lm = new LockManagerImpl(DeadlockPolicy.DETECT, 10);
+        for (int i = 0; i < 10; i++) {
+            lm.acquireLock(tid1, new SimplePageId(0, i), Permissions.READ_ONLY);
+        }
+        assertEquals(0, lm.getNumEscalations());
+        lm.acquireLock(tid1, new SimplePageId(0, 10), Permissions.READ_WRITE);
+        assertEquals(1, lm.getNumEscalations());
+        assertTrue(lm.holdsTableLock(tid1, 0, LockMode.X));
+        assertEquals(0, lm.numEntries());
+        assertTrue(lm.getPagesForTid(tid1).isEmpty());
+        assertTrue(lm.holdsLock(tid1, new SimplePageId(0, 3), Permissions.READ_WRITE));
+        lm.releaseLock(tid1, new SimplePageId(0, 3));   // released with the table lock
+
+        // reads only: escalate to S
+        for (int i = 0; i <= 10; i++) {
+            lm.acquireLock(tid2, new SimplePageId(1, i), Permissions.READ_ONLY);
+        }
+        assertEquals(2, lm.getNumEscalations());
+        assertTrue(lm.holdsTableLock(tid2, 1, LockMode.S));
+        assertFalse(lm.holdsTableLock(tid2, 1, LockMode.SIX));
+    }
+
+    @Test
+    public void escalationNeverWaits() throws TransactionAbortedException {
+        lm = new LockManagerImpl(DeadlockPolicy.DETECT, 10);
+        lm.acquireLock(tid2, new SimplePageId(0, 100), Permissions.READ_ONLY);   // table IS
+        for (int i = 0; i <= 10; i++) {
+            lm.acquireLock(tid1, new SimplePageId(0, i), Permissions.READ_WRITE);
+        }
+        assertEquals(0, lm.getNumEscalations());
+        assertEquals(1, lm.getNumFailedEscalations());
+        assertEquals(11, lm.getPagesForTid(tid1).size());
+    }
+
+    @Test
+    public void recordLocksShareAPage() throws TransactionAbortedException {
+        RecordId rid0 = new RecordId(pid1, 0);
+        RecordId rid1 = new RecordId(pid1, 1);
+        lm.acquireRecordLock(tid1, rid0, Permissions.READ_WRITE);
+        lm.acquireRecordLock(tid2, rid1, Permissions.READ_WRITE);   // different record, no wait
+        assertTrue(lm.holdsRecordLock(tid1, rid0, Permissions.READ_WRITE));
+        assertFalse(lm.holdsRecordLock(tid1, rid1, Permissions.READ_ONLY));
+        assertTrue(lm.holdsTableLock(tid2, 0, LockMode.IX));
+        assertFalse(lm.holdsLock(tid2, pid1, Permissions.READ_ONLY));   // only an intention lock
+        lm.releaseRecordLock(tid1, rid0);
+        assertTrue(lm.getRecordsForTid(tid1).isEmpty());
+        assertEquals(1, lm.getRecordsForTid(tid2).size());
+    }
+
+    @Test
+    public void keyLocksAreDistinctFromPageLocks() throws TransactionAbortedException {
+        KeyId a = new KeyId(0, new StringField("a", 8));
+        KeyId b = new KeyId(0, new StringField("b", 8));
+        lm.acquireKeyLock(tid1, a, Permissions.READ_WRITE);
+        lm.acquireKeyLock(tid2, b, Permissions.READ_WRITE);   // different key, no wait
+        assertTrue(lm.holdsKeyLock(tid1, a, Permissions.READ_WRITE));
+        assertFalse(lm.holdsKeyLock(tid1, b, Permissions.READ_ONLY));
+        assertTrue(lm.holdsTableLock(tid1, 0, LockMode.IX));
+        assertTrue(lm.getPagesForTid(tid1).isEmpty());   // no page lock, so nothing to escalate
+        lm.releaseKeyLock(tid1, a);
+        assertTrue(lm.getKeysForTid(tid1).isEmpty());
+        assertEquals(1, lm.getKeysForTid(tid2).size());
+    }
+
+    @Test
+    public void tryRecordLockDoesNotWait() throws TransactionAbortedException {
+        RecordId rid0 = new RecordId(pid1, 0);
+        lm.acquireRecordLock(tid1, rid0, Permissions.READ_WRITE);
+        assertFalse(lm.tryAcquireRecordLock(tid2, rid0, Permissions.READ_WRITE));
+        assertTrue(lm.getRecordsForTid(tid2).isEmpty());
+        assertTrue(lm.tryAcquireRecordLock(tid2, new RecordId(pid1, 1), Permissions.READ_WRITE));
+        lm.releaseRecordLock(tid1, rid0);
+        assertTrue(lm.tryAcquireRecordLock(tid2, rid0, Permissions.READ_WRITE));
+    }
+
+    @Test
+    public void pageLockBlocksRecordLock() throws Exception {
+        lm.acquireLock(tid1, pid1, Permissions.READ_WRITE);
+        assertTrue(lm.holdsRecordLock(tid1, new RecordId(pid1, 5), Permissions.READ_WRITE));
+        final AtomicBoolean granted = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    lm.acquireRecordLock(tid2, new RecordId(pid1, 5), Permissions.READ_WRITE);
+                    granted.set(true);
+                } catch (TransactionAbortedException e) {
+                    // granted stays false
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(100);
+        assertFalse(granted.get());
+        lm.releaseLock(tid1, pid1);
+        writer.join();
+        assertTrue(granted.get());
+    }
+}
@@ -119,4 +119,18 @@ public class LockManagerTest {
         expectedTids.add(tid3);
         assertEquals(expectedTids, new HashSet<>(lm.getTidsForPage(pid2)));
     }
+
+    @Test
+    public void releasedPagesLeaveLockTable() throws TransactionAbortedException {
+        for (int i = 0; i < 1000; i++) {
+            lm.acquireLock(tid1, new SimplePageId(0, i), Permissions.READ_WRITE);
+        }
+        assertEquals(1000, ((LockManagerImpl) lm).numEntries());
+        for (int i = 0; i < 1000; i++) {
+            lm.releaseLock(tid1, new SimplePageId(0, i));
+        }
+        assertEquals(0, ((LockManagerImpl) lm).numEntries());
+        assertTrue(lm.getPagesForTid(tid1).isEmpty());
+        assertTrue(lm.getTidsForPage(pid1).isEmpty());
+    }
 }
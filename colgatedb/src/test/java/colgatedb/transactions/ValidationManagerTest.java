@@ -0,0 +1,85 @@
+package colgatedb.transactions;
+
+import colgatedb.Database;
+import colgatedb.page.SimplePageId;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ValidationManagerTest {
+    private SimplePageId pid0 = new SimplePageId(0, 0);
+    private SimplePageId pid1 = new SimplePageId(0, 1);
+    private TransactionId occ = new TransactionId();
+    private TransactionId writer = new TransactionId();
+    private ValidationManager vm;
+
+    @Before
+    public void setUp() {
+        vm = new ValidationManager(new SnapshotManager());
+    }
+
+    @Test
+    public void staleReadFailsValidation() {
+        vm.begin(occ);
+        vm.recordRead(occ, pid0);
+        vm.recordWrite(writer, pid0);
+        assertTrue(vm.commit(writer));
+        assertFalse(vm.commit(occ));
+        assertFalse(vm.isOptimistic(occ));
+        assertEquals(1, vm.getNumValidations());
+        assertEquals(1, vm.getNumFailedValidations());
+    }
+
+    @Test
+    public void disjointWritesPassValidation() {
+        vm.begin(occ);
+        vm.recordRead(occ, pid0);
+        vm.recordWrite(occ, pid0);
+        vm.recordWrite(writer, pid1);
+        assertTrue(vm.commit(writer));
+        assertTrue(vm.commit(occ));
+        assertEquals(0, vm.getNumFailedValidations());
+    }
+
+    @Test
+    public void earlierCommitsDoNotConflict() {
+        vm.recordWrite(writer, pid0);
+        assertTrue(vm.commit(writer));
+        vm.begin(occ);
+        vm.recordRead(occ, pid0);
+        assertTrue(vm.commit(occ));
+
+        // an aborted writer never conflicts
+        TransactionId occ2 = new TransactionId();
+        TransactionId aborted = new TransactionId();
+        vm.begin(occ2);
+        vm.recordRead(occ2, pid1);
+        vm.recordWrite(aborted, pid1);
+        vm.abort(aborted);
+        assertTrue(vm.commit(occ2));
+    }
+
+    @Test
+    public void retriesAreCounted() {
+        Database.reset();
+        Transaction t = new Transaction(true);
+        assertTrue(t.retry().isOptimistic());
+        assertFalse(new Transaction().retry().isOptimistic());
+        assertEquals(1, Database.getValidationManager().getNumRetries());
+    }
+}